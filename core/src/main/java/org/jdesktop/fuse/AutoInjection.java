@@ -31,9 +31,11 @@
 
 package org.jdesktop.fuse;
 
-import java.util.ArrayList;
 import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * <p>This class is used to enable auto-injection for any supported container.  Out
@@ -71,7 +73,9 @@ import java.util.List;
  */
 public final class AutoInjection {
     private final static List<AutoInjectionProvider<?>> providers =
-        Collections.synchronizedList(new ArrayList<AutoInjectionProvider<?>>());
+        new CopyOnWriteArrayList<AutoInjectionProvider<?>>();
+    private final static Map<AutoInjectionProvider<?>, FuseModule> owners =
+        Collections.synchronizedMap(new IdentityHashMap<AutoInjectionProvider<?>, FuseModule>());
     
     private AutoInjection() {}
     
@@ -85,9 +89,38 @@ public final class AutoInjection {
      * @param provider the injection provider
      */
     public static <T> void addAutoInjectionProvider(AutoInjectionProvider<T> provider) {
+        FuseModule owner = ResourceInjector.getInitializingModule();
+        if (owner != null) {
+            owners.put(provider, owner);
+        }
+        
         providers.add(provider);
     }
     
+    /**
+     * Removes an AutoInjectionProvider from the internal registry.  Providers
+     * registered by a module are removed automatically when the module is removed
+     * from ResourceInjector.
+     * 
+     * @param provider the injection provider
+     * @return <code>true</code> if the provider was registered.
+     * @see ResourceInjector#removeModule(FuseModule)
+     * @since 1.1
+     */
+    public static boolean removeAutoInjectionProvider(AutoInjectionProvider<?> provider) {
+        owners.remove(provider);
+        
+        return providers.remove(provider);
+    }
+    
+    static void removeAutoInjectionProviders(FuseModule owner) {
+        for (AutoInjectionProvider<?> provider : providers.toArray(new AutoInjectionProvider<?>[0])) {
+            if (owners.get(provider) == owner) {
+                removeAutoInjectionProvider(provider);
+            }
+        }
+    }
+    
     /**
      * Enables auto-injection for the specified container.  This is identical to calling
      * <code>AutoInjection.enable(null, component)</code>
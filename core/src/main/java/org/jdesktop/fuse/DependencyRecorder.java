@@ -0,0 +1,136 @@
+/**
+ * Copyright (c) 2006, Sun Microsystems, Inc
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 
+ *   * Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *   * Redistributions in binary form must reproduce the above
+ *     copyright notice, this list of conditions and the following 
+ *     disclaimer in the documentation and/or other materials provided 
+ *     with the distribution.
+ *   * Neither the name of the Fuse project nor the names of its
+ *     contributors may be used to endorse or promote products derived 
+ *     from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.jdesktop.fuse;
+
+import java.beans.BeanInfo;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p>Records which resource keys are read while fields are injected on the
+ * current thread.  Every lookup made by ResourceInjector, including the keys
+ * reached through <code>{reference}</code> chains and the keys which were
+ * looked up but not found, is attributed to the field being injected.  The
+ * result is one InjectionPoint per injected field, which Hive uses to re-inject
+ * only the fields depending on changed resources.</p>
+ * 
+ * <p>Recording costs a single volatile read per lookup while no thread is
+ * recording.</p>
+ *
+ * @since 1.1
+ */
+final class DependencyRecorder {
+    private static final AtomicInteger active = new AtomicInteger();
+    private static final ThreadLocal<DependencyRecorder> current = new ThreadLocal<DependencyRecorder>();
+    
+    private final DependencyRecorder previous;
+    private final List<InjectionPoint> points = new ArrayList<InjectionPoint>();
+    private Set<String> keys;
+    
+    private DependencyRecorder(DependencyRecorder previous) {
+        this.previous = previous;
+    }
+    
+    /**
+     * Starts recording on the current thread.  Every call must be paired with
+     * a call to {@link #stop()}.
+     */
+    static DependencyRecorder start() {
+        DependencyRecorder recorder = new DependencyRecorder(current.get());
+        current.set(recorder);
+        active.incrementAndGet();
+        
+        return recorder;
+    }
+    
+    /**
+     * Stops recording and returns the injection points recorded since the
+     * matching {@link #start()}.
+     */
+    List<InjectionPoint> stop() {
+        active.decrementAndGet();
+        if (previous == null) {
+            current.remove();
+        } else {
+            current.set(previous);
+        }
+        
+        return points;
+    }
+    
+    // returns null when the current thread is not recording
+    static DependencyRecorder beginField() {
+        if (active.get() == 0) {
+            return null;
+        }
+        
+        DependencyRecorder recorder = current.get();
+        if (recorder != null) {
+            recorder.keys = new HashSet<String>();
+        }
+        
+        return recorder;
+    }
+    
+    void endField(Object component, Class<?> componentClass, Field field, BeanInfo beanInfo,
+                  InjectedResource annotation, String definition) {
+        if (!keys.isEmpty()) {
+            points.add(new InjectionPoint(component, componentClass, field, beanInfo,
+                                          annotation, definition, keys));
+        }
+        keys = null;
+    }
+    
+    static boolean isRecording() {
+        if (active.get() == 0) {
+            return false;
+        }
+        
+        DependencyRecorder recorder = current.get();
+        return recorder != null && recorder.keys != null;
+    }
+    
+    static void record(String key) {
+        if (active.get() == 0) {
+            return;
+        }
+        
+        DependencyRecorder recorder = current.get();
+        if (recorder != null && recorder.keys != null) {
+            recorder.keys.add(key);
+        }
+    }
+}
@@ -33,15 +33,16 @@ package org.jdesktop.fuse;
 
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
- * A simple map which creates a HashMap as a peer.  If the peer
+ * A simple map which creates a ConcurrentHashMap as a peer.  If the peer
  * Map doesn't contain a requested value, the fallback Map
- * is queried.
+ * is queried.  Putting a <code>null</code> value removes the key from
+ * the peer.
  * 
  * @author Daniel Spiewak
  */
@@ -52,7 +53,7 @@ class FallbackMap<K, V> implements Map<K, V> {
 	FallbackMap(Map<K, V> fallback) {
 		this.fallback = fallback;
 		
-		peer = new HashMap<K, V>();
+		peer = new ConcurrentHashMap<K, V>();
 	}
 	
 	public int size() {
@@ -72,14 +73,19 @@ class FallbackMap<K, V> implements Map<K, V> {
 	}
 
 	public V get(Object key) {
-		if (peer.containsKey(key)) {
-            return peer.get(key);
+		V value = peer.get(key);
+		if (value != null) {
+            return value;
         }
 		
 		return fallback.get(key);
 	}
 
 	public V put(K key, V value) {
+		if (value == null) {
+            return peer.remove(key);
+        }
+        
 		return peer.put(key, value);
 	}
 
@@ -88,7 +94,9 @@ class FallbackMap<K, V> implements Map<K, V> {
 	}
 
 	public void putAll(Map<? extends K, ? extends V> t) {
-		peer.putAll(t);
+		for (Entry<? extends K, ? extends V> entry : t.entrySet()) {
+            put(entry.getKey(), entry.getValue());
+        }
 	}
 
 	public void clear() {
@@ -35,9 +35,8 @@ import java.lang.reflect.Field;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.Iterator;
-import java.util.LinkedList;
-import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * 
@@ -45,8 +44,11 @@ import java.util.Set;
  * @author Romain Guy
  */
 abstract class FieldIterator implements Iterable<Field>, Iterator<Field> {
-    private static final List<String> stopSetCacheMatch = Collections.synchronizedList(new LinkedList<String>());
-    private static final List<String> stopSetCacheUnmatch = Collections.synchronizedList(new LinkedList<String>());
+    // package names only, so the memo never pins a class or its class loader
+    private static final Set<String> stopSetCacheMatch =
+        Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    private static final Set<String> stopSetCacheUnmatch =
+        Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
     
     private static Set<String> stopSet = Collections.synchronizedSet(new HashSet<String>());
     
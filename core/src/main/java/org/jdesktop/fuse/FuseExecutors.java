@@ -0,0 +1,150 @@
+/**
+ * Copyright (c) 2006, Sun Microsystems, Inc
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 
+ *   * Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *   * Redistributions in binary form must reproduce the above
+ *     copyright notice, this list of conditions and the following 
+ *     disclaimer in the documentation and/or other materials provided 
+ *     with the distribution.
+ *   * Neither the name of the Fuse project nor the names of its
+ *     contributors may be used to endorse or promote products derived 
+ *     from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.jdesktop.fuse;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p>Factory for the executors used to load and inject resources in parallel,
+ * for example when preloading a large theme.  Preloading and staging submit a
+ * task per resource, which may be thousands of tasks.</p>
+ * 
+ * <p>On Java 21 and later, {@link #newResourceExecutor()} returns an executor
+ * which starts a virtual thread per task.  Virtual threads are found by
+ * reflection, so the same jar runs on Java 8.  Otherwise a bounded pool of
+ * daemon threads is returned, large enough for TypeLoader(s) which mostly wait
+ * on files, so that a large theme does not start a platform thread per
+ * resource.  Fuse itself avoids holding monitors while loading resources so
+ * that virtual threads are not pinned to their carrier thread.</p>
+ * 
+ * @since 1.1
+ */
+public final class FuseExecutors {
+    // resources such as images and fonts mostly wait on their files
+    private static final int DEFAULT_THREADS = Math.max(32, 4 * Runtime.getRuntime().availableProcessors());
+    
+    private static final AtomicInteger threadCount = new AtomicInteger();
+    
+    // Thread.ofVirtual().name("fuse-resource-v", 1).factory(), null before Java 21
+    private static final ThreadFactory virtualThreads;
+    // Executors.newThreadPerTaskExecutor(ThreadFactory)
+    private static final Method newThreadPerTaskExecutor;
+    
+    static {
+        ThreadFactory factory = null;
+        Method method = null;
+        try {
+            Class<?> ofVirtual = Class.forName("java.lang.Thread$Builder$OfVirtual");
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            builder = ofVirtual.getMethod("name", String.class, long.class).invoke(builder, "fuse-resource-v", 1L);
+            factory = (ThreadFactory) ofVirtual.getMethod("factory").invoke(builder);
+            method = Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+        } catch (ReflectiveOperationException e) {
+            // before Java 21, or a preview API which is not enabled
+            factory = null;
+            method = null;
+        }
+        
+        virtualThreads = factory;
+        newThreadPerTaskExecutor = method;
+    }
+    
+    private FuseExecutors() {
+    }
+    
+    /**
+     * Creates an executor running each submitted task on its own virtual thread
+     * on Java 21 and later, or on a pool of daemon threads, at least 32 and four
+     * per processor, otherwise.  The executor should be shut down when it is no
+     * longer required.
+     * 
+     * @return A new ExecutorService.
+     * @see #newResourceExecutor(int)
+     */
+    public static ExecutorService newResourceExecutor() {
+        if (virtualThreads != null) {
+            try {
+                return (ExecutorService) newThreadPerTaskExecutor.invoke(null, virtualThreads);
+            } catch (ReflectiveOperationException e) {
+                // falls back to platform threads
+            }
+        }
+        
+        return newResourceExecutor(DEFAULT_THREADS);
+    }
+    
+    /**
+     * Creates an executor running the submitted tasks on at most the specified
+     * number of daemon threads, whatever the Java version.  This suits
+     * TypeLoader(s) which use the processor rather than wait, with as many
+     * threads as processors.  Idle threads are stopped after a minute.  The
+     * executor should be shut down when it is no longer required.
+     * 
+     * @param threads   The maximum number of threads.
+     * @return A new ExecutorService.
+     * @throws IllegalArgumentException If the number of threads is less than one.
+     */
+    public static ExecutorService newResourceExecutor(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("At least one thread is required, not " + threads + ".");
+        }
+        
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS,
+                                                             new LinkedBlockingQueue<Runnable>(),
+                                                             new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "fuse-resource-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                
+                return thread;
+            }
+        });
+        executor.allowCoreThreadTimeOut(true);
+        
+        return executor;
+    }
+    
+    /**
+     * @return <code>true</code> if the executors returned by
+     *         {@link #newResourceExecutor()} run tasks on virtual threads.
+     */
+    public static boolean isVirtual() {
+        return virtualThreads != null;
+    }
+}
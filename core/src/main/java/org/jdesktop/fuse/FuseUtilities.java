@@ -98,6 +98,18 @@ final class FuseUtilities {
         return back;
     }
 
+    private static final ClassValue<String> simpleNames = new ClassValue<String>() {
+        @Override
+        protected String computeValue(Class<?> type) {
+            return getSimpleName(type.getName());
+        }
+    };
+
+    // the simple name as used in resource keys, "Outer$Inner" for nested classes
+    static String getSimpleName(Class<?> klass) {
+        return simpleNames.get(klass);
+    }
+
     static String getSimpleName(String name) {
         int i = name.lastIndexOf('.');
         if (i == -1) {
@@ -0,0 +1,258 @@
+/**
+ * Copyright (c) 2006, Sun Microsystems, Inc
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 
+ *   * Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *   * Redistributions in binary form must reproduce the above
+ *     copyright notice, this list of conditions and the following 
+ *     disclaimer in the documentation and/or other materials provided 
+ *     with the distribution.
+ *   * Neither the name of the Fuse project nor the names of its
+ *     contributors may be used to endorse or promote products derived 
+ *     from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.jdesktop.fuse;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * <p>The configuration a ResourceInjector injects with: its ResourceLoader, the
+ * instance properties passed to TypeLoader(s), the use of BeanInfo and the
+ * definitions.  A Generation is immutable; every change of configuration
+ * publishes a new one, and an injection reads the current generation once
+ * and uses it until it returns.  Injecting therefore takes no lock and never
+ * sees a change applied halfway.</p>
+ * 
+ * <p>The resource values are read from the immutable view a
+ * SnapshotResourceLoader returns when the generation is created, so loading,
+ * reloading or clearing the loader while an injection runs does not change
+ * the values it reads.  ResourceInjector publishes a new generation after
+ * every change of the loader.  Other loaders are read as they are when each
+ * resource is looked up.  Common properties are shared by every
+ * ResourceInjector and are read as they are when a TypeLoader asks for
+ * them.</p>
+ * 
+ * @since 1.1
+ */
+final class Generation {
+    final ResourceLoader loader;
+    // the resources read by injections, an immutable view of loader when it has one
+    final ResourceLoader resources;
+    final Map<String, Object> typeProperties;
+    final boolean useBeanInfo;
+    final Map<String, Definition> definitions;
+    
+    private final Map<String, Object> commonProperties;
+    private final Map<String, Object> instanceProperties;
+    
+    Generation(ResourceLoader loader, Map<String, Object> commonProperties,
+               Map<String, Object> instanceProperties, boolean useBeanInfo,
+               Map<String, Definition> definitions) {
+        this(loader, snapshot(loader), commonProperties, instanceProperties, useBeanInfo, definitions);
+    }
+    
+    private Generation(ResourceLoader loader, ResourceLoader resources, Map<String, Object> commonProperties,
+                       Map<String, Object> instanceProperties, boolean useBeanInfo,
+                       Map<String, Definition> definitions) {
+        this.loader = loader;
+        this.resources = resources;
+        this.commonProperties = commonProperties;
+        this.instanceProperties = instanceProperties;
+        this.useBeanInfo = useBeanInfo;
+        this.definitions = definitions;
+        
+        FallbackMap<String, Object> properties = new FallbackMap<String, Object>(commonProperties);
+        properties.putAll(instanceProperties);
+        this.typeProperties = Collections.unmodifiableMap(properties);
+    }
+    
+    Generation withLoader(ResourceLoader loader) {
+        return new Generation(loader, commonProperties, instanceProperties, useBeanInfo, definitions);
+    }
+    
+    Generation withProperty(String key, Object value) {
+        Map<String, Object> properties = new HashMap<String, Object>(instanceProperties);
+        if (value == null) {
+            properties.remove(key);
+        } else {
+            properties.put(key, value);
+        }
+        
+        return new Generation(loader, resources, commonProperties, Collections.unmodifiableMap(properties),
+                              useBeanInfo, definitions);
+    }
+    
+    Generation withUseBeanInfo(boolean useBeanInfo) {
+        return new Generation(loader, resources, commonProperties, instanceProperties, useBeanInfo, definitions);
+    }
+    
+    Generation withDefinitions(Map<String, Definition> definitions) {
+        return new Generation(loader, resources, commonProperties, instanceProperties, useBeanInfo, definitions);
+    }
+    
+    // true if both generations inject from the same resources with the same properties,
+    // whatever their definitions
+    boolean hasSameConfiguration(Generation other) {
+        return loader == other.loader && resources == other.resources &&
+               instanceProperties == other.instanceProperties && useBeanInfo == other.useBeanInfo;
+    }
+    
+    // false once the loader holds resources loaded or cleared after this generation was created
+    boolean isCurrent() {
+        return snapshot(loader) == resources;
+    }
+    
+    private static ResourceLoader snapshot(ResourceLoader loader) {
+        if (loader instanceof SnapshotResourceLoader) {
+            return ((SnapshotResourceLoader) loader).snapshot();
+        }
+        
+        return loader;
+    }
+    
+    List<String> subKeys(String name) {
+        if (resources instanceof IndexedResourceLoader) {
+            return ((IndexedResourceLoader) resources).subKeys(name);
+        }
+        
+        return null;
+    }
+
+    // Returns scope.name, else *.name, else null when neither resource exists
+    String findKey(String scope, String name) {
+        if (resources instanceof IndexedResourceLoader) {
+            String key = ((IndexedResourceLoader) resources).findKey(scope, name);
+            
+            if (DependencyRecorder.isRecording() && (key == null || key.charAt(0) == '*')) {
+                DependencyRecorder.record(scope + '.' + name);
+                DependencyRecorder.record("*." + name);
+            }
+            
+            return key;
+        }
+        
+        String key = scope + '.' + name;
+        DependencyRecorder.record(key);
+        if (resources.get(key) != null) {
+            return key;
+        }
+        
+        key = "*." + name;
+        DependencyRecorder.record(key);
+        return resources.get(key) == null ? null : key;
+    }
+    
+    String getValue(String name) {
+        return getValue(name, null);
+    }
+    
+    // cycle holds the keys being resolved by the enclosing calls, it is only
+    // created when a value refers to other resources
+    private String getValue(String name, Set<String> cycle) {
+        if (cycle != null && cycle.contains(name)) {
+            throw new TypeLoadingException("Theme resource " + name +
+                " cannot be resolved. Dependency cycle detected");
+        }
+        
+        DependencyRecorder.record(name);
+        
+        String value = resources.get(name);
+        if (value == null || !hasReferencesOrEscapes(value)) {
+            return value;
+        }
+        
+        if (cycle == null) {
+            cycle = new HashSet<String>();
+        }
+        
+        cycle.add(name);
+        value = resolveReferences(name, value, cycle);
+        cycle.remove(name);
+
+        return value;
+    }
+
+    private String resolveReferences(String name, String value, Set<String> cycle) {
+        StringBuilder buffer = new StringBuilder(value.length());
+        StringBuilder reference = null;
+        
+        boolean backslash = false;
+        boolean inReference = false;
+
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            
+            if (inReference && c == '}') {
+                try {
+                    buffer.append(getValue(reference.toString(), cycle));
+                } catch (TypeLoadingException e) {
+                    throw new TypeLoadingException("Theme resource " + name +
+                                                   " cannot be resolved.", e);
+                } finally {
+                    inReference = false;
+                    reference = null;
+                }
+            } else {
+                if (!backslash) {
+                    if (c == '\\') {
+                        backslash = true;
+                    } else if (c == '{') {
+                        inReference = true;
+                        reference = new StringBuilder();
+                    } else if (c != '}') {
+                        (inReference ? reference : buffer).append(c);
+                    }
+                } else {
+                    if (c != '{' && c!= '}') {
+                        (inReference ? reference : buffer).append('\\');
+                    }
+                    if (c != '\\') {
+                        (inReference ? reference : buffer).append(c);
+                    }
+                    backslash = false;
+                }
+            }
+        }
+        
+        if (inReference) {
+            buffer.append(reference);
+        }
+        
+        value = buffer.toString();
+        return value;
+    }
+    
+    private static boolean hasReferencesOrEscapes(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '{' || c == '}' || c == '\\') {
+                return true;
+            }
+        }
+        
+        return false;
+    }
+}
@@ -33,17 +33,22 @@ package org.jdesktop.fuse;
 
 import java.io.File;
 import java.io.InputStream;
+import java.lang.ref.ReferenceQueue;
 import java.lang.ref.WeakReference;
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.Stack;
 import java.util.WeakHashMap;
+import java.util.concurrent.Executor;
 
 /**
  * <p>This class is the superclass of all classes implementing hive support.  In and
@@ -68,18 +73,20 @@ import java.util.WeakHashMap;
  * 
  * <p>Hive uses WeakReference(s) in its cache of injected instances to ensure that
  * no lock is perceived by the GC.  This ensures less memory usage and better
- * performance in some circumstances.  Hive is thread-safe.</p>
+ * performance in some circumstances.  The resource keys recorded for an instance
+ * are dropped once the instance was collected.  Hive is thread-safe.</p>
  * 
  * @see ResourceLoadEvent
  * @see ResourceInjectionEvent
  * @see ResourceLoadListener
  * @see ResourceInjectionListener
+ * @see ResourceChangeListener
  * @see WeakReference
  * @since 0.2
  * @author Daniel Spiewak
  * @author Romain Guy
  */
-public class Hive<T> {
+public class Hive<T> implements ResourceChangeListener {
 	private Map<Object, Set<WeakReference<T>>> objects;
 	
 	private List<ResourceLoadListener> loadListeners;
@@ -94,6 +101,12 @@ public class Hive<T> {
     
     private final Map<String, String> bindings;
     private final Set<WeakReference<T>> boundInstances;
+    
+    // reverse index from resource keys to the fields reading them, see DependencyRecorder
+    private final Map<String, Set<InjectionPoint>> dependents;
+    private final Map<InstanceReference<T>, List<InjectionPoint>> injectionPoints;
+    private final Set<InstanceReference<T>> unindexedInstances;
+    private final ReferenceQueue<T> collectedInstances;
 	
 	private final Object LOCK = new Object();
 
@@ -121,6 +134,11 @@ public class Hive<T> {
         bindings = Collections.synchronizedMap(new HashMap<String, String>());
         boundInstances = Collections.synchronizedSet(new HashSet<WeakReference<T>>());
         
+        dependents = new HashMap<String, Set<InjectionPoint>>();
+        injectionPoints = new HashMap<InstanceReference<T>, List<InjectionPoint>>();
+        unindexedInstances = new HashSet<InstanceReference<T>>();
+        collectedInstances = new ReferenceQueue<T>();
+        
         standardProvider = new HiveStandardInjectionProvider<T>();
         bindProvider = new HiveBindInjectionProvider<T>(bindings);
         
@@ -280,6 +298,149 @@ public class Hive<T> {
         load(properties);
     }
 
+    /**
+     * <p>Re-injects the fields depending on individual resources which changed,
+     * for example when a theme file watched by a <code>WatchingResourceLoader</code>
+     * was edited.  Fires a ResourceLoadEvent and a ResourceInjectionEvent for the
+     * instances whose fields were injected again.  This method is called on the
+     * thread publishing the change.</p>
+     * 
+     * <p>Hive records which resource keys every field read when it was injected,
+     * including the keys reached through references and the keys which could not
+     * be found.  Only the fields which read one of the changed keys are injected
+     * again.  Instances which were injected without reading any resource through
+     * ResourceInjector, for instance by a custom HiveInjectionProvider, are
+     * injected again entirely.</p>
+     * 
+     * @param loader    The ResourceLoader whose resources changed.
+     * @param keys      The keys of the changed resources.
+     * @since 1.1
+     */
+    public void resourcesChanged(ResourceLoader loader, Set<String> keys) {
+        fireResourceLoadEvent(loader);
+        
+        Set<InjectionPoint> affected = new LinkedHashSet<InjectionPoint>();
+        List<T> unindexed = new ArrayList<T>();
+        synchronized (dependents) {
+            removeCollectedInstances();
+            
+            for (String changed : keys) {
+                Set<InjectionPoint> points = dependents.get(changed);
+                if (points != null) {
+                    affected.addAll(points);
+                }
+            }
+            for (InstanceReference<T> ref : unindexedInstances) {
+                T instance = ref.get();
+                if (instance != null) {
+                    unindexed.add(instance);
+                }
+            }
+        }
+        
+        List<Exception> exceptions = new LinkedList<Exception>();
+        Set<Object> injected = new LinkedHashSet<Object>();
+        
+        ResourceInjector injector = ResourceInjector.get(key);
+        for (InjectionPoint point : affected) {
+            Object component = point.getComponent();
+            if (component == null) {
+                reindex(point, null);
+                continue;
+            }
+            
+            DependencyRecorder recorder = DependencyRecorder.start();
+            try {
+                injector.reinject(point);
+            } catch (TypeLoadingException e) {
+                exceptions.add(e);
+            } catch (IllegalArgumentException e) {
+                exceptions.add(e);
+            } finally {
+                List<InjectionPoint> points = recorder.stop();
+                reindex(point, points.isEmpty() ? null : points.get(0).getKeys());
+            }
+            
+            injected.add(component);
+        }
+        
+        for (T instance : unindexed) {
+            injectInstance(key, false, instance);
+            injected.add(instance);
+        }
+        
+        if (!injected.isEmpty()) {
+            fireResourceInjectionEvent(injected.toArray());
+        }
+        FuseUtilities.buildAndThrowChainedException(exceptions);
+    }
+
+    /**
+     * <p>Stages a new theme for the instances injected by this Hive.  The
+     * specified sources are loaded into the specified ResourceLoader in a task
+     * of the executor, and every resource read by the fields of the injected
+     * instances is loaded from it.  The current theme is used until the returned
+     * Stage is committed by {@link #commit(Stage)}.</p>
+     * 
+     * @param executor  The executor running the loading and validation tasks.
+     * @param theme     The ResourceLoader receiving the staged theme.
+     * @param sources   The theme files to load into the ResourceLoader.
+     * @return The staged theme.
+     * @see ResourceInjector#stage(Executor, ResourceLoader, java.util.Collection, URL...)
+     * @since 1.1
+     */
+    public Stage stage(Executor executor, ResourceLoader theme, URL... sources) {
+        Set<Class<?>> classes = new LinkedHashSet<Class<?>>();
+        Map<Class<?>, String> boundClasses = new LinkedHashMap<Class<?>, String>();
+        
+        Iterable<WeakReference<T>> refs = getIterable();
+        if (refs != null) {
+            for (WeakReference<T> ref : refs) {
+                T instance = ref.get();
+                if (instance == null) {
+                    continue;
+                }
+                
+                String definition = isContainedIn(boundInstances, instance) ? getBinding(instance) : null;
+                if (definition != null) {
+                    boundClasses.put(instance.getClass(), definition);
+                } else {
+                    classes.add(instance.getClass());
+                }
+            }
+        }
+        
+        return ResourceInjector.get(key).stage(executor, theme, classes, boundClasses, sources);
+    }
+    
+    /**
+     * <p>Commits a staged theme and injects again the fields of the instances
+     * depending on the resources which differ from the previous theme, as by
+     * {@link #resourcesChanged(ResourceLoader, Set)}.  The staged theme is
+     * rolled back if it is not valid.</p>
+     * 
+     * @param stage The staged theme to commit.
+     * @throws TypeLoadingException If a resource of the staged theme cannot be loaded.
+     * @throws IllegalStateException If the theme is still staging or was rolled back.
+     * @see Stage#commit()
+     * @since 1.1
+     */
+    public void commit(Stage stage) {
+        resourcesChanged(stage.getTheme(), stage.commit());
+    }
+    
+    /**
+     * Used by Hive to get the name of the definition bound to an instance
+     * registered with {@link #addBoundInstance(Object)}.
+     * 
+     * @since 1.1
+     * @param instance  The bound instance.
+     * @return The name of the definition, or <code>null</code> if none is bound.
+     */
+    protected String getBinding(T instance) {
+        return bindings.get(instance.toString());
+    }
+
 	/**
 	 * Injects the specified instance(s) using the default ResourceInjector
 	 * instance without populating the superclass hierarchy of the instances.  
@@ -518,10 +679,87 @@ public class Hive<T> {
     }
 
     private void injectInstance(Object key, boolean populateHierarchy, T instance) {
-        if (isContainedIn(boundInstances, instance)) {
-            getBindInjectionProvider().inject(key, true, instance);
-        } else {
-            getStandardInjectionProvider().inject(key, populateHierarchy, instance);
+        DependencyRecorder recorder = DependencyRecorder.start();
+        try {
+            if (isContainedIn(boundInstances, instance)) {
+                getBindInjectionProvider().inject(key, true, instance);
+            } else {
+                getStandardInjectionProvider().inject(key, populateHierarchy, instance);
+            }
+        } finally {
+            index(instance, recorder.stop());
+        }
+    }
+    
+    // replaces the injection points recorded by a previous injection of the instance
+    private void index(T instance, List<InjectionPoint> points) {
+        synchronized (dependents) {
+            removeCollectedInstances();
+            
+            InstanceReference<T> ref = new InstanceReference<T>(instance, null);
+            List<InjectionPoint> previous = injectionPoints.remove(ref);
+            if (previous != null) {
+                for (InjectionPoint point : previous) {
+                    unindex(point);
+                }
+            }
+            unindexedInstances.remove(ref);
+            
+            ref = new InstanceReference<T>(instance, collectedInstances);
+            if (points.isEmpty()) {
+                unindexedInstances.add(ref);
+                return;
+            }
+            
+            injectionPoints.put(ref, points);
+            for (InjectionPoint point : points) {
+                index(point);
+            }
+        }
+    }
+    
+    // drops the injection points of the instances which were garbage collected, so that
+    // their fields, classes and BeanInfo(s) do not outlive them
+    @SuppressWarnings("unchecked")
+    private void removeCollectedInstances() {
+        InstanceReference<T> ref;
+        while ((ref = (InstanceReference<T>) collectedInstances.poll()) != null) {
+            unindexedInstances.remove(ref);
+            
+            List<InjectionPoint> points = injectionPoints.remove(ref);
+            if (points != null) {
+                for (InjectionPoint point : points) {
+                    unindex(point);
+                }
+            }
+        }
+    }
+    
+    private void reindex(InjectionPoint point, Set<String> keys) {
+        synchronized (dependents) {
+            unindex(point);
+            point.setKeys(keys);
+            index(point);
+        }
+    }
+    
+    private void index(InjectionPoint point) {
+        for (String resource : point.getKeys()) {
+            Set<InjectionPoint> points = dependents.get(resource);
+            if (points == null) {
+                points = new HashSet<InjectionPoint>();
+                dependents.put(resource, points);
+            }
+            points.add(point);
+        }
+    }
+    
+    private void unindex(InjectionPoint point) {
+        for (String resource : point.getKeys()) {
+            Set<InjectionPoint> points = dependents.get(resource);
+            if (points != null && points.remove(point) && points.isEmpty()) {
+                dependents.remove(resource);
+            }
         }
     }
 	
@@ -584,6 +822,35 @@ public class Hive<T> {
         return false;
     }
 	
+    // weak reference comparing referents by identity, so that equal instances are indexed separately;
+    // a cleared reference is only equal to itself
+    private static final class InstanceReference<I> extends WeakReference<I> {
+        private final int hash;
+        
+        private InstanceReference(I instance, ReferenceQueue<? super I> queue) {
+            super(instance, queue);
+            hash = System.identityHashCode(instance);
+        }
+        
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+        
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof InstanceReference<?>)) {
+                return false;
+            }
+            
+            Object instance = get();
+            return instance != null && instance == ((InstanceReference<?>) obj).get();
+        }
+    }
+	
 	/**
 	 * Represents an event which is fired when the <code>load</code>
 	 * method is called.
@@ -0,0 +1,77 @@
+/**
+ * Copyright (c) 2006, Sun Microsystems, Inc
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 
+ *   * Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *   * Redistributions in binary form must reproduce the above
+ *     copyright notice, this list of conditions and the following 
+ *     disclaimer in the documentation and/or other materials provided 
+ *     with the distribution.
+ *   * Neither the name of the Fuse project nor the names of its
+ *     contributors may be used to endorse or promote products derived 
+ *     from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.jdesktop.fuse;
+
+import java.util.List;
+
+/**
+ * <p>A ResourceLoader which indexes the structure of its keys.  Resource keys
+ * are made of segments separated by dots: <code>SimpleClassName.field</code>,
+ * <code>*.field</code>, <code>Outer$Inner.field</code>, the <code>.[i]</code>
+ * suffixes of array elements and the child keys of configured resources.
+ * ResourceInjector uses this interface, when the loader implements it, to find
+ * the keys nested under a given key without building and probing every candidate
+ * key.  Loaders answer <code>findKey</code> however is cheapest for their store,
+ * which for a hash map is two lookups.</p>
+ * 
+ * <p>Implementing this interface is optional.  The resource loaders of the
+ * <code>org.jdesktop.fuse.rl</code> package backed by an in-memory store, such as
+ * PropertiesResourceLoader and XMLResourceLoader, implement it.</p>
+ *
+ * @see ResourceInjector#setLoader(ResourceLoader)
+ * @since 1.1
+ */
+public interface IndexedResourceLoader extends ResourceLoader {
+
+    /**
+     * Returns <code>scope.name</code> if such a key exists, otherwise
+     * <code>*.name</code> if such a key exists, otherwise <code>null</code>.
+     * 
+     * @param scope The first segment of the class-specific key, usually the
+     *              simple name of a class.
+     * @param name  The remaining segments of the key.
+     * @return The existing key to use or <code>null</code>.
+     */
+    public String findKey(String scope, String name);
+
+    /**
+     * Returns every key nested under the specified key, that is every key
+     * starting with <code>key</code> followed by a dot, in ascending order.  The
+     * key itself is not included.  ResourceInjector uses this method to fetch
+     * the child keys of a resource in a single scan and to infer the length of
+     * arrays whose length is left empty.
+     * 
+     * @param key   The key whose nested keys should be returned.
+     * @return The nested keys, possibly an empty list.
+     */
+    public List<String> subKeys(String key);
+}
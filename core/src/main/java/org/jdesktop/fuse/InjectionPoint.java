@@ -0,0 +1,99 @@
+/**
+ * Copyright (c) 2006, Sun Microsystems, Inc
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 
+ *   * Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *   * Redistributions in binary form must reproduce the above
+ *     copyright notice, this list of conditions and the following 
+ *     disclaimer in the documentation and/or other materials provided 
+ *     with the distribution.
+ *   * Neither the name of the Fuse project nor the names of its
+ *     contributors may be used to endorse or promote products derived 
+ *     from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.jdesktop.fuse;
+
+import java.beans.BeanInfo;
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Field;
+import java.util.Collections;
+import java.util.Set;
+
+/**
+ * A field injected on a given component together with the resource keys its
+ * injection read, as recorded by DependencyRecorder.  The component is held
+ * weakly.
+ *
+ * @since 1.1
+ */
+final class InjectionPoint {
+    private final WeakReference<Object> component;
+    private final Class<?> componentClass;
+    private final Field field;
+    private final BeanInfo beanInfo;
+    private final InjectedResource annotation;
+    private final String definition;
+    
+    private volatile Set<String> keys;
+
+    InjectionPoint(Object component, Class<?> componentClass, Field field, BeanInfo beanInfo,
+                   InjectedResource annotation, String definition, Set<String> keys) {
+        this.component = new WeakReference<Object>(component);
+        this.componentClass = componentClass;
+        this.field = field;
+        this.beanInfo = beanInfo;
+        this.annotation = annotation;
+        this.definition = definition;
+        this.keys = keys;
+    }
+
+    Object getComponent() {
+        return component.get();
+    }
+
+    Class<?> getComponentClass() {
+        return componentClass;
+    }
+
+    Field getField() {
+        return field;
+    }
+
+    BeanInfo getBeanInfo() {
+        return beanInfo;
+    }
+
+    InjectedResource getAnnotation() {
+        return annotation;
+    }
+
+    String getDefinition() {
+        return definition;
+    }
+
+    Set<String> getKeys() {
+        return keys;
+    }
+
+    void setKeys(Set<String> keys) {
+        this.keys = keys == null ? Collections.<String>emptySet() : keys;
+    }
+}
@@ -50,21 +50,22 @@ abstract class InjectionProvider {
         }
     }
     
-    abstract void inject(ResourceInjector injector, Object component, Class<?> componentClass,
-                         AnnotatedField field, BeanInfo info, boolean useBeanInfo, boolean populateHierarchy);
+    abstract void inject(ResourceInjector injector, Generation generation, Object component, Class<?> componentClass,
+                         AnnotatedField field, BeanInfo info, boolean populateHierarchy);
     
     private final static class SimpleInjectionProvider extends InjectionProvider {
         @Override
-        void inject(ResourceInjector injector, Object component, Class<?> componentClass,
-                    AnnotatedField field, BeanInfo info, boolean useBeanInfo, boolean populateHierarchy) {
-            injector.injectResource(component, componentClass, field.getField(), info, field.getAnnotation(), null);
+        void inject(ResourceInjector injector, Generation generation, Object component, Class<?> componentClass,
+                    AnnotatedField field, BeanInfo info, boolean populateHierarchy) {
+            injector.injectResource(generation, component, componentClass, field.getField(), info,
+                                    field.getAnnotation(), null);
         }
     }
     
     private final static class InjectionFromDefinitionProvider extends InjectionProvider {
         @Override
-        void inject(ResourceInjector injector, Object component, Class<?> componentClass,
-                    AnnotatedField field, BeanInfo info, boolean useBeanInfo, boolean populateHierarchy) {
+        void inject(ResourceInjector injector, Generation generation, Object component, Class<?> componentClass,
+                    AnnotatedField field, BeanInfo info, boolean populateHierarchy) {
             Field componentField = field.getField();
             componentField.setAccessible(true);
 
@@ -81,14 +82,15 @@ abstract class InjectionProvider {
 
             BeanInfo beanInfo;
             try {
-                beanInfo = BeanInfoProvider.get(klass, useBeanInfo);
+                beanInfo = BeanInfoProvider.get(klass, generation.useBeanInfo);
             } catch (IntrospectionException e) {
                 throw new TypeLoadingException(e);
             }
 
             for (Field definedField : iterator) {
                 if (!Modifier.isStatic(definedField.getModifiers())) {
-                    injector.injectResource(component, componentClass, definedField, beanInfo, field.getAnnotation(), null);
+                    injector.injectResource(generation, component, componentClass, definedField, beanInfo,
+                                            field.getAnnotation(), null);
                 }
             }
         }
@@ -58,7 +58,27 @@ abstract class NameAndValueProvider {
         return new FieldNameProvider(field, klass);
     }
     
-    abstract String getNameAndValue(ResourceInjector injector, String[] nameValue);
+    abstract String getNameAndValue(Generation generation, String[] nameValue);
+    
+    // looks up SimpleClassName.name, else *.name, and returns the attempted keys
+    private static String getScopedNameAndValue(Generation generation, Class<?> klass,
+                                                String name, String[] nameValue) {
+        String scope = FuseUtilities.getSimpleName(klass);
+        String key = generation.findKey(scope, name);
+        
+        if (key == null) {
+            nameValue[0] = "*." + name;
+            nameValue[1] = null;
+        } else {
+            nameValue[0] = key;
+            nameValue[1] = generation.getValue(key);
+        }
+        
+        if (nameValue[1] == null || key.charAt(0) == '*') {
+            return scope + '.' + name + " and *." + name;
+        }
+        return "";
+    }
     
     private static final class DefinitionKeyProvider extends NameAndValueProvider {
         private final Field field;
@@ -70,9 +90,9 @@ abstract class NameAndValueProvider {
         }
 
         @Override
-        String getNameAndValue(ResourceInjector injector, String[] nameValue) {
+        String getNameAndValue(Generation generation, String[] nameValue) {
             nameValue[0] = definition.key(field.getName());
-            nameValue[1] = injector.getValue(nameValue[0]);
+            nameValue[1] = generation.getValue(nameValue[0]);
             
             return nameValue[0];
         }
@@ -90,22 +110,8 @@ abstract class NameAndValueProvider {
         }
 
         @Override
-        String getNameAndValue(ResourceInjector injector, String[] nameValue) {
-            String name = FuseUtilities.getSimpleName(klass.getName()) + '.' +
-                definition.name(field.getName());
-            String value = injector.getValue(name);
-            
-            StringBuilder attempted = new StringBuilder();
-            if (value == null) {
-                attempted.append(name).append(" and ");
-                name = "*." + definition.name(field.getName());
-                attempted.append(name);
-                value = injector.getValue(name);
-            }
-            nameValue[0] = name;
-            nameValue[1] = value;
-            
-            return attempted.toString();
+        String getNameAndValue(Generation generation, String[] nameValue) {
+            return getScopedNameAndValue(generation, klass, definition.name(field.getName()), nameValue);
         }
     }
     
@@ -119,21 +125,8 @@ abstract class NameAndValueProvider {
         }
 
         @Override
-        String getNameAndValue(ResourceInjector injector, String[] nameValue) {
-            String name = FuseUtilities.getSimpleName(klass.getName()) + '.' + field.getName();
-            String value = injector.getValue(name);
-
-            StringBuilder attempted = new StringBuilder();
-            if (value == null) {
-                attempted.append(name).append(" and ");
-                name = "*." + field.getName();
-                attempted.append(name);
-                value = injector.getValue(name);
-            }
-            nameValue[0] = name;
-            nameValue[1] = value;
-
-            return attempted.toString();
+        String getNameAndValue(Generation generation, String[] nameValue) {
+            return getScopedNameAndValue(generation, klass, field.getName(), nameValue);
         }
     }
 
@@ -145,9 +138,9 @@ abstract class NameAndValueProvider {
         }
 
         @Override
-        String getNameAndValue(ResourceInjector injector, String[] nameValue) {
+        String getNameAndValue(Generation generation, String[] nameValue) {
             nameValue[0] = annotation.key();
-            nameValue[1] = injector.getValue(nameValue[0]);
+            nameValue[1] = generation.getValue(nameValue[0]);
             
             return nameValue[0];
         }
@@ -163,22 +156,8 @@ abstract class NameAndValueProvider {
         }
 
         @Override
-        String getNameAndValue(ResourceInjector injector, String[] nameValue) {
-            String name = FuseUtilities.getSimpleName(klass.getName()) + '.' + annotation.name();
-            String value = injector.getValue(name);
-            
-            StringBuilder attempted = new StringBuilder();
-            if (value == null) {
-                attempted.append(name).append(" and ");
-                name = "*." + annotation.name();
-                attempted.append(name);
-                value = injector.getValue(name);
-            }
-            
-            nameValue[0] = name;
-            nameValue[1] = value;
-
-            return attempted.toString();
+        String getNameAndValue(Generation generation, String[] nameValue) {
+            return getScopedNameAndValue(generation, klass, annotation.name(), nameValue);
         }
     }
     
@@ -192,22 +171,8 @@ abstract class NameAndValueProvider {
         }
 
         @Override
-        String getNameAndValue(ResourceInjector injector, String[] nameValue) {
-            String name = FuseUtilities.getSimpleName(klass.getName()) + '.' + field.getName();
-            String value = injector.getValue(name);
-            
-            StringBuilder attempted = new StringBuilder();
-            if (value == null) {
-                attempted.append(name).append(" and ");
-                name = "*." + field.getName();
-                attempted.append(name);
-                value = injector.getValue(name);
-            }
-            
-            nameValue[0] = name;
-            nameValue[1] = value;
-
-            return attempted.toString();
+        String getNameAndValue(Generation generation, String[] nameValue) {
+            return getScopedNameAndValue(generation, klass, field.getName(), nameValue);
         }
     }
 }
@@ -0,0 +1,293 @@
+/**
+ * Copyright (c) 2006, Sun Microsystems, Inc
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 
+ *   * Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *   * Redistributions in binary form must reproduce the above
+ *     copyright notice, this list of conditions and the following 
+ *     disclaimer in the documentation and/or other materials provided 
+ *     with the distribution.
+ *   * Neither the name of the Fuse project nor the names of its
+ *     contributors may be used to endorse or promote products derived 
+ *     from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.jdesktop.fuse;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p>The progress of resources being preloaded by a ResourceInjector.  Each
+ * resource is loaded by its TypeLoader in a task of the Executor given to the
+ * ResourceInjector, which fills the TypeLoader cache so that injecting the
+ * resource later only costs a cache hit.</p>
+ * 
+ * <p>Most TypeLoader(s) cache their values weakly, so the loaded resources are
+ * kept by the Preload until {@link #release()} is called.  Keep a reference to
+ * the Preload until the screens it prepares were injected; once it is garbage
+ * collected, so are the resources no component uses.</p>
+ * 
+ * <p>A resource which fails to load does not stop the others: its error is
+ * reported by {@link #getErrors()} and the same error is raised again when
+ * the resource is injected.  {@link #get()} therefore never throws an
+ * ExecutionException.  Cancelling skips the resources which did not start
+ * loading yet; as for any Future, a cancelled Preload is done at once.</p>
+ * 
+ * @see ResourceInjector#preload(ResourceProfile, Executor)
+ * @see ResourceInjector#preload(Executor, Class...)
+ * @since 1.1
+ */
+public final class Preload implements Future<Void> {
+    private final int total;
+    private final AtomicInteger completed = new AtomicInteger();
+    private final CountDownLatch done;
+    private final Map<String, Throwable> errors = new LinkedHashMap<String, Throwable>();
+    private volatile boolean cancelled;
+    
+    private final Runnable completion;
+    private final AtomicBoolean completionRun = new AtomicBoolean();
+    
+    private List<Task> pending;
+    
+    // the loaded resources, so that caches with a weak policy do not drop them
+    private final List<Object> resources = new ArrayList<Object>();
+    private boolean released;
+    
+    private Preload(List<Task> tasks, Map<String, Throwable> errors, Runnable completion) {
+        this.total = tasks.size() + errors.size();
+        this.done = new CountDownLatch(tasks.size());
+        this.errors.putAll(errors);
+        this.completed.set(errors.size());
+        this.completion = completion;
+        this.pending = tasks;
+    }
+    
+    static Preload start(ResourceInjector injector, Generation generation, List<Task> tasks,
+                         Map<String, Throwable> errors, Executor executor) {
+        Preload preload = create(tasks, errors, null);
+        preload.submit(injector, generation, executor);
+        return preload;
+    }
+    
+    /**
+     * Creates a Preload whose tasks are not submitted yet.  Resources whose
+     * value could not be resolved are passed as errors and count as completed.
+     * The completion, if any, runs once every task completed.
+     */
+    static Preload create(List<Task> tasks, Map<String, Throwable> errors, Runnable completion) {
+        // a key shared by several fields is loaded once
+        Set<String> seen = new HashSet<String>();
+        List<Task> unique = new ArrayList<Task>(tasks.size());
+        for (Task task : tasks) {
+            if (seen.add(task.loader.getClass().getName() + '\n' + task.name)) {
+                unique.add(task);
+            }
+        }
+        
+        return new Preload(unique, errors, completion);
+    }
+    
+    /**
+     * Submits a task per resource to the executor.
+     */
+    void submit(final ResourceInjector injector, final Generation generation, Executor executor) {
+        List<Task> tasks = pending;
+        pending = null;
+        
+        for (final Task task : tasks) {
+            Runnable runnable = new Runnable() {
+                public void run() {
+                    try {
+                        if (!cancelled) {
+                            keep(injector.loadResource(generation, task.loader, task.name, task.value,
+                                                       task.resolver));
+                        }
+                    } catch (Throwable e) {
+                        fail(task.name, e);
+                    } finally {
+                        complete();
+                    }
+                }
+            };
+            
+            try {
+                executor.execute(runnable);
+            } catch (RejectedExecutionException e) {
+                fail(task.name, e);
+                complete();
+            }
+        }
+        
+        if (tasks.isEmpty()) {
+            runCompletion();
+        }
+    }
+    
+    private void complete() {
+        completed.incrementAndGet();
+        done.countDown();
+        
+        if (done.getCount() == 0) {
+            runCompletion();
+        }
+    }
+    
+    private void runCompletion() {
+        if (completion != null && completionRun.compareAndSet(false, true)) {
+            completion.run();
+        }
+    }
+    
+    private void keep(Object resource) {
+        synchronized (resources) {
+            if (!released) {
+                resources.add(resource);
+            }
+        }
+    }
+    
+    private void fail(String name, Throwable e) {
+        synchronized (errors) {
+            errors.put(name, e);
+        }
+    }
+    
+    /**
+     * @return The number of resources to preload.
+     */
+    public int getTotal() {
+        return total;
+    }
+    
+    /**
+     * @return The number of resources which were loaded, failed or were skipped.
+     */
+    public int getCompleted() {
+        return completed.get();
+    }
+    
+    /**
+     * Returns the errors raised so far, keyed by resource key, in the order
+     * they were raised.
+     * 
+     * @return The errors raised by the resources which failed to load.
+     */
+    public Map<String, Throwable> getErrors() {
+        synchronized (errors) {
+            return Collections.unmodifiableMap(new LinkedHashMap<String, Throwable>(errors));
+        }
+    }
+    
+    /**
+     * Releases the loaded resources, which the TypeLoader caches then keep
+     * according to their {@link TypeLoader.CachePolicy}.  The resources loaded
+     * after this call are not kept either.
+     */
+    public void release() {
+        synchronized (resources) {
+            released = true;
+            resources.clear();
+        }
+    }
+    
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        if (isDone()) {
+            return false;
+        }
+        
+        cancelled = true;
+        return true;
+    }
+    
+    public boolean isCancelled() {
+        return cancelled;
+    }
+    
+    public boolean isDone() {
+        return cancelled || done.getCount() == 0;
+    }
+    
+    /**
+     * Waits until every resource was loaded, failed or was skipped.
+     * 
+     * @return <code>null</code>.
+     */
+    public Void get() throws InterruptedException {
+        if (!cancelled) {
+            done.await();
+        }
+        checkCancelled();
+        return null;
+    }
+    
+    /**
+     * Waits until every resource was loaded, failed or was skipped, at most
+     * for the specified time.
+     * 
+     * @return <code>null</code>.
+     */
+    public Void get(long timeout, TimeUnit unit) throws InterruptedException, TimeoutException {
+        if (!cancelled && !done.await(timeout, unit)) {
+            throw new TimeoutException(completed.get() + " of " + total + " resources preloaded");
+        }
+        checkCancelled();
+        return null;
+    }
+    
+    private void checkCancelled() {
+        if (cancelled) {
+            throw new CancellationException(completed.get() + " of " + total + " resources preloaded");
+        }
+    }
+    
+    @Override
+    public String toString() {
+        return completed.get() + " of " + total + " resources preloaded, " + getErrors().size() + " errors";
+    }
+    
+    static final class Task {
+        final String name;
+        final String value;
+        final TypeLoader<?> loader;
+        final Class<?> resolver;
+        
+        Task(String name, String value, TypeLoader<?> loader, Class<?> resolver) {
+            this.name = name;
+            this.value = value;
+            this.loader = loader;
+            this.resolver = resolver;
+        }
+    }
+}
@@ -0,0 +1,114 @@
+/**
+ * Copyright (c) 2006, Sun Microsystems, Inc
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 
+ *   * Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *   * Redistributions in binary form must reproduce the above
+ *     copyright notice, this list of conditions and the following 
+ *     disclaimer in the documentation and/or other materials provided 
+ *     with the distribution.
+ *   * Neither the name of the Fuse project nor the names of its
+ *     contributors may be used to endorse or promote products derived 
+ *     from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.jdesktop.fuse;
+
+/**
+ * <p>This class groups the interfaces a TypeLoader can implement to load
+ * primitive values without boxing them.  When an injected field is declared with a
+ * primitive type and the TypeLoader selected for that field implements the matching
+ * interface, ResourceInjector parses the resource value through that interface and
+ * writes it into the field with the corresponding primitive setter (such as
+ * <code>Field.setInt</code>).  No wrapper instance is created and the TypeLoader
+ * cache is not consulted, so numeric layout constants inject without allocation.</p>
+ * 
+ * <p>Since no instance of the wrapper type exists on this path, neither
+ * <code>getChildKeys</code> nor <code>configureType</code> are invoked.  TypeLoader(s)
+ * supporting sub-properties should therefore not implement these interfaces.  When the
+ * field is injected through a JavaBean mutator, the value is boxed to invoke it.</p>
+ * 
+ * <p>Implementations must throw a TypeLoadingException naming the resource if the
+ * value cannot be parsed, exactly as <code>loadType</code> would.</p>
+ * 
+ * @see TypeLoader
+ * @see ResourceInjector#setUseBeanInfo(boolean)
+ * @since 1.1
+ */
+public final class PrimitiveLoader {
+    private PrimitiveLoader() {
+    }
+
+    /**
+     * Loads <code>boolean</code> fields.
+     */
+    public interface BooleanLoader {
+        boolean parseBoolean(String name, CharSequence value);
+    }
+
+    /**
+     * Loads <code>byte</code> fields.
+     */
+    public interface ByteLoader {
+        byte parseByte(String name, CharSequence value);
+    }
+
+    /**
+     * Loads <code>char</code> fields.
+     */
+    public interface CharLoader {
+        char parseChar(String name, CharSequence value);
+    }
+
+    /**
+     * Loads <code>short</code> fields.
+     */
+    public interface ShortLoader {
+        short parseShort(String name, CharSequence value);
+    }
+
+    /**
+     * Loads <code>int</code> fields.
+     */
+    public interface IntLoader {
+        int parseInt(String name, CharSequence value);
+    }
+
+    /**
+     * Loads <code>long</code> fields.
+     */
+    public interface LongLoader {
+        long parseLong(String name, CharSequence value);
+    }
+
+    /**
+     * Loads <code>float</code> fields.
+     */
+    public interface FloatLoader {
+        float parseFloat(String name, CharSequence value);
+    }
+
+    /**
+     * Loads <code>double</code> fields.
+     */
+    public interface DoubleLoader {
+        double parseDouble(String name, CharSequence value);
+    }
+}
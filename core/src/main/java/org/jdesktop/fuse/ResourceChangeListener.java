@@ -0,0 +1,60 @@
+/**
+ * Copyright (c) 2006, Sun Microsystems, Inc
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 
+ *   * Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *   * Redistributions in binary form must reproduce the above
+ *     copyright notice, this list of conditions and the following 
+ *     disclaimer in the documentation and/or other materials provided 
+ *     with the distribution.
+ *   * Neither the name of the Fuse project nor the names of its
+ *     contributors may be used to endorse or promote products derived 
+ *     from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.jdesktop.fuse;
+
+import java.util.Set;
+
+/**
+ * <p>Any classes implementing this interface can be notified when the values
+ * of individual resources change, for example when a watched theme file is
+ * edited.  Listeners are registered with the ResourceLoader publishing the
+ * changes, such as <code>org.jdesktop.fuse.rl.WatchingResourceLoader</code>.
+ * Hive implements this interface to re-inject its instances.</p>
+ * 
+ * <p>Notifications are delivered on a thread owned by the publishing loader.
+ * Listeners updating user interface components must hand the work over to the
+ * appropriate thread.</p>
+ * 
+ * @see Hive#resourcesChanged(ResourceLoader, Set)
+ * @since 1.1
+ */
+public interface ResourceChangeListener {
+    
+    /**
+     * Called after the values of the specified resource keys changed.  The set
+     * contains keys whose value was added, modified or removed.
+     * 
+     * @param loader    The ResourceLoader whose resources changed.
+     * @param keys      The keys of the changed resources.
+     */
+    public void resourcesChanged(ResourceLoader loader, Set<String> keys);
+}
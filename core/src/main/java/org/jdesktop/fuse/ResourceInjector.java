@@ -34,18 +34,33 @@ package org.jdesktop.fuse;
 import java.beans.BeanInfo;
 import java.beans.IntrospectionException;
 import java.io.File;
+import java.io.IOException;
 import java.io.InputStream;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
 import java.lang.reflect.Field;
 import java.lang.reflect.Modifier;
+import java.net.MalformedURLException;
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import org.jdesktop.fuse.rl.PropertiesResourceLoader;
@@ -57,7 +72,9 @@ import org.jdesktop.fuse.rl.PropertiesResourceLoader;
  * reflectively and calls the appropriate TypeLoader(s) required to load
  * the resource from the properties file and convert it into the corresponding
  * Java object.  This class is completely thread safe and implements the
- * multi-instance Singleton pattern.</p>
+ * multi-instance Singleton pattern.  Injecting takes no lock: every call
+ * reads the current configuration once and uses it until it returns, while
+ * changes of configuration are serialized and published at once.</p>
  *
  * <p>To use this class, you must first get an instance using the static
  * <code>get()</code> or <code>get(Object)</code> method.  Fuse
@@ -103,32 +120,45 @@ import org.jdesktop.fuse.rl.PropertiesResourceLoader;
  * @author Daniel Spiewak
  */
 public final class ResourceInjector {
+    // concurrent collections rather than monitors, which would pin virtual threads
+    private static final ConcurrentMap<Object, ResourceInjector> instances =
+        new ConcurrentHashMap<Object, ResourceInjector>();
+    // keys which may pin a class loader, such as plugin objects and classes, see KeyReference
+    private static final ConcurrentMap<KeyReference, ResourceInjector> weakInstances =
+        new ConcurrentHashMap<KeyReference, ResourceInjector>();
+    private static final ReferenceQueue<Object> collectedKeys = new ReferenceQueue<Object>();
+    private static final Map<String, Object> commonProperties =
+        new ConcurrentHashMap<String, Object>();
+    // copied on write so that every Generation refers to an immutable map
+    private static final AtomicReference<Map<String, Definition>> definitions =
+        new AtomicReference<Map<String, Definition>>(Collections.<String, Definition>emptyMap());
+    
     private static final ResourceInjector DEFAULT_INSTANCE = new ResourceInjector(null);
-    private static final Map<Object, ResourceInjector> instances = new HashMap<Object, ResourceInjector>();
-    private static Map<String, Object> commonProperties  = Collections.synchronizedMap(
-        new HashMap<String, Object>());
-    private static final Map<String, Definition> definitions = Collections.synchronizedMap(
-        new HashMap<String, Definition>());
-    
-    private static final List<FuseModule> modules = Collections.synchronizedList(
-        new LinkedList<FuseModule>());
+    
+    private static final List<FuseModule> modules = new CopyOnWriteArrayList<FuseModule>();
     private static final ReadWriteLock moduleLocker = new ReentrantReadWriteLock();
+    private static final ThreadLocal<FuseModule> initializingModule = new ThreadLocal<FuseModule>();
     
-    private final ReadWriteLock locker = new ReentrantReadWriteLock();
-    private final Set<String> cycle = new TreeSet<String>();
+    // injections read the current generation without locking, changes are serialized by writer
+    private final AtomicReference<Generation> generation;
+    private final Lock writer = new ReentrantLock();
+    // the key in instances, or its KeyReference in weakInstances
     private final Object key;
     
-    private boolean useBeanInfo = false;
-    
-    private ResourceLoader loader = new PropertiesResourceLoader();
+    // the theme files loaded since the loader was last cleared, null if one cannot be fingerprinted
+    private final Object snapshotLock = new Object();
+    private File snapshotDirectory;
+    private List<String> snapshotSources = new ArrayList<String>();
+    private volatile ResourceSnapshot snapshot;
     
-    private final Map<String, Object> typeProperties;
+    private volatile ResourceProfile profile;
     
     private ResourceInjector(Object key) {
         this.key = key;
 
-        typeProperties = Collections.synchronizedMap(
-            new FallbackMap<String, Object>(commonProperties));
+        generation = new AtomicReference<Generation>(new Generation(
+            new PropertiesResourceLoader(), commonProperties, Collections.<String, Object>emptyMap(),
+            false, definitions.get()));
     }
     
     /**
@@ -139,9 +169,14 @@ public final class ResourceInjector {
      * @see #setProperty(String, Object)
      */
     public void reset() {
-        locker.writeLock().lock();
-        loader.clear();
-        locker.writeLock().unlock();
+        writer.lock();
+        try {
+            generation.get().loader.clear();
+            loaderChanged();
+            resetSnapshotSources();
+        } finally {
+            writer.unlock();
+        }
     }
     
     /**
@@ -152,10 +187,18 @@ public final class ResourceInjector {
      */
     public void dispose() {
         if (key != null) {
-            locker.writeLock().lock();
-            loader.clear();
-            instances.remove(key);
-            locker.writeLock().unlock();
+            writer.lock();
+            try {
+                generation.get().loader.clear();
+                loaderChanged();
+                if (key instanceof KeyReference) {
+                    weakInstances.remove(key);
+                } else {
+                    instances.remove(key);
+                }
+            } finally {
+                writer.unlock();
+            }
         }
     }
     
@@ -165,7 +208,14 @@ public final class ResourceInjector {
      * @param properties	A URL pointing to the resource properties file.
      */
     public void load(URL... properties) {
-        loader.load(properties);
+        writer.lock();
+        try {
+            generation.get().loader.load(properties);
+            loaderChanged();
+            addSnapshotSources(properties);
+        } finally {
+            writer.unlock();
+        }
     }
     
     /**
@@ -174,7 +224,14 @@ public final class ResourceInjector {
      * @param properties	An InputStream containing the resource properties.
      */
     public void load(InputStream... properties) {
-        loader.load(properties);
+        writer.lock();
+        try {
+            generation.get().loader.load(properties);
+            loaderChanged();
+            addSnapshotSources((URL) null);
+        } finally {
+            writer.unlock();
+        }
     }
     
     /**
@@ -184,7 +241,14 @@ public final class ResourceInjector {
      * @param properties	A path pointing to the resource properties file.
      */
     public void load(String... properties) {
-        loader.load(properties);
+        writer.lock();
+        try {
+            generation.get().loader.load(properties);
+            loaderChanged();
+            addSnapshotSources(ResourceInjector.class, properties);
+        } finally {
+            writer.unlock();
+        }
     }
     
     /**
@@ -195,7 +259,14 @@ public final class ResourceInjector {
      * @param properties	A path pointing to the resource properties file.
      */
     public void load(Class<?> klass, String... properties) {
-        loader.load(klass, properties);
+        writer.lock();
+        try {
+            generation.get().loader.load(klass, properties);
+            loaderChanged();
+            addSnapshotSources(klass, properties);
+        } finally {
+            writer.unlock();
+        }
     }
     
     /**
@@ -204,11 +275,34 @@ public final class ResourceInjector {
      * @param properties	A File pointing to the resource properties file.
      */
     public void load(File... properties) {
-        loader.load(properties);
+        URL[] urls = new URL[properties.length];
+        for (int i = 0; i < properties.length; i++) {
+            try {
+                urls[i] = properties[i].toURI().toURL();
+            } catch (MalformedURLException e) {
+                urls[i] = null;
+            }
+        }
+        
+        writer.lock();
+        try {
+            generation.get().loader.load(properties);
+            loaderChanged();
+            addSnapshotSources(urls);
+        } finally {
+            writer.unlock();
+        }
     }
     
     public void load(ResourceLoader... loaders) {
-        loader.load(loaders);
+        writer.lock();
+        try {
+            generation.get().loader.load(loaders);
+            loaderChanged();
+            addSnapshotSources((URL) null);
+        } finally {
+            writer.unlock();
+        }
     }
     
     /**
@@ -273,7 +367,7 @@ public final class ResourceInjector {
     
     void inject(boolean populateHierarchy, Class<?> componentClass, Object... components) {
         List<Exception> exceptions = new LinkedList<Exception>();
-        locker.readLock().lock();
+        Generation current = generation();
         
         for (Object component : components) {
             if (componentClass == null) {
@@ -289,15 +383,15 @@ public final class ResourceInjector {
             try {
                 FieldIterator iterator = FieldIterator.get(componentClass, populateHierarchy, false);
                 AnnotatedFieldSelector selector = AnnotatedFieldSelector.get(iterator);
-                BeanInfo beanInfo = BeanInfoProvider.get(componentClass, useBeanInfo);
+                BeanInfo beanInfo = BeanInfoProvider.get(componentClass, current.useBeanInfo);
                 
                 for (AnnotatedField annotatedField : selector) {
                     try {
                         InjectedResource annotation = annotatedField.getAnnotation();
                         InjectionProvider provider = InjectionProvider.get(annotation);
                         
-                        provider.inject(this, component, componentClass,
-                                        annotatedField, beanInfo, useBeanInfo, populateHierarchy);
+                        provider.inject(this, current, component, componentClass,
+                                        annotatedField, beanInfo, populateHierarchy);
                     } catch (TypeLoadingException e) {
                         exceptions.add(e);
                         //e.printStackTrace();
@@ -312,7 +406,6 @@ public final class ResourceInjector {
             }
         }
         
-        locker.readLock().unlock();
         FuseUtilities.buildAndThrowChainedException(exceptions);
     
     }
@@ -336,16 +429,16 @@ public final class ResourceInjector {
      */
     void inject(String definition, boolean populateHierarchy, Object instance) {
         List<Exception> exceptions = new LinkedList<Exception>();
-        locker.readLock().lock();
+        Generation current = generation();
         
         Class<?> klass = instance.getClass();
         try {
             FieldIterator iterator = FieldIterator.get(klass, populateHierarchy, true);
-            BeanInfo beanInfo = BeanInfoProvider.get(klass, useBeanInfo);
+            BeanInfo beanInfo = BeanInfoProvider.get(klass, current.useBeanInfo);
             
             for (Field field : iterator) {
                 if (!Modifier.isStatic(field.getModifiers())) {
-                    injectResource(instance, klass, field, beanInfo, null, definition);
+                    injectResource(current, instance, klass, field, beanInfo, null, definition);
                 }
             }
         } catch (TypeLoadingException e) {
@@ -356,7 +449,6 @@ public final class ResourceInjector {
             exceptions.add(e);
         }
         
-        locker.readLock().unlock();
         FuseUtilities.buildAndThrowChainedException(exceptions);
     }
 
@@ -368,7 +460,7 @@ public final class ResourceInjector {
      * @return The ResourceLoader instance currently in use
      */
     public ResourceLoader getLoader() {
-        return loader;
+        return generation.get().loader;
     }
     
     /**
@@ -380,9 +472,540 @@ public final class ResourceInjector {
      * @param loader	The ResourceLoader instance to use to load resource values.
      */
     public void setLoader(ResourceLoader loader) {
-        locker.writeLock().lock();
-        this.loader = loader;
-        locker.writeLock().unlock();
+        writer.lock();
+        try {
+            update(generation.get().withLoader(loader));
+            resetSnapshotSources();
+        } finally {
+            writer.unlock();
+        }
+    }
+    
+    /**
+     * <p>Enables the on-disk snapshot of loaded resources in the specified
+     * directory, or disables it when the directory is <code>null</code>.  The
+     * snapshot is disabled by default.</p>
+     * 
+     * <p>When enabled, the resources loaded by TypeLoader(s) which cache their
+     * values, such as colors, fonts, insets or dimensions, are recorded as they
+     * are injected and written by {@link #saveSnapshot()}, usually once the user
+     * interface has been injected.  On the next start, the resources are
+     * restored from the snapshot instead of being loaded again.  A snapshot is
+     * only restored when the Fuse version, the ResourceLoader class and the
+     * modification time and size of every theme file loaded in this
+     * ResourceInjector are the same as when it was saved.  Only strings, boxed
+     * primitives, primitive arrays, colors, insets, dimensions and fonts are
+     * recorded; other resources, such as images, are always loaded.  Loading resources
+     * from an InputStream or from another ResourceLoader disables the snapshot
+     * until {@link #reset()} since their content cannot be identified.</p>
+     * 
+     * <p>The snapshot does not detect changes to files referenced by resource
+     * values, such as fonts loaded from a file.  The directory should only be
+     * writable by the current user.</p>
+     *
+     * @param directory The directory of the snapshot files or <code>null</code>.
+     * @see #saveSnapshot()
+     * @since 1.1
+     */
+    public void setSnapshotDirectory(File directory) {
+        synchronized (snapshotLock) {
+            snapshotDirectory = directory;
+            openSnapshot();
+        }
+    }
+    
+    /**
+     * Returns the directory of the on-disk snapshot, or <code>null</code> when
+     * the snapshot is disabled.
+     *
+     * @return The snapshot directory or <code>null</code>.
+     * @see #setSnapshotDirectory(File)
+     * @since 1.1
+     */
+    public File getSnapshotDirectory() {
+        synchronized (snapshotLock) {
+            return snapshotDirectory;
+        }
+    }
+    
+    /**
+     * Writes the resources loaded since the theme files were loaded to the
+     * snapshot directory.  Does nothing when the snapshot is disabled.
+     *
+     * @throws TypeLoadingException If the snapshot cannot be written.
+     * @see #setSnapshotDirectory(File)
+     * @since 1.1
+     */
+    public void saveSnapshot() {
+        ResourceSnapshot current = snapshot;
+        if (current == null) {
+            return;
+        }
+        
+        try {
+            current.save();
+        } catch (IOException e) {
+            throw new TypeLoadingException("Cannot write the resource snapshot.", e);
+        }
+    }
+    
+    private void addSnapshotSources(Class<?> klass, String... paths) {
+        URL[] urls = new URL[paths.length];
+        for (int i = 0; i < paths.length; i++) {
+            urls[i] = klass.getResource(paths[i]);
+        }
+        
+        addSnapshotSources(urls);
+    }
+    
+    // a null URL stands for a source which cannot be fingerprinted
+    private void addSnapshotSources(URL... urls) {
+        synchronized (snapshotLock) {
+            if (snapshotSources == null) {
+                return;
+            }
+            
+            for (URL url : urls) {
+                String fingerprint = url == null ? null : ResourceSnapshot.fingerprint(url);
+                if (fingerprint == null) {
+                    snapshotSources = null;
+                    break;
+                }
+                
+                snapshotSources.add(fingerprint);
+            }
+            
+            openSnapshot();
+        }
+    }
+    
+    private void resetSnapshotSources() {
+        synchronized (snapshotLock) {
+            snapshotSources = new ArrayList<String>();
+            openSnapshot();
+        }
+    }
+    
+    // Never call without holding snapshotLock
+    private void openSnapshot() {
+        if (snapshotDirectory == null || snapshotSources == null || snapshotSources.isEmpty()) {
+            snapshot = null;
+            return;
+        }
+        
+        StringBuilder fingerprint = new StringBuilder();
+        fingerprint.append("fuse ").append(FuseUtilities.getVersion()).append('\n');
+        fingerprint.append("loader ").append(generation.get().loader.getClass().getName()).append('\n');
+        for (String source : snapshotSources) {
+            fingerprint.append(source).append('\n');
+        }
+        
+        snapshot = ResourceSnapshot.open(snapshotDirectory, fingerprint.toString());
+    }
+    
+    /**
+     * <p>Starts recording the resources loaded by this ResourceInjector in a new
+     * profile.  Recording only costs a clock reading per injected resource and
+     * nothing at all when it is stopped.</p>
+     * 
+     * @see #stopProfiling()
+     * @see ResourceProfile
+     * @since 1.1
+     */
+    public void startProfiling() {
+        profile = new ResourceProfile();
+    }
+    
+    /**
+     * Stops recording the loaded resources.  The returned profile is usually
+     * saved once the first screen of the application was injected and read
+     * on the next start to preload the resources.
+     * 
+     * @return The recorded profile, or <code>null</code> if no profile was
+     *         being recorded.
+     * @see #startProfiling()
+     * @see #preload(ResourceProfile, Executor)
+     * @since 1.1
+     */
+    public ResourceProfile stopProfiling() {
+        ResourceProfile recorded = profile;
+        profile = null;
+        
+        return recorded;
+    }
+    
+    /**
+     * <p>Loads the resources recorded in the specified profile in tasks of the
+     * specified executor, the most expensive first.  The resources are loaded
+     * from the current theme, filling the caches of their TypeLoader(s) so that
+     * the components injected later find them ready.  This method returns as
+     * soon as the tasks are submitted.</p>
+     * 
+     * <p>Loading a resource which is already cached costs a cache hit, so the
+     * application can start injecting its components before the preload is done.
+     * Resources whose TypeLoader caches nothing are not preloaded.  The loaded
+     * resources are kept by the returned Preload until it is released.</p>
+     * 
+     * @param profile   The profile of a previous run.
+     * @param executor  The executor running the loading tasks, for instance one
+     *                  returned by {@link FuseExecutors#newResourceExecutor()}.
+     * @return The progress of the preload.
+     * @see #startProfiling()
+     * @see ResourceProfile#read(File)
+     * @since 1.1
+     */
+    public Preload preload(ResourceProfile profile, Executor executor) {
+        List<Preload.Task> tasks = new ArrayList<Preload.Task>();
+        Map<String, Throwable> errors = new LinkedHashMap<String, Throwable>();
+        
+        // values are resolved here, so that every task loads from the same generation
+        Generation current = generation();
+        for (ResourceProfile.Entry entry : profile.getEntriesByCost()) {
+            TypeLoader<?> typeLoader = TypeLoaderFactory.getLoader(entry.loader);
+            if (typeLoader == null) {
+                continue;
+            }
+            
+            Class<?> resolver = null;
+            if (entry.resolver.length() > 0) {
+                try {
+                    resolver = Class.forName(entry.resolver, false, ResourceInjector.class.getClassLoader());
+                } catch (ClassNotFoundException e) {
+                    continue;
+                }
+            }
+            
+            // keys removed from the theme since the profile was recorded are skipped
+            addPreloadTask(current, tasks, errors, entry.name, typeLoader, resolver, false);
+        }
+        
+        return Preload.start(this, current, tasks, errors, executor);
+    }
+    
+    /**
+     * <p>Loads the resources of the fields annotated with {@link InjectedResource}
+     * in the specified classes, without any instance of these classes, in tasks of
+     * the specified executor.  The resources are found with the same keys as when
+     * an instance is injected with {@link #inject(Object...)}, including the fields
+     * of definitions, and fill the caches of their TypeLoader(s).  This is useful
+     * to prepare the components of a screen while the user is busy elsewhere, for
+     * instance on a login dialog.  This method returns as soon as the tasks are
+     * submitted.</p>
+     * 
+     * <p>Fields whose TypeLoader caches nothing, or which specify their own
+     * TypeLoader, are not preloaded.  A field whose resource cannot be found is
+     * reported by {@link Preload#getErrors()} under its scoped key, such as
+     * <code>MyPanel.background</code>.  The loaded resources are kept by
+     * the returned Preload until it is released.</p>
+     * 
+     * @param executor  The executor running the loading tasks, for instance one
+     *                  returned by {@link FuseExecutors#newResourceExecutor()}.
+     * @param classes   The classes whose resources are preloaded.
+     * @return The progress of the preload.
+     * @see #preloadKeys(Executor, Class, Class, Collection)
+     * @since 1.1
+     */
+    public Preload preload(Executor executor, Class<?>... classes) {
+        Generation current = generation();
+        Map<String, Throwable> errors = new LinkedHashMap<String, Throwable>();
+        List<Preload.Task> tasks = collectTasks(current, Arrays.asList(classes),
+                                                Collections.<Class<?>, String>emptyMap(), false, errors);
+        
+        return Preload.start(this, current, tasks, errors, executor);
+    }
+    
+    /**
+     * <p>Loads the resources of the specified keys as instances of the specified
+     * type in tasks of the specified executor, filling the cache of the TypeLoader
+     * of the type.  The resolver is the class the resources would be injected in
+     * and is used by some TypeLoader(s) to find files relative to it.  This method
+     * returns as soon as the tasks are submitted.  The loaded resources are kept
+     * by the returned Preload until it is released.</p>
+     * 
+     * @param executor  The executor running the loading tasks.
+     * @param type      The type of the resources, an array type loads every
+     *                  element of the arrays.
+     * @param resolver  The class the resources are loaded for.
+     * @param keys      The keys of the resources.
+     * @return The progress of the preload.
+     * @throws TypeLoadingException If the type is not supported.
+     * @see #preload(Executor, Class...)
+     * @since 1.1
+     */
+    public Preload preloadKeys(Executor executor, Class<?> type, Class<?> resolver, Collection<String> keys) {
+        List<Preload.Task> tasks = new ArrayList<Preload.Task>();
+        Map<String, Throwable> errors = new LinkedHashMap<String, Throwable>();
+        
+        Class<?> loadedType = type.isArray() ? type.getComponentType() : type;
+        TypeLoader<?> typeLoader = TypeLoaderFactory.getLoaderForType(loadedType);
+        
+        Generation current = generation();
+        for (String key : keys) {
+            try {
+                String value = current.getValue(key);
+                if (value == null) {
+                    throw new TypeLoadingException("Theme resource " + key + " do not exist.");
+                }
+                
+                addPreloadTasks(current, tasks, errors, key, value, type, typeLoader, resolver, false);
+            } catch (TypeLoadingException e) {
+                errors.put(key, e);
+            } catch (NumberFormatException e) {
+                errors.put(key, e);
+            }
+        }
+        
+        return Preload.start(this, current, tasks, errors, executor);
+    }
+    
+    /**
+     * <p>Stages a new theme to replace the current one.  The specified sources
+     * are loaded into the specified ResourceLoader, which must not be the loader
+     * in use, in a task of the executor.  Every resource read by the fields of
+     * the specified classes is then looked up and loaded from the staged theme,
+     * as by {@link #preload(Executor, Class...)}, including the resources whose
+     * TypeLoader caches nothing so that a malformed value is found before the
+     * theme is used.  The current theme is used by all injections until the
+     * returned Stage is committed.</p>
+     * 
+     * <p>The ResourceLoader can also be loaded beforehand, in which case no
+     * source is specified.  The snapshot set by
+     * {@link #setSnapshotDirectory(File)} is then disabled until the next
+     * {@link #reset()}, as when loading from a stream.</p>
+     * 
+     * @param executor  The executor running the loading and validation tasks.
+     * @param theme     The ResourceLoader receiving the staged theme.
+     * @param classes   The classes whose resources are validated.
+     * @param sources   The theme files to load into the ResourceLoader.
+     * @return The staged theme.
+     * @see Stage#commit()
+     * @see Hive#stage(Executor, ResourceLoader, URL...)
+     * @since 1.1
+     */
+    public Stage stage(Executor executor, ResourceLoader theme, Collection<Class<?>> classes, URL... sources) {
+        return stage(executor, theme, classes, Collections.<Class<?>, String>emptyMap(), sources);
+    }
+    
+    // The bound classes are validated with the fields of their definition, see Hive
+    Stage stage(Executor executor, ResourceLoader theme, Collection<Class<?>> classes,
+                Map<Class<?>, String> boundClasses, URL... sources) {
+        Generation base = generation();
+        if (theme == base.loader) {
+            throw new IllegalArgumentException("The staged ResourceLoader is already in use.");
+        }
+        
+        return Stage.start(this, base, theme, classes, boundClasses, sources, executor);
+    }
+    
+    // Replaces the loader of the generation a Stage was based on by its theme and returns the
+    // keys whose values differ
+    Set<String> commit(Generation base, ResourceLoader theme, URL[] sources) {
+        ResourceLoader previous;
+        ResourceLoader committed;
+        writer.lock();
+        try {
+            Generation current = generation();
+            if (!current.hasSameConfiguration(base)) {
+                throw new IllegalStateException("The theme or the properties changed since the stage started.");
+            }
+            
+            previous = current.resources;
+            update(current.withLoader(theme));
+            committed = generation.get().resources;
+            
+            resetSnapshotSources();
+            if (sources.length > 0) {
+                addSnapshotSources(sources);
+            } else {
+                addSnapshotSources((URL) null);
+            }
+        } finally {
+            writer.unlock();
+        }
+        
+        Set<String> changed = new HashSet<String>();
+        for (String key : previous) {
+            String value = committed.get(key);
+            if (value == null || !value.equals(previous.get(key))) {
+                changed.add(key);
+            }
+        }
+        for (String key : committed) {
+            if (previous.get(key) == null) {
+                changed.add(key);
+            }
+        }
+        
+        return changed;
+    }
+    
+    // Collects the tasks loading the resources of the fields of the classes; when validating,
+    // resources whose TypeLoader caches nothing and missing array elements are included
+    List<Preload.Task> collectTasks(Generation current, Collection<Class<?>> classes,
+                                    Map<Class<?>, String> boundClasses, boolean validate,
+                                    Map<String, Throwable> errors) {
+        List<Preload.Task> tasks = new ArrayList<Preload.Task>();
+        
+        for (Class<?> klass : classes) {
+            for (AnnotatedField annotatedField : AnnotatedFieldSelector.get(FieldIterator.get(klass, false, false))) {
+                Field field = annotatedField.getField();
+                InjectedResource annotation = annotatedField.getAnnotation();
+                
+                try {
+                    if (annotation.definition().length() == 0) {
+                        addPreloadTasks(current, tasks, errors, klass, field, annotation, null, validate);
+                        continue;
+                    }
+                    
+                    Definition definition = current.definitions.get(annotation.definition());
+                    if (definition == null) {
+                        continue;
+                    }
+                    
+                    for (Field definedField : FieldIterator.get(field.getType(), false, true)) {
+                        if (!Modifier.isStatic(definedField.getModifiers()) &&
+                            definition.isInjectedField(definedField.getName())) {
+                            addPreloadTasks(current, tasks, errors, klass, definedField, annotation, definition,
+                                            validate);
+                        }
+                    }
+                } catch (TypeLoadingException e) {
+                    errors.put(FuseUtilities.getSimpleName(klass) + '.' + field.getName(), e);
+                } catch (NumberFormatException e) {
+                    errors.put(FuseUtilities.getSimpleName(klass) + '.' + field.getName(), e);
+                }
+            }
+        }
+        
+        for (Map.Entry<Class<?>, String> bound : boundClasses.entrySet()) {
+            Class<?> klass = bound.getKey();
+            Definition definition = current.definitions.get(bound.getValue());
+            if (definition == null) {
+                continue;
+            }
+            
+            for (Field field : FieldIterator.get(klass, true, true)) {
+                if (Modifier.isStatic(field.getModifiers()) || !definition.isInjectedField(field.getName())) {
+                    continue;
+                }
+                
+                try {
+                    addPreloadTasks(current, tasks, errors, klass, field, null, definition, validate);
+                } catch (TypeLoadingException e) {
+                    errors.put(FuseUtilities.getSimpleName(klass) + '.' + field.getName(), e);
+                } catch (NumberFormatException e) {
+                    errors.put(FuseUtilities.getSimpleName(klass) + '.' + field.getName(), e);
+                }
+            }
+        }
+        
+        return tasks;
+    }
+    
+    // Adds the tasks loading the resource of a field, like injectField
+    private void addPreloadTasks(Generation current, List<Preload.Task> tasks, Map<String, Throwable> errors,
+                                 Class<?> klass, Field field, InjectedResource annotation, Definition definition,
+                                 boolean validate) {
+        String[] nameValue = new String[2];
+        getNameAndValue(current, klass, field, annotation, definition, nameValue);
+        String name = nameValue[0];
+        Class<?> type = field.getType();
+        
+        if (validate && !type.isArray()) {
+            TypeLoader<?> typeLoader = TypeLoaderProvider.get(name, field, annotation, definition);
+            addPreloadTask(current, tasks, errors, name, typeLoader, klass, true);
+            return;
+        }
+        
+        // TypeLoader(s) specified by the field are instantiated per injection and share no cache
+        if ((annotation != null && !annotation.loader().equals(TypeLoader.class)) ||
+            (definition != null && !definition.loader(name).equals(TypeLoader.class))) {
+            return;
+        }
+        
+        Class<?> loadedType = type.isArray() ? type.getComponentType() : type;
+        TypeLoader<?> typeLoader = TypeLoaderFactory.getLoaderForType(loadedType);
+        addPreloadTasks(current, tasks, errors, name, nameValue[1], type, typeLoader, klass, validate);
+    }
+    
+    private void addPreloadTasks(Generation current, List<Preload.Task> tasks, Map<String, Throwable> errors,
+                                 String name, String value, Class<?> type, TypeLoader<?> typeLoader,
+                                 Class<?> resolver, boolean validate) {
+        if (!type.isArray()) {
+            addPreloadTask(current, tasks, errors, name, typeLoader, resolver, validate);
+            return;
+        }
+        
+        for (String element : new SpecialArrayTypeLoader(type, this, current).getElementKeys(name, value)) {
+            addPreloadTask(current, tasks, errors, element, typeLoader, resolver, validate);
+        }
+    }
+    
+    private void addPreloadTask(Generation current, List<Preload.Task> tasks, Map<String, Throwable> errors,
+                                String name, TypeLoader<?> typeLoader, Class<?> resolver, boolean validate) {
+        if (!validate && typeLoader.getCachePolicy() == TypeLoader.CachePolicy.NONE) {
+            return;
+        }
+        
+        try {
+            String value = current.getValue(name);
+            if (value != null) {
+                tasks.add(new Preload.Task(name, value, typeLoader, resolver));
+            } else if (validate) {
+                errors.put(name, new TypeLoadingException("Theme resource " + name + " do not exist."));
+            }
+        } catch (TypeLoadingException e) {
+            errors.put(name, e);
+        }
+    }
+    
+    Object loadResource(Generation current, TypeLoader<?> typeLoader, String name, String value,
+                        Class<?> resolver) {
+        ResourceProfile recording = profile;
+        if (recording == null) {
+            return loadResource(snapshot, current, typeLoader, name, value, resolver);
+        }
+        
+        long start = System.nanoTime();
+        Object resource = loadResource(snapshot, current, typeLoader, name, value, resolver);
+        recording.record(name, typeLoader, resolver, System.nanoTime() - start);
+        
+        return resource;
+    }
+    
+    private static Object loadResource(ResourceSnapshot snapshot, Generation current, TypeLoader<?> typeLoader,
+                                       String name, String value, Class<?> resolver) {
+        if (snapshot == null) {
+            return typeLoader.loadTypeWithCaching(name, value, resolver, current.typeProperties);
+        }
+        
+        return snapshot.load(typeLoader, name, value, resolver, current.typeProperties);
+    }
+    
+    // The current generation, updated first if definitions were added or removed, or the
+    // loader was changed directly, since it was published
+    Generation generation() {
+        Generation current = generation.get();
+        Map<String, Definition> latest = definitions.get();
+        if (current.definitions == latest && current.isCurrent()) {
+            return current;
+        }
+        
+        Generation updated = current.withLoader(current.loader).withDefinitions(latest);
+        generation.compareAndSet(current, updated);
+        
+        return updated;
+    }
+    
+    // Never call without holding writer
+    private void update(Generation updated) {
+        generation.set(updated.withDefinitions(definitions.get()));
+    }
+    
+    // Never call without holding writer, publishes the resources the loader now holds
+    private void loaderChanged() {
+        Generation current = generation.get();
+        update(current.withLoader(current.loader));
     }
     
     /**
@@ -394,9 +1017,12 @@ public final class ResourceInjector {
      * @see #setCommonProperty(String, Object)
      */
     public void setProperty(String key, Object value) {
-        locker.writeLock().lock();
-        typeProperties.put(key, value);
-        locker.writeLock().unlock();
+        writer.lock();
+        try {
+            update(generation.get().withProperty(key, value));
+        } finally {
+            writer.unlock();
+        }
     }
     
     /**
@@ -410,7 +1036,7 @@ public final class ResourceInjector {
      * @since 0.3
      */
     public boolean isUseBeanInfo() {
-        return useBeanInfo;
+        return generation.get().useBeanInfo;
     }
 
     /**
@@ -431,11 +1057,12 @@ public final class ResourceInjector {
      * @since 0.3
      */
     public void setUseBeanInfo(boolean useAccessors) {
-        locker.writeLock().lock();
-        
-        this.useBeanInfo = useAccessors;
-        
-        locker.writeLock().unlock();
+        writer.lock();
+        try {
+            update(generation.get().withUseBeanInfo(useAccessors));
+        } finally {
+            writer.unlock();
+        }
     }
 
     /**
@@ -455,19 +1082,56 @@ public final class ResourceInjector {
      * of ResourceInjector while still maintaining the static, Singleton
      * properties.  If <code>null</code> is passed as the key the
      * default instance is returned.
+     * 
+     * <p>Keys of a class of the bootstrap class loader, such as strings, are
+     * compared with <code>equals()</code> and kept until the instance is
+     * disposed.  Other keys, including classes, are compared by identity and
+     * weakly referenced: once such a key is garbage collected, for example with
+     * the plugin it belongs to, its instance is dropped.</p>
      *
      * @param key	The key used to identify the Singleton instance.
      * @return	An instance of ResourceInjector.
      */
-    public static synchronized ResourceInjector get(Object key) {
+    public static ResourceInjector get(Object key) {
         if (key == null) {
             return DEFAULT_INSTANCE;
         }
         
+        if (isPinning(key)) {
+            return getWeaklyKeyed(key);
+        }
+        
         ResourceInjector injector = instances.get(key);
         if (injector == null) {
-            injector = new ResourceInjector(key);
-            instances.put(key, injector);
+            ResourceInjector created = new ResourceInjector(key);
+            injector = instances.putIfAbsent(key, created);
+            if (injector == null) {
+                injector = created;
+            }
+        }
+        
+        return injector;
+    }
+    
+    // true if holding the key could keep a class loader other than the bootstrap one
+    private static boolean isPinning(Object key) {
+        return key instanceof Class<?> || key.getClass().isArray() || key.getClass().getClassLoader() != null;
+    }
+    
+    private static ResourceInjector getWeaklyKeyed(Object key) {
+        KeyReference collected;
+        while ((collected = (KeyReference) collectedKeys.poll()) != null) {
+            weakInstances.remove(collected);
+        }
+        
+        ResourceInjector injector = weakInstances.get(new KeyReference(key, null));
+        if (injector == null) {
+            KeyReference ref = new KeyReference(key, collectedKeys);
+            ResourceInjector created = new ResourceInjector(ref);
+            injector = weakInstances.putIfAbsent(ref, created);
+            if (injector == null) {
+                injector = created;
+            }
         }
         
         return injector;
@@ -482,14 +1146,20 @@ public final class ResourceInjector {
      * @see #setProperty(String, Object)
      */
     public static void setCommonProperty(String key, Object value) {
-        commonProperties.put(key, value);
+        if (value == null) {
+            commonProperties.remove(key);
+        } else {
+            commonProperties.put(key, value);
+        }
     }
     
     /**
      * Adds a module reflectively obtained using the specified
      * class name.  The module must be a subclass of FuseModule.
      * This method is identical to calling <code>addModule(FuseModule)</code>
-     * and passing an instance of the specified class.
+     * and passing an instance of the specified class.  Nothing is done if
+     * a module of the same class has already been added, for example
+     * because it was discovered through <code>java.util.ServiceLoader</code>.
      *
      * @param module	A String class name indicating the module to add.
      * @see #addModule(FuseModule)
@@ -497,6 +1167,10 @@ public final class ResourceInjector {
      */
     @SuppressWarnings("unchecked")
     public static void addModule(String module) throws ModuleInitException {
+        if (isModuleAdded(module)) {
+            return;
+        }
+        
         Class<? extends FuseModule> clazz;
         FuseModule newModule;
         try {
@@ -530,7 +1204,8 @@ public final class ResourceInjector {
     /**
      * Adds the specified FuseModule instance.  This method is identical
      * to calling <code>addModule(String)</code> and passing the
-     * class name.
+     * class name.  Nothing is done if a module of the same class has
+     * already been added.
      *
      * @param mod	A FuseModule instance to add to ResourceInjector.
      * @see #addModule(String)
@@ -538,14 +1213,19 @@ public final class ResourceInjector {
      */
     public static void addModule(FuseModule mod) throws ModuleInitException {
         moduleLocker.writeLock().lock();
-        if (modules.contains(mod)) {
-            moduleLocker.writeLock().unlock();
-            return;
+        // a module may be added by name and discovered by ServiceLoader, as two instances
+        for (FuseModule added : modules) {
+            if (added.getClass().getName().equals(mod.getClass().getName())) {
+                moduleLocker.writeLock().unlock();
+                return;
+            }
         }
         modules.add(mod);
         FieldIterator.addStopPackages(mod.getStopPackages());
         moduleLocker.writeLock().unlock();
         
+        FuseModule previous = initializingModule.get();
+        initializingModule.set(mod);
         try {
             mod.init();
         } catch (ModuleInitException e) {
@@ -553,9 +1233,60 @@ public final class ResourceInjector {
             rethrow.initCause(e);
             
             throw rethrow;
+        } finally {
+            initializingModule.set(previous);
         }
     }
     
+    /**
+     * <p>Removes the specified FuseModule instance along with every TypeLoader
+     * and AutoInjectionProvider registered during its <code>init()</code> method.
+     * Once removed, Fuse holds no reference to the module, its TypeLoader(s) or the
+     * values they cached.  This allows modules loaded by a plugin class loader to
+     * be garbage collected when the plugin is unloaded.</p>
+     * 
+     * <p>Definitions referring to plugin classes must be removed separately with
+     * {@link #removeDefinition(String)}.  ResourceInjector instances keyed by plugin
+     * objects or classes are dropped with their key.</p>
+     *
+     * @param mod	The FuseModule instance to remove.
+     * @return <code>true</code> if the module had been added.
+     * @see #addModule(FuseModule)
+     * @since 1.1
+     */
+    public static boolean removeModule(FuseModule mod) {
+        moduleLocker.writeLock().lock();
+        boolean removed = modules.remove(mod);
+        moduleLocker.writeLock().unlock();
+        
+        if (removed) {
+            TypeLoaderFactory.removeTypeLoaders(mod);
+            AutoInjection.removeAutoInjectionProviders(mod);
+        }
+        
+        return removed;
+    }
+    
+    static boolean isModuleAdded(String className) {
+        moduleLocker.readLock().lock();
+        try {
+            for (FuseModule mod : modules) {
+                if (mod.getClass().getName().equals(className)) {
+                    return true;
+                }
+            }
+        } finally {
+            moduleLocker.readLock().unlock();
+        }
+        
+        return false;
+    }
+    
+    // The module whose init() method is running on the current thread, if any
+    static FuseModule getInitializingModule() {
+        return initializingModule.get();
+    }
+    
     /**
      * Adds the the specified definition to the cache identified by the
      * specified key.  The specified key is what will identify the Definition
@@ -569,12 +1300,75 @@ public final class ResourceInjector {
      * 	method to obtain field metadata.
      * @since 0.2
      */
-    public static synchronized void addDefinition(String key, Definition def) {
-        definitions.put(key, def);
+    public static void addDefinition(String key, Definition def) {
+        Map<String, Definition> current;
+        Map<String, Definition> updated;
+        do {
+            current = definitions.get();
+            updated = new HashMap<String, Definition>(current);
+            if (def == null) {
+                updated.remove(key);
+            } else {
+                updated.put(key, def);
+            }
+        } while (!definitions.compareAndSet(current, Collections.unmodifiableMap(updated)));
     }
     
-    void injectResource(Object component, Class<?> componentClass, Field field,
+    /**
+     * Removes the definition identified by the specified key from the cache.
+     *
+     * @param key	A String value identifying the Definition instance.
+     * @return The removed Definition instance or <code>null</code>.
+     * @see #addDefinition(String, Definition)
+     * @since 1.1
+     */
+    public static Definition removeDefinition(String key) {
+        Map<String, Definition> current;
+        Map<String, Definition> updated;
+        do {
+            current = definitions.get();
+            if (!current.containsKey(key)) {
+                return null;
+            }
+            
+            updated = new HashMap<String, Definition>(current);
+            updated.remove(key);
+        } while (!definitions.compareAndSet(current, Collections.unmodifiableMap(updated)));
+        
+        return current.get(key);
+    }
+    
+    void injectResource(Generation current, Object component, Class<?> componentClass, Field field,
                         BeanInfo beanInfo, InjectedResource annotation, String manualDefinition) {
+        DependencyRecorder recorder = DependencyRecorder.beginField();
+        if (recorder == null) {
+            injectField(current, component, componentClass, field, beanInfo, annotation, manualDefinition);
+            return;
+        }
+        
+        try {
+            injectField(current, component, componentClass, field, beanInfo, annotation, manualDefinition);
+        } finally {
+            recorder.endField(component, componentClass, field, beanInfo, annotation, manualDefinition);
+        }
+    }
+    
+    /**
+     * Injects the field described by the specified InjectionPoint again.  Used
+     * by Hive to update only the fields depending on changed resources.
+     */
+    void reinject(InjectionPoint point) {
+        Object component = point.getComponent();
+        if (component == null) {
+            return;
+        }
+        
+        injectResource(generation(), component, point.getComponentClass(), point.getField(),
+                       point.getBeanInfo(), point.getAnnotation(), point.getDefinition());
+    }
+    
+    private void injectField(Generation current, Object component, Class<?> componentClass, Field field,
+                             BeanInfo beanInfo, InjectedResource annotation, String manualDefinition) {
         if (component == null) {
             throw new TypeLoadingException("You cannot use a definition with " + field.getName() +
                                            ". Enclosing instance is null.");
@@ -583,7 +1377,8 @@ public final class ResourceInjector {
         Definition definition = null;
         if (manualDefinition != null || (annotation != null && annotation.definition().length() > 0)) {
             definition = (manualDefinition == null ?
-                          definitions.get(annotation.definition()) : definitions.get(manualDefinition));
+                          current.definitions.get(annotation.definition()) :
+                          current.definitions.get(manualDefinition));
 
             if (definition == null || !definition.isInjectedField(field.getName())) {
                 return;
@@ -591,36 +1386,67 @@ public final class ResourceInjector {
         }
 
         String[] nameValue = new String[2];
-        getNameAndValue(componentClass, field, annotation, definition, nameValue);
+        getNameAndValue(current, componentClass, field, annotation, definition, nameValue);
         String name = nameValue[0];
         String value = nameValue[1];
         
         Object resource;
+        ValueInjectionProvider provider = ValueInjectionProvider.get(field, beanInfo, current.useBeanInfo);
         
         if (field.getType().isArray()) {
-            TypeLoader<Object> typeloader = new SpecialArrayTypeLoader(field.getType(), this);
+            TypeLoader<Object> typeloader = new SpecialArrayTypeLoader(field.getType(), this, current);
 
-            resource = typeloader.loadTypeWithCaching(name, value, componentClass, typeProperties);
+            resource = typeloader.loadTypeWithCaching(name, value, componentClass, current.typeProperties);
         } else {
             TypeLoader<?> typeLoader = TypeLoaderProvider.get(name, field, annotation, definition);
 
-            resource = typeLoader.loadTypeWithCaching(name, value, componentClass, typeProperties);
-            configureResource(componentClass, name, typeLoader, resource);
+            if (field.getType().isPrimitive() &&
+                injectPrimitive(component, field.getType(), typeLoader, provider, name, value.trim())) {
+                return;
+            }
+
+            resource = loadResource(current, typeLoader, name, value, componentClass);
+            configureResource(current, componentClass, name, typeLoader, resource);
         }
 
-        ValueInjectionProvider provider = ValueInjectionProvider.get(field, beanInfo, useBeanInfo);
         provider.setValue(component, resource);
     }
     
-    private void getNameAndValue(Class<?> klass, Field field, InjectedResource annotation,
-                                 Definition definition, String[] nameValue) {
+    // Writes the value without boxing when the TypeLoader supports it, see PrimitiveLoader
+    private static boolean injectPrimitive(Object component, Class<?> type, TypeLoader<?> typeLoader,
+                                           ValueInjectionProvider provider, String name, String value) {
+        if (type == int.class && typeLoader instanceof PrimitiveLoader.IntLoader) {
+            provider.setInt(component, ((PrimitiveLoader.IntLoader) typeLoader).parseInt(name, value));
+        } else if (type == float.class && typeLoader instanceof PrimitiveLoader.FloatLoader) {
+            provider.setFloat(component, ((PrimitiveLoader.FloatLoader) typeLoader).parseFloat(name, value));
+        } else if (type == boolean.class && typeLoader instanceof PrimitiveLoader.BooleanLoader) {
+            provider.setBoolean(component, ((PrimitiveLoader.BooleanLoader) typeLoader).parseBoolean(name, value));
+        } else if (type == double.class && typeLoader instanceof PrimitiveLoader.DoubleLoader) {
+            provider.setDouble(component, ((PrimitiveLoader.DoubleLoader) typeLoader).parseDouble(name, value));
+        } else if (type == long.class && typeLoader instanceof PrimitiveLoader.LongLoader) {
+            provider.setLong(component, ((PrimitiveLoader.LongLoader) typeLoader).parseLong(name, value));
+        } else if (type == short.class && typeLoader instanceof PrimitiveLoader.ShortLoader) {
+            provider.setShort(component, ((PrimitiveLoader.ShortLoader) typeLoader).parseShort(name, value));
+        } else if (type == byte.class && typeLoader instanceof PrimitiveLoader.ByteLoader) {
+            provider.setByte(component, ((PrimitiveLoader.ByteLoader) typeLoader).parseByte(name, value));
+        } else if (type == char.class && typeLoader instanceof PrimitiveLoader.CharLoader) {
+            provider.setChar(component, ((PrimitiveLoader.CharLoader) typeLoader).parseChar(name, value));
+        } else {
+            return false;
+        }
+        
+        return true;
+    }
+    
+    private static void getNameAndValue(Generation current, Class<?> klass, Field field,
+                                        InjectedResource annotation, Definition definition, String[] nameValue) {
         NameAndValueProvider provider = NameAndValueProvider.get(klass, field, annotation, definition);
-        String firstAttempt = provider.getNameAndValue(this, nameValue);
+        String firstAttempt = provider.getNameAndValue(current, nameValue);
 
         if (nameValue[1] == null) {
             if (!klass.equals(field.getDeclaringClass())) {
                 provider = NameAndValueProvider.get(field.getDeclaringClass(), field, annotation, definition);
-                String secondAttempt = provider.getNameAndValue(this, nameValue);
+                String secondAttempt = provider.getNameAndValue(current, nameValue);
             
                 if (nameValue[1] == null) {
                     throw new TypeLoadingException("Theme resource " + firstAttempt + " and " +
@@ -633,89 +1459,63 @@ public final class ResourceInjector {
     }
 
     @SuppressWarnings("unchecked")
-    void configureResource(Class<?> klass, String name, TypeLoader typeloader, Object resource) {
+    static void configureResource(Generation current, Class<?> klass, String name,
+                                  TypeLoader typeloader, Object resource) {
+        String[] childKeys = typeloader.getChildKeys(resource);
         Map<String, String> values = new HashMap<String, String>();
-        for (String childKey : typeloader.getChildKeys(resource)) {
-            values.put(childKey, getValue(name + '.' + childKey));
-        }
-        typeloader.configureType(resource, values, klass, typeProperties);
-    }
-
-    // Never call without acquiring read lock locker
-    String getValue(String name) {
-        return getValue(name, false);
-    }
-    
-    // Never call without acquiring read lock locker
-    private String getValue(String name, boolean subCall) {
-        if (!subCall) {
-            cycle.clear();
-        }
-        
-        if (subCall && cycle.contains(name)) {
-            throw new TypeLoadingException("Theme resource " + name +
-                " cannot be resolved. Dependency cycle detected");
-        }
         
-        String value = loader.get(name);
-        if (value == null) {
-            return null;
-        }
-        
-        cycle.add(name);
-        value = resolveReferences(name, value);
-        cycle.remove(name);
-
-        return value;
-    }
-
-    private String resolveReferences(String name, String value) {
-        StringBuilder buffer = new StringBuilder(value.length());
-        StringBuilder reference = null;
-        
-        boolean backslash = false;
-        boolean inReference = false;
-
-        for (int i = 0; i < value.length(); i++) {
-            char c = value.charAt(i);
+        List<String> subKeys = childKeys.length > 0 ? current.subKeys(name) : null;
+        if (subKeys != null) {
+            // one scan finds the child keys which exist, the others are not looked up
+            Set<String> existing = new HashSet<String>();
+            for (String key : subKeys) {
+                existing.add(key.substring(name.length() + 1));
+            }
             
-            if (inReference && c == '}') {
-                try {
-                    buffer.append(getValue(reference.toString(), true));
-                } catch (TypeLoadingException e) {
-                    throw new TypeLoadingException("Theme resource " + name +
-                                                   " cannot be resolved.", e);
-                } finally {
-                    inReference = false;
-                    reference = null;
-                }
-            } else {
-                if (!backslash) {
-                    if (c == '\\') {
-                        backslash = true;
-                    } else if (c == '{') {
-                        inReference = true;
-                        reference = new StringBuilder();
-                    } else if (c != '}') {
-                        (inReference ? reference : buffer).append(c);
-                    }
+            for (String childKey : childKeys) {
+                if (existing.contains(childKey)) {
+                    values.put(childKey, current.getValue(name + '.' + childKey));
                 } else {
-                    if (c != '{' && c!= '}') {
-                        (inReference ? reference : buffer).append('\\');
-                    }
-                    if (c != '\\') {
-                        (inReference ? reference : buffer).append(c);
+                    if (DependencyRecorder.isRecording()) {
+                        DependencyRecorder.record(name + '.' + childKey);
                     }
-                    backslash = false;
+                    values.put(childKey, null);
                 }
             }
+        } else {
+            for (String childKey : childKeys) {
+                values.put(childKey, current.getValue(name + '.' + childKey));
+            }
+        }
+        typeloader.configureType(resource, values, klass, current.typeProperties);
+    }
+    
+    // weak reference comparing referents by identity, as Hive.InstanceReference; a cleared
+    // reference is only equal to itself
+    private static final class KeyReference extends WeakReference<Object> {
+        private final int hash;
+        
+        private KeyReference(Object key, ReferenceQueue<Object> queue) {
+            super(key, queue);
+            hash = System.identityHashCode(key);
         }
         
-        if (inReference) {
-            buffer.append(reference);
+        @Override
+        public int hashCode() {
+            return hash;
         }
         
-        value = buffer.toString();
-        return value;
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof KeyReference)) {
+                return false;
+            }
+            
+            Object key = get();
+            return key != null && key == ((KeyReference) obj).get();
+        }
     }
 }
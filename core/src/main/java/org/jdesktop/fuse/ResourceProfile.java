@@ -0,0 +1,256 @@
+/**
+ * Copyright (c) 2006, Sun Microsystems, Inc
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 
+ *   * Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *   * Redistributions in binary form must reproduce the above
+ *     copyright notice, this list of conditions and the following 
+ *     disclaimer in the documentation and/or other materials provided 
+ *     with the distribution.
+ *   * Neither the name of the Fuse project nor the names of its
+ *     contributors may be used to endorse or promote products derived 
+ *     from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.jdesktop.fuse;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p>A record of the resources loaded by a ResourceInjector during one run: the
+ * key of every resource, the TypeLoader which loaded it, the class it was
+ * resolved against and the time the load took, in the order the resources were
+ * first requested.  A profile is recorded between
+ * {@link ResourceInjector#startProfiling()} and
+ * {@link ResourceInjector#stopProfiling()}, saved to a file and read again on the
+ * next start to warm the TypeLoader caches with
+ * {@link ResourceInjector#preload(ResourceProfile, java.util.concurrent.Executor)}
+ * while the application initializes.</p>
+ * 
+ * <p>Only the keys are recorded, the values are looked up again when preloading
+ * so that a profile remains usable after the theme changed.  Keys which no longer
+ * exist and TypeLoader(s) which are no longer registered are skipped.</p>
+ * 
+ * <p>This class is thread-safe.</p>
+ * 
+ * @see ResourceInjector#startProfiling()
+ * @see ResourceInjector#preload(ResourceProfile, java.util.concurrent.Executor)
+ * @since 1.1
+ */
+public final class ResourceProfile {
+    private static final int MAGIC = 0x46555350;
+    private static final int VERSION = 1;
+    
+    private final Map<String, Entry> entries = new LinkedHashMap<String, Entry>();
+    
+    /**
+     * Creates an empty profile.
+     */
+    public ResourceProfile() {
+    }
+    
+    /**
+     * Reads the profile saved in the specified file.  Since a profile is only a
+     * hint, an empty profile is returned when the file does not exist, cannot be
+     * read or was written by another version of Fuse.
+     * 
+     * @param file  The profile file.
+     * @return The profile read from the file, or an empty profile.
+     * @see #save(File)
+     */
+    public static ResourceProfile read(File file) {
+        ResourceProfile profile = new ResourceProfile();
+        if (!file.isFile()) {
+            return profile;
+        }
+        
+        try {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            try {
+                if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                    return profile;
+                }
+                
+                String[] classes = new String[in.readInt()];
+                for (int i = 0; i < classes.length; i++) {
+                    classes[i] = in.readUTF();
+                }
+                
+                int count = in.readInt();
+                for (int i = 0; i < count; i++) {
+                    String name = in.readUTF();
+                    String loader = classes[in.readInt()];
+                    String resolver = classes[in.readInt()];
+                    profile.add(new Entry(name, loader, resolver, in.readLong()));
+                }
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            return new ResourceProfile();
+        } catch (RuntimeException e) {
+            // corrupted class index
+            return new ResourceProfile();
+        }
+        
+        return profile;
+    }
+    
+    /**
+     * Writes this profile to the specified file.  The class names are written
+     * once and referred to by index, so a profile takes little more than the
+     * recorded keys.
+     * 
+     * @param file  The profile file.
+     * @throws TypeLoadingException If the file cannot be written.
+     * @see #read(File)
+     */
+    public void save(File file) {
+        List<Entry> copy = getEntries();
+        
+        Map<String, Integer> indices = new HashMap<String, Integer>();
+        List<String> classes = new ArrayList<String>();
+        for (Entry entry : copy) {
+            for (String name : new String[] { entry.loader, entry.resolver }) {
+                if (!indices.containsKey(name)) {
+                    indices.put(name, classes.size());
+                    classes.add(name);
+                }
+            }
+        }
+        
+        try {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+            try {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                
+                out.writeInt(classes.size());
+                for (String name : classes) {
+                    out.writeUTF(name);
+                }
+                
+                out.writeInt(copy.size());
+                for (Entry entry : copy) {
+                    out.writeUTF(entry.name);
+                    out.writeInt(indices.get(entry.loader));
+                    out.writeInt(indices.get(entry.resolver));
+                    out.writeLong(entry.nanos);
+                }
+            } finally {
+                out.close();
+            }
+        } catch (IOException e) {
+            throw new TypeLoadingException("Cannot write profile " + file + ".", e);
+        }
+    }
+    
+    /**
+     * @return The number of resources recorded in this profile.
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+    
+    /**
+     * @return The keys recorded in this profile, in the order they were first
+     *         requested.
+     */
+    public synchronized List<String> getKeys() {
+        return new ArrayList<String>(entries.keySet());
+    }
+    
+    /**
+     * Returns the time the resource of the specified key took to load when it
+     * was recorded, or -1 if the key was not recorded.  Resources which were
+     * found in the cache of their TypeLoader took almost no time.
+     * 
+     * @param key   The key of the resource.
+     * @return The load time in nanoseconds, or -1.
+     */
+    public synchronized long getLoadNanos(String key) {
+        Entry entry = entries.get(key);
+        return entry == null ? -1L : entry.nanos;
+    }
+    
+    // Only the first load of every key is kept, later loads hit the cache
+    void record(String name, TypeLoader<?> loader, Class<?> resolver, long nanos) {
+        if (loader.getCachePolicy() == TypeLoader.CachePolicy.NONE) {
+            return;
+        }
+        
+        String resolverName = resolver == null ? "" : resolver.getName();
+        Entry entry = new Entry(name, loader.getClass().getName(), resolverName, nanos);
+        
+        synchronized (this) {
+            if (!entries.containsKey(name)) {
+                entries.put(name, entry);
+            }
+        }
+    }
+    
+    private synchronized void add(Entry entry) {
+        entries.put(entry.name, entry);
+    }
+    
+    synchronized List<Entry> getEntries() {
+        return new ArrayList<Entry>(entries.values());
+    }
+    
+    // The most expensive resources first, so they are not the last to finish
+    List<Entry> getEntriesByCost() {
+        List<Entry> sorted = getEntries();
+        Collections.sort(sorted, new Comparator<Entry>() {
+            public int compare(Entry e1, Entry e2) {
+                return e1.nanos < e2.nanos ? 1 : (e1.nanos == e2.nanos ? 0 : -1);
+            }
+        });
+        
+        return sorted;
+    }
+    
+    static final class Entry {
+        final String name;
+        final String loader;
+        final String resolver;
+        final long nanos;
+        
+        private Entry(String name, String loader, String resolver, long nanos) {
+            this.name = name;
+            this.loader = loader;
+            this.resolver = resolver;
+            this.nanos = nanos;
+        }
+    }
+}
@@ -0,0 +1,357 @@
+/**
+ * Copyright (c) 2006, Sun Microsystems, Inc
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 
+ *   * Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *   * Redistributions in binary form must reproduce the above
+ *     copyright notice, this list of conditions and the following 
+ *     disclaimer in the documentation and/or other materials provided 
+ *     with the distribution.
+ *   * Neither the name of the Fuse project nor the names of its
+ *     contributors may be used to endorse or promote products derived 
+ *     from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.jdesktop.fuse;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InvalidClassException;
+import java.io.NotSerializableException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.io.Serializable;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Hashtable;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * <p>An on-disk snapshot of the resources loaded by a ResourceInjector, used to
+ * skip the loading of types such as colors, fonts, insets or dimensions on the
+ * next start.  Every loaded resource whose TypeLoader caches its values and
+ * which is Serializable is recorded under the TypeLoader, the resolver and the
+ * value it was loaded from.  Saving writes the recorded resources to a file named
+ * after a fingerprint of the Fuse version, the ResourceLoader and the loaded
+ * theme files; a snapshot is therefore only restored when none of them changed.
+ * Resources which fail to serialize or deserialize are skipped.</p>
+ * 
+ * <p>Only strings, boxed primitives, primitive arrays, colors, insets,
+ * dimensions and fonts are recorded.  Reading a snapshot resolves no other
+ * class: a snapshot referring to any other class is invalid and replaced on
+ * the next save, so a tampered file cannot instantiate arbitrary classes.</p>
+ * 
+ * <p>The snapshot holds no resource strongly.  A restored resource is handed to
+ * the cache of its TypeLoader, which keeps it according to its cache policy,
+ * and the resources to save are kept serialized.</p>
+ *
+ * @since 1.1
+ */
+final class ResourceSnapshot {
+    private static final int MAGIC = 0x46555353;
+    private static final int VERSION = 1;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    
+    // the classes of the resources a snapshot can hold with their serializable superclasses,
+    // by name since the AWT classes are loaded by the Swing module
+    private static final Set<String> ALLOWED_CLASSES = new HashSet<String>(Arrays.asList(
+        String.class.getName(), Boolean.class.getName(), Character.class.getName(),
+        Number.class.getName(), Byte.class.getName(), Short.class.getName(), Integer.class.getName(),
+        Long.class.getName(), Float.class.getName(), Double.class.getName(),
+        boolean[].class.getName(), char[].class.getName(), byte[].class.getName(), short[].class.getName(),
+        int[].class.getName(), long[].class.getName(), float[].class.getName(), double[].class.getName(),
+        "java.awt.Color", "java.awt.Insets", "java.awt.Dimension", "java.awt.Font",
+        // the attributes of a font
+        Hashtable.class.getName(), "java.awt.font.TextAttribute", "java.text.AttributedCharacterIterator$Attribute"));
+    
+    private final File file;
+    private final String fingerprint;
+    
+    // the restored resources not requested yet and the serialized resources to save
+    private final Map<String, Restored> restored;
+    private final ConcurrentMap<String, byte[]> loaded = new ConcurrentHashMap<String, byte[]>();
+    
+    private ResourceSnapshot(File file, String fingerprint, Map<String, Restored> restored) {
+        this.file = file;
+        this.fingerprint = fingerprint;
+        this.restored = restored;
+    }
+    
+    /**
+     * Opens the snapshot of the specified fingerprint in the specified directory,
+     * restoring its resources if it was saved before.
+     */
+    static ResourceSnapshot open(File directory, String fingerprint) {
+        File file = new File(directory, "fuse-" + digest(fingerprint) + ".snapshot");
+        Map<String, Restored> restored = new ConcurrentHashMap<String, Restored>();
+        
+        if (file.isFile()) {
+            try {
+                read(file, fingerprint, restored);
+            } catch (IOException e) {
+                // an unreadable or invalid snapshot is replaced on the next save
+                restored.clear();
+            }
+        }
+        
+        return new ResourceSnapshot(file, fingerprint, restored);
+    }
+    
+    /**
+     * Returns a fingerprint of the content at the specified URL, or
+     * <code>null</code> when it cannot be identified.
+     */
+    static String fingerprint(URL url) {
+        if ("file".equals(url.getProtocol())) {
+            try {
+                File file = new File(url.toURI());
+                return url + " " + file.lastModified() + " " + file.length();
+            } catch (URISyntaxException e) {
+                // not a plain file path, ask the connection
+            } catch (IllegalArgumentException e) {
+                // not a plain file path, ask the connection
+            }
+        }
+        
+        try {
+            URLConnection connection = url.openConnection();
+            long modified = connection.getLastModified();
+            long length = connection.getContentLengthLong();
+            
+            return modified <= 0 || length < 0 ? null : url + " " + modified + " " + length;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+    
+    /**
+     * Returns the restored resource for the specified value or loads it with the
+     * TypeLoader, recording it for the next save.
+     */
+    Object load(TypeLoader<?> typeLoader, String name, String value, Class<?> resolver,
+                Map<String, Object> properties) {
+        if (value == null || typeLoader.getCachePolicy() == TypeLoader.CachePolicy.NONE) {
+            return typeLoader.loadTypeWithCaching(name, value, resolver, properties);
+        }
+        
+        String key = typeLoader.getClass().getName() + '\n' +
+                     (resolver == null ? "" : resolver.getName()) + '\n' + value.trim();
+        
+        // a restored resource is only handed out once, the TypeLoader caches it afterwards
+        Restored entry = restored.remove(key);
+        if (entry != null) {
+            typeLoader.cache(value, entry.resource);
+            loaded.put(key, entry.bytes);
+            return entry.resource;
+        }
+        
+        Object resource = typeLoader.loadTypeWithCaching(name, value, resolver, properties);
+        if (resource instanceof Serializable && !loaded.containsKey(key)) {
+            byte[] bytes = serialize(resource);
+            if (bytes != null) {
+                loaded.putIfAbsent(key, bytes);
+            }
+        }
+        
+        return resource;
+    }
+    
+    /**
+     * Writes the resources loaded since the snapshot was opened.  The file is
+     * replaced atomically when the file system allows it.
+     */
+    void save() throws IOException {
+        File directory = file.getParentFile();
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create " + directory);
+        }
+        
+        File temp = File.createTempFile("fuse-", ".tmp", directory);
+        try {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+            try {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                writeBytes(out, fingerprint.getBytes(UTF_8));
+                
+                for (Map.Entry<String, byte[]> entry : loaded.entrySet()) {
+                    out.writeBoolean(true);
+                    writeBytes(out, entry.getKey().getBytes(UTF_8));
+                    writeBytes(out, entry.getValue());
+                }
+                out.writeBoolean(false);
+            } finally {
+                out.close();
+            }
+            
+            try {
+                Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                           StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            temp.delete();
+        }
+    }
+    
+    private static void read(File file, String fingerprint, Map<String, Restored> restored) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        try {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION ||
+                !fingerprint.equals(new String(readBytes(in), UTF_8))) {
+                return;
+            }
+            
+            while (in.readBoolean()) {
+                String key = new String(readBytes(in), UTF_8);
+                byte[] bytes = readBytes(in);
+                Object resource = deserialize(bytes);
+                if (resource != null) {
+                    restored.put(key, new Restored(resource, bytes));
+                }
+            }
+        } finally {
+            in.close();
+        }
+    }
+    
+    private static void writeBytes(DataOutputStream out, byte[] bytes) throws IOException {
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+    
+    private static byte[] readBytes(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            throw new IOException("Corrupted snapshot");
+        }
+        
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return bytes;
+    }
+    
+    // returns null for resources referring to a class which is not allowed
+    private static byte[] serialize(Object resource) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try {
+            ObjectOutputStream out = new ObjectOutputStream(bytes) {
+                @Override
+                protected void annotateClass(Class<?> type) throws IOException {
+                    if (!ALLOWED_CLASSES.contains(type.getName())) {
+                        throw new NotSerializableException(type.getName());
+                    }
+                }
+                
+                @Override
+                protected void annotateProxyClass(Class<?> type) throws IOException {
+                    throw new NotSerializableException(type.getName());
+                }
+            };
+            out.writeObject(resource);
+            out.close();
+        } catch (NotSerializableException e) {
+            return null;
+        } catch (IOException e) {
+            return null;
+        }
+        
+        return bytes.toByteArray();
+    }
+    
+    // returns null for a resource which cannot be read, throws for a class which is not allowed
+    private static Object deserialize(byte[] bytes) throws InvalidClassException {
+        try {
+            ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes)) {
+                @Override
+                protected Class<?> resolveClass(ObjectStreamClass type) throws IOException, ClassNotFoundException {
+                    if (!ALLOWED_CLASSES.contains(type.getName())) {
+                        throw new InvalidClassException(type.getName(), "Not allowed in a resource snapshot");
+                    }
+                    
+                    return super.resolveClass(type);
+                }
+                
+                @Override
+                protected Class<?> resolveProxyClass(String[] interfaces) throws IOException {
+                    throw new InvalidClassException("Proxies are not allowed in a resource snapshot");
+                }
+            };
+            try {
+                return in.readObject();
+            } finally {
+                in.close();
+            }
+        } catch (InvalidClassException e) {
+            throw e;
+        } catch (IOException e) {
+            return null;
+        } catch (ClassNotFoundException e) {
+            return null;
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+    
+    private static String digest(String fingerprint) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-1").digest(fingerprint.getBytes(UTF_8));
+            StringBuilder hex = new StringBuilder(hash.length * 2);
+            for (byte b : hash) {
+                hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            return Integer.toHexString(fingerprint.hashCode());
+        }
+    }
+    
+    private static final class Restored {
+        private final Object resource;
+        private final byte[] bytes;
+        
+        private Restored(Object resource, byte[] bytes) {
+            this.resource = resource;
+            this.bytes = bytes;
+        }
+    }
+}
@@ -0,0 +1,60 @@
+/**
+ * Copyright (c) 2006, Sun Microsystems, Inc
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 
+ *   * Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *   * Redistributions in binary form must reproduce the above
+ *     copyright notice, this list of conditions and the following 
+ *     disclaimer in the documentation and/or other materials provided 
+ *     with the distribution.
+ *   * Neither the name of the Fuse project nor the names of its
+ *     contributors may be used to endorse or promote products derived 
+ *     from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.jdesktop.fuse;
+
+/**
+ * <p>A ResourceLoader which can return an immutable view of the resources it
+ * currently holds.  ResourceInjector captures such a view in every
+ * configuration it publishes, so an injection reads all its resources from the
+ * same state of the loader even while another thread loads, reloads or clears
+ * it.  Loaders which do not implement this interface are read as they are when
+ * each resource is looked up.</p>
+ * 
+ * <p>Implementing this interface is optional.  PropertiesResourceLoader and
+ * XMLResourceLoader of the <code>org.jdesktop.fuse.rl</code> package implement
+ * it.</p>
+ *
+ * @see ResourceInjector#setLoader(ResourceLoader)
+ * @since 1.1
+ */
+public interface SnapshotResourceLoader extends ResourceLoader {
+
+    /**
+     * Returns the resources currently loaded as a ResourceLoader whose contents
+     * never change and whose load and clear methods throw
+     * UnsupportedOperationException.  Successive calls return the same instance
+     * as long as nothing was loaded or cleared in between.
+     * 
+     * @return An immutable view of the current resources.
+     */
+    public ResourceLoader snapshot();
+}
@@ -32,20 +32,27 @@
 package org.jdesktop.fuse;
 
 import java.lang.reflect.Array;
+import java.util.List;
 import java.util.Map;
 
 /**
+ * Loads arrays element by element from the keys <code>name.[0]</code>,
+ * <code>name.[1]</code> and so on.  The value of the array key is the length of
+ * the array; when it is empty the length is inferred from the element keys.
+ * 
  * @since 0.3
  * @author Daniel Spiewak
  */
 class SpecialArrayTypeLoader extends TypeLoader<Object> {
     private final ResourceInjector injector;
+    private final Generation generation;
     private final Class<?> type;
     
-    SpecialArrayTypeLoader(Class<?> type, ResourceInjector injector) {
+    SpecialArrayTypeLoader(Class<?> type, ResourceInjector injector, Generation generation) {
         super(Object.class);
         
         this.injector = injector;
+        this.generation = generation;
         this.type = type;
     }
 
@@ -54,19 +61,74 @@ class SpecialArrayTypeLoader extends TypeLoader<Object> {
     public Object loadType(String name, String value, Class<?> resolver, Map<String, Object> properties) {
         Object back;
         
-        int length = Integer.parseInt(value.trim());
-        
-        back = Array.newInstance(type.getComponentType(), length);
+        String[] elements = getElementKeys(name, value);
+        back = Array.newInstance(type.getComponentType(), elements.length);
         
         TypeLoader tl = TypeLoaderFactory.getLoaderForType(type.getComponentType());
         
-        for (int i = 0; i < Array.getLength(back); i++) {
-            Array.set(back, i, tl.loadTypeWithCaching(name + ".[" + i + "]", injector.getValue(name + ".[" + i + "]"), 
-                                  resolver, properties));
+        for (int i = 0; i < elements.length; i++) {
+            String element = elements[i];
+            
+            Object resource = injector.loadResource(generation, tl, element, generation.getValue(element), resolver);
+            Array.set(back, i, resource);
             
-            injector.configureResource(resolver, name + ".[" + i + "]", tl, Array.get(back, i));
+            ResourceInjector.configureResource(generation, resolver, element, tl, resource);
         }
         
         return back;
     }
+    
+    // the keys of the elements of the array, in index order
+    String[] getElementKeys(String name, String value) {
+        value = value.trim();
+        int length = value.length() == 0 ? inferLength(name) : Integer.parseInt(value);
+        
+        String[] elements = new String[length];
+        StringBuilder key = new StringBuilder(name.length() + 8).append(name).append(".[");
+        int prefix = key.length();
+        
+        for (int i = 0; i < length; i++) {
+            key.setLength(prefix);
+            elements[i] = key.append(i).append(']').toString();
+        }
+        
+        return elements;
+    }
+    
+    // one past the highest element index found under the array key
+    private int inferLength(String name) {
+        List<String> keys = generation.subKeys(name);
+        if (keys == null) {
+            int length = 0;
+            while (generation.getValue(name + ".[" + length + "]") != null) {
+                length++;
+            }
+            
+            return length;
+        }
+        
+        int length = 0;
+        int start = name.length() + 2;
+        for (String key : keys) {
+            if (key.length() <= start || key.charAt(start - 1) != '[') {
+                continue;
+            }
+            
+            int end = key.indexOf(']', start);
+            if (end > start) {
+                try {
+                    length = Math.max(length, Integer.parseInt(key.substring(start, end)) + 1);
+                } catch (NumberFormatException e) {
+                    // not an element key
+                }
+            }
+        }
+        
+        // adding the next element changes the array
+        if (DependencyRecorder.isRecording()) {
+            DependencyRecorder.record(name + ".[" + length + "]");
+        }
+        
+        return length;
+    }
 }
@@ -0,0 +1,325 @@
+/**
+ * Copyright (c) 2006, Sun Microsystems, Inc
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 
+ *   * Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *   * Redistributions in binary form must reproduce the above
+ *     copyright notice, this list of conditions and the following 
+ *     disclaimer in the documentation and/or other materials provided 
+ *     with the distribution.
+ *   * Neither the name of the Fuse project nor the names of its
+ *     contributors may be used to endorse or promote products derived 
+ *     from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.jdesktop.fuse;
+
+import java.net.URL;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * <p>A theme staged by a ResourceInjector, being loaded and validated in the
+ * background before it replaces the current theme.  The theme files are loaded
+ * into a ResourceLoader which is not in use yet, then every resource read by
+ * the specified classes is looked up and loaded from it, which validates the
+ * theme and fills the TypeLoader caches.  Meanwhile the application keeps
+ * injecting from the current theme.</p>
+ * 
+ * <p>Once the stage is done, {@link #commit()} replaces the loader of the
+ * ResourceInjector at once, provided no error was found, and returns the keys
+ * whose values changed so that the injected fields can be updated in one pass.
+ * {@link Hive#commit(Stage)} does both.  {@link #rollback()} discards the staged
+ * theme; the current theme is never modified by a stage which is not
+ * committed.  A stage replaces the theme in use when it started: it cannot be
+ * committed once that theme was loaded, reset or replaced.</p>
+ * 
+ * <pre>Stage stage = hive.stage(executor, new PropertiesResourceLoader(), nightTheme);
+ *stage.get();
+ *if (stage.isValid()) {
+ *    hive.commit(stage);
+ *} else {
+ *    log(stage.getErrors());
+ *    stage.rollback();
+ *}</pre>
+ * 
+ * @see ResourceInjector#stage(Executor, ResourceLoader, Collection, URL...)
+ * @see Hive#stage(Executor, ResourceLoader, URL...)
+ * @since 1.1
+ */
+public final class Stage implements Future<Void> {
+    private enum State { STAGING, COMMITTED, ROLLED_BACK }
+    
+    private final ResourceInjector injector;
+    // the configuration the theme is validated with and replaces when committed
+    private final Generation base;
+    private final ResourceLoader theme;
+    private final URL[] sources;
+    
+    private final CountDownLatch staged = new CountDownLatch(1);
+    private final AtomicReference<State> state = new AtomicReference<State>(State.STAGING);
+    private final Map<String, Throwable> errors = new LinkedHashMap<String, Throwable>();
+    private volatile Preload preload;
+    
+    private Stage(ResourceInjector injector, Generation base, ResourceLoader theme, URL[] sources) {
+        this.injector = injector;
+        this.base = base;
+        this.theme = theme;
+        this.sources = sources;
+    }
+    
+    /**
+     * Loads the sources into the theme and validates the resources read by the
+     * classes in tasks of the executor.  The bound classes are validated with
+     * the fields of their definition.
+     */
+    static Stage start(final ResourceInjector injector, final Generation base, final ResourceLoader theme,
+                       final Collection<Class<?>> classes, final Map<Class<?>, String> boundClasses,
+                       final URL[] sources, final Executor executor) {
+        final Stage stage = new Stage(injector, base, theme, sources);
+        
+        executor.execute(new Runnable() {
+            public void run() {
+                try {
+                    if (sources.length > 0) {
+                        theme.load(sources);
+                    }
+                    
+                    if (stage.isCancelled()) {
+                        stage.staged.countDown();
+                        return;
+                    }
+                    
+                    Generation generation = base.withLoader(theme);
+                    Map<String, Throwable> found = new LinkedHashMap<String, Throwable>();
+                    List<Preload.Task> tasks = injector.collectTasks(generation, classes, boundClasses, true, found);
+                    
+                    // published before any task runs so that the errors are seen once staged
+                    Preload preload = Preload.create(tasks, found, new Runnable() {
+                        public void run() {
+                            stage.staged.countDown();
+                        }
+                    });
+                    stage.preload = preload;
+                    preload.submit(injector, generation, executor);
+                } catch (RuntimeException e) {
+                    stage.fail(Arrays.toString(sources), e);
+                    stage.staged.countDown();
+                }
+            }
+        });
+        
+        return stage;
+    }
+    
+    private void fail(String name, Throwable e) {
+        synchronized (errors) {
+            errors.put(name, e);
+        }
+    }
+    
+    /**
+     * @return The ResourceLoader holding the staged theme.
+     */
+    public ResourceLoader getTheme() {
+        return theme;
+    }
+    
+    /**
+     * @return The number of resources to validate, known once the theme files
+     *         were loaded.
+     */
+    public int getTotal() {
+        Preload current = preload;
+        return current == null ? 0 : current.getTotal();
+    }
+    
+    /**
+     * @return The number of resources validated so far.
+     */
+    public int getCompleted() {
+        Preload current = preload;
+        return current == null ? 0 : current.getCompleted();
+    }
+    
+    /**
+     * Returns the errors found so far, keyed by resource key, by scoped field
+     * name when no key exists for a field or by the list of theme files when
+     * they could not be loaded.
+     * 
+     * @return The errors found in the staged theme.
+     */
+    public Map<String, Throwable> getErrors() {
+        Map<String, Throwable> all;
+        synchronized (errors) {
+            all = new LinkedHashMap<String, Throwable>(errors);
+        }
+        
+        Preload current = preload;
+        if (current != null) {
+            all.putAll(current.getErrors());
+        }
+        
+        return Collections.unmodifiableMap(all);
+    }
+    
+    /**
+     * @return <code>true</code> if the stage is done, found no error and was
+     *         not rolled back.
+     */
+    public boolean isValid() {
+        return staged.getCount() == 0 && state.get() != State.ROLLED_BACK && getErrors().isEmpty();
+    }
+    
+    /**
+     * <p>Replaces the theme of the ResourceInjector by the staged theme.  The
+     * injections which start afterwards read the staged theme, the fields
+     * injected before are not updated: the returned keys tell which of them
+     * read a changed resource.  Hive does this in
+     * {@link Hive#commit(Stage)}.</p>
+     * 
+     * @return The keys whose values were added, changed or removed.
+     * @throws IllegalStateException If the stage is not done or was already
+     *         committed or rolled back, or if the loader, its resources or the
+     *         instance properties of the ResourceInjector changed since the
+     *         stage started, in which case the stage is rolled back.
+     * @throws TypeLoadingException If errors were found, in which case the
+     *         stage is rolled back.
+     */
+    public Set<String> commit() {
+        if (staged.getCount() > 0) {
+            throw new IllegalStateException("The theme is still being staged.");
+        }
+        
+        if (state.get() != State.STAGING) {
+            throw new IllegalStateException("The stage was already " +
+                (state.get() == State.COMMITTED ? "committed." : "rolled back."));
+        }
+        
+        Map<String, Throwable> found = getErrors();
+        if (!found.isEmpty()) {
+            rollback();
+            
+            Map.Entry<String, Throwable> first = found.entrySet().iterator().next();
+            throw new TypeLoadingException("The staged theme has " + found.size() + " error(s), the first at " +
+                                           first.getKey() + ".", first.getValue());
+        }
+        
+        if (!state.compareAndSet(State.STAGING, State.COMMITTED)) {
+            throw new IllegalStateException("The stage was already " +
+                (state.get() == State.COMMITTED ? "committed." : "rolled back."));
+        }
+        
+        try {
+            return injector.commit(base, theme, sources);
+        } catch (IllegalStateException e) {
+            state.set(State.ROLLED_BACK);
+            throw e;
+        }
+    }
+    
+    /**
+     * Discards the staged theme.  The resources which are not being validated
+     * yet are skipped.  The current theme of the ResourceInjector is left as
+     * it is.
+     * 
+     * @return <code>false</code> if the stage was already committed or rolled back.
+     */
+    public boolean rollback() {
+        if (!state.compareAndSet(State.STAGING, State.ROLLED_BACK)) {
+            return false;
+        }
+        
+        Preload current = preload;
+        if (current != null) {
+            current.cancel(false);
+            current.release();
+        }
+        
+        return true;
+    }
+    
+    /**
+     * Rolls the stage back.
+     * 
+     * @see #rollback()
+     */
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        return rollback();
+    }
+    
+    public boolean isCancelled() {
+        return state.get() == State.ROLLED_BACK;
+    }
+    
+    public boolean isDone() {
+        return staged.getCount() == 0 || state.get() == State.ROLLED_BACK;
+    }
+    
+    /**
+     * Waits until the staged theme was loaded and validated.
+     * 
+     * @return <code>null</code>.
+     */
+    public Void get() throws InterruptedException {
+        if (state.get() != State.ROLLED_BACK) {
+            staged.await();
+        }
+        checkCancelled();
+        return null;
+    }
+    
+    /**
+     * Waits until the staged theme was loaded and validated, at most for the
+     * specified time.
+     * 
+     * @return <code>null</code>.
+     */
+    public Void get(long timeout, TimeUnit unit) throws InterruptedException, TimeoutException {
+        if (state.get() != State.ROLLED_BACK && !staged.await(timeout, unit)) {
+            throw new TimeoutException(getCompleted() + " of " + getTotal() + " resources validated");
+        }
+        checkCancelled();
+        return null;
+    }
+    
+    private void checkCancelled() {
+        if (state.get() == State.ROLLED_BACK) {
+            throw new CancellationException("The stage was rolled back.");
+        }
+    }
+    
+    @Override
+    public String toString() {
+        return getCompleted() + " of " + getTotal() + " resources validated, " + getErrors().size() + " errors";
+    }
+}
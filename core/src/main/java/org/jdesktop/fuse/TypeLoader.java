@@ -31,9 +31,12 @@
 
 package org.jdesktop.fuse;
 
+import java.lang.ref.Reference;
+import java.lang.ref.SoftReference;
 import java.lang.ref.WeakReference;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
@@ -64,10 +67,14 @@ import java.util.concurrent.locks.ReentrantReadWriteLock;
  * @author Daniel Spiewak
  */
 public abstract class TypeLoader<T> {
-    private final Map<String, WeakReference<T>> cache = new HashMap<String, WeakReference<T>>();
+    private final Map<String, Reference<T>> cache = new HashMap<String, Reference<T>>();
     
     private final ReadWriteLock cacheLock = new ReentrantReadWriteLock();
     
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong loads = new AtomicLong();
+    private final AtomicLong loadNanos = new AtomicLong();
+    
     private final Class<?>[] types;
 
     /**
@@ -102,32 +109,102 @@ public abstract class TypeLoader<T> {
     public abstract T loadType(String name, String value, Class<?> resolver, Map<String, Object> properties);
     
     /**
-     * TODO write javadoc
+     * <p>Called by ResourceInjector to obtain the value to inject.  Depending on
+     * the policy returned by {@link #getCachePolicy()}, the instances previously
+     * returned for the same (trimmed) value are reused or <code>loadType</code>
+     * is invoked directly.  Cache hits and loads are accounted for in the
+     * statistics returned by {@link #getCacheStatistics()}.</p>
+     * 
+     * @param name	A String representing the key of the resource property.
+     * @param value	A String containing the value of the resource property.
+     * @param resolver	The Class&lt;?&gt; of the instance being injected.
+     * @param properties	A Map&lt;String, Object&gt; containing the properties relevant to
+     * 	this TypeLoader.
+     * @return The cached or newly loaded instance of T.
+     * @see #loadType(String, String, Class, Map)
      */
     public T loadTypeWithCaching(String name, String value, 
                          Class<?> resolver, Map<String, Object> properties) {
-        T back = null;
-        
         value = value.trim();
         
+        CachePolicy policy = getCachePolicy();
+        if (policy == CachePolicy.NONE) {
+            return loadType(name, value, resolver, properties);
+        }
+        
+        T back = null;
+        
         cacheLock.readLock().lock();
-        if (cache.containsKey(value)) {
-            back = cache.get(value).get();
+        Reference<T> ref = cache.get(value);
+        if (ref != null) {
+            back = ref.get();
         }
         cacheLock.readLock().unlock();
         
-        if (back == null) {
-            back = loadType(name, value, resolver, properties);
-            
-            cacheLock.writeLock().lock();
-            cache.remove(value);
-            cache.put(value, new WeakReference<T>(back));
-            cacheLock.writeLock().unlock();
+        if (back != null) {
+            hits.incrementAndGet();
+            return back;
         }
         
+        long start = System.nanoTime();
+        back = loadType(name, value, resolver, properties);
+        loadNanos.addAndGet(System.nanoTime() - start);
+        loads.incrementAndGet();
+        
+        cacheLock.writeLock().lock();
+        cache.put(value, policy == CachePolicy.SOFT ? 
+                  new SoftReference<T>(back) : new WeakReference<T>(back));
+        cacheLock.writeLock().unlock();
+        
         return back;
     }
     
+    // Caches an instance this TypeLoader loaded in an earlier run, see ResourceSnapshot
+    @SuppressWarnings("unchecked")
+    void cache(String value, Object instance) {
+        CachePolicy policy = getCachePolicy();
+        if (policy == CachePolicy.NONE) {
+            return;
+        }
+        
+        T back = (T) instance;
+        cacheLock.writeLock().lock();
+        cache.put(value.trim(), policy == CachePolicy.SOFT ? 
+                  new SoftReference<T>(back) : new WeakReference<T>(back));
+        cacheLock.writeLock().unlock();
+    }
+    
+    /**
+     * <p>Returns the caching policy applied by <code>loadTypeWithCaching</code>.
+     * Every cached entry costs a lock, a map entry and a reference object, which is
+     * more than parsing a number or a boolean again.  TypeLoader(s) for such trivially
+     * parsed types (or for mutable types which must not be shared between fields)
+     * should return {@link CachePolicy#NONE}.  TypeLoader(s) for expensive resources
+     * such as images, fonts or documents should return {@link CachePolicy#SOFT} so
+     * their values survive garbage collections until memory runs low.  The default
+     * is {@link CachePolicy#WEAK}.</p>
+     * 
+     * <p>This method is invoked for every load and must be cheap.</p>
+     * 
+     * @return The caching policy of this TypeLoader.
+     * @since 1.1
+     */
+    protected CachePolicy getCachePolicy() {
+        return CachePolicy.WEAK;
+    }
+    
+    /**
+     * Returns a snapshot of the cache statistics collected by this TypeLoader
+     * since its creation.  Nothing is collected for TypeLoader(s) whose policy
+     * is {@link CachePolicy#NONE}.
+     * 
+     * @return The current cache statistics.
+     * @since 1.1
+     */
+    public CacheStatistics getCacheStatistics() {
+        return new CacheStatistics(hits.get(), loads.get(), loadNanos.get());
+    }
+    
     /**
      * Called by ResourceInjector to notify the TypeLoader of sub-properties.  This
      * method was not made abstract to allow for signature compatibility with 0.1
@@ -191,4 +268,84 @@ public abstract class TypeLoader<T> {
 //
 //        return true;
     }
+    
+    /**
+     * The caching policies a TypeLoader can declare.
+     * 
+     * @see TypeLoader#getCachePolicy()
+     * @since 1.1
+     */
+    public enum CachePolicy {
+        
+        /**
+         * Values are loaded on every request and never cached.
+         */
+        NONE,
+        
+        /**
+         * Values are cached through WeakReference(s) and may be collected
+         * as soon as no injected field refers to them anymore.
+         */
+        WEAK,
+        
+        /**
+         * Values are cached through SoftReference(s) and are only collected
+         * when the JVM runs low on memory.
+         */
+        SOFT
+    }
+    
+    /**
+     * An immutable snapshot of the cache counters of a TypeLoader.  The saved
+     * time is an estimate based on the average load time: every cache hit is
+     * assumed to have saved one average load.
+     * 
+     * @see TypeLoader#getCacheStatistics()
+     * @since 1.1
+     */
+    public static final class CacheStatistics {
+        private final long hits;
+        private final long loads;
+        private final long loadNanos;
+        
+        private CacheStatistics(long hits, long loads, long loadNanos) {
+            this.hits = hits;
+            this.loads = loads;
+            this.loadNanos = loadNanos;
+        }
+        
+        /**
+         * @return The number of requests answered from the cache.
+         */
+        public long getHits() {
+            return hits;
+        }
+        
+        /**
+         * @return The number of requests which required a call to <code>loadType</code>.
+         */
+        public long getLoads() {
+            return loads;
+        }
+        
+        /**
+         * @return The total time spent in <code>loadType</code>, in nanoseconds.
+         */
+        public long getLoadNanos() {
+            return loadNanos;
+        }
+        
+        /**
+         * @return The estimated time saved by cache hits, in nanoseconds.
+         */
+        public long getSavedNanos() {
+            return loads == 0 ? 0 : hits * (loadNanos / loads);
+        }
+        
+        @Override
+        public String toString() {
+            return hits + " hits, " + loads + " loads (" + loadNanos / 1000L +
+                " us), ~" + getSavedNanos() / 1000L + " us saved";
+        }
+    }
 }
@@ -0,0 +1,141 @@
+/**
+ * Copyright (c) 2006, Sun Microsystems, Inc
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 
+ *   * Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *   * Redistributions in binary form must reproduce the above
+ *     copyright notice, this list of conditions and the following 
+ *     disclaimer in the documentation and/or other materials provided 
+ *     with the distribution.
+ *   * Neither the name of the Fuse project nor the names of its
+ *     contributors may be used to endorse or promote products derived 
+ *     from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.jdesktop.fuse;
+
+import java.lang.reflect.Constructor;
+
+/**
+ * <p>A lightweight stand-in for a TypeLoader which has not been instantiated
+ * yet.  A descriptor names the TypeLoader class and the types it supports
+ * without loading either.  Modules register descriptors with
+ * <code>TypeLoaderFactory</code> in their <code>init()</code> method:</p>
+ * 
+ * <pre>addTypeLoader(new TypeLoaderDescriptor("org.example.fuse.ColorTypeLoader",
+ *                                       "java.awt.Color"));</pre>
+ * 
+ * <p>The TypeLoader class is loaded and instantiated the first time a resource
+ * of one of the supported types is injected.  Modules registering many
+ * TypeLoader(s) for types which are rarely injected thereby avoid loading those
+ * classes (and the classes they depend upon) at startup.</p>
+ * 
+ * <p>The TypeLoader class is resolved with the class loader of the module which
+ * registered the descriptor and must declare a no-argument constructor, which
+ * need not be public.</p>
+ * 
+ * @see TypeLoaderFactory#addTypeLoader(TypeLoaderDescriptor)
+ * @see TypeLoader
+ * @since 1.1
+ */
+public final class TypeLoaderDescriptor {
+    private final String loaderClassName;
+    private final String[] typeNames;
+    
+    private volatile TypeLoader<?> loader;
+    
+    /**
+     * Creates a new descriptor for the specified TypeLoader class.
+     * 
+     * @param loaderClassName   The fully qualified name of the TypeLoader class.
+     * @param typeNames         The names of the supported types, as returned by
+     *                          <code>Class.getName()</code> (for example <code>int</code>
+     *                          or <code>java.lang.Integer</code>).
+     */
+    public TypeLoaderDescriptor(String loaderClassName, String... typeNames) {
+        if (loaderClassName == null) {
+            throw new IllegalArgumentException("TypeLoader class name cannot be null.");
+        }
+        
+        this.loaderClassName = loaderClassName;
+        this.typeNames = typeNames.clone();
+    }
+    
+    /**
+     * @return The fully qualified name of the described TypeLoader class.
+     */
+    public String getLoaderClassName() {
+        return loaderClassName;
+    }
+    
+    /**
+     * @return The names of the types supported by the described TypeLoader.
+     */
+    public String[] getTypeNames() {
+        return typeNames.clone();
+    }
+    
+    boolean supportsType(Class<?> type) {
+        String name = type.getName();
+        for (String typeName : typeNames) {
+            if (typeName.equals(name)) {
+                return true;
+            }
+        }
+        
+        return false;
+    }
+    
+    boolean isLoaded() {
+        return loader != null;
+    }
+    
+    TypeLoader<?> getLoader(ClassLoader classLoader) {
+        TypeLoader<?> back = loader;
+        if (back == null) {
+            synchronized (this) {
+                back = loader;
+                if (back == null) {
+                    back = loader = createLoader(classLoader);
+                }
+            }
+        }
+        
+        return back;
+    }
+    
+    private TypeLoader<?> createLoader(ClassLoader classLoader) {
+        try {
+            Class<?> clazz = Class.forName(loaderClassName, true, classLoader);
+            Constructor<?> constructor = clazz.getDeclaredConstructor();
+            constructor.setAccessible(true);
+            
+            return (TypeLoader<?>) constructor.newInstance();
+        } catch (Exception e) {
+            throw new TypeLoadingException("TypeLoader " + loaderClassName +
+                                             " could not be instantiated.", e);
+        }
+    }
+    
+    @Override
+    public String toString() {
+        return loaderClassName;
+    }
+}
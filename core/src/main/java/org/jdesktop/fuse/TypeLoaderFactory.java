@@ -31,8 +31,13 @@
 
 package org.jdesktop.fuse;
 
-import java.util.LinkedList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import org.jdesktop.fuse.core.CoreModule;
 
@@ -43,7 +48,23 @@ import org.jdesktop.fuse.core.CoreModule;
  * wrapper around a List&lt;TypeLoader&lt;?&gt;&gt;  This class is
  * also used by module control classes to register custom TypeLoader(s).</p>
  * 
+ * <p>TypeLoader(s) registered while a module is being added to ResourceInjector
+ * are owned by that module and are unregistered when the module is removed.
+ * This allows modules loaded in a separate class loader (such as plugins) to
+ * be garbage collected with their class loader.</p>
+ * 
+ * <p>Modules are discovered with <code>java.util.ServiceLoader</code> when this
+ * class is first initialized: every FuseModule listed in a
+ * <code>META-INF/services/org.jdesktop.fuse.FuseModule</code> resource is added
+ * to ResourceInjector.  The /Core module is always added.  Modules should register
+ * their TypeLoader(s) as {@link TypeLoaderDescriptor}(s) so that the TypeLoader
+ * classes are only loaded when a resource of the corresponding type is first
+ * injected.</p>
+ * 
  * @see #addTypeLoader(TypeLoader)
+ * @see #addTypeLoader(TypeLoaderDescriptor)
+ * @see #removeTypeLoader(TypeLoader)
+ * @see ResourceInjector#removeModule(FuseModule)
  * @see FuseModule
  * @see ResourceInjector
  * @see TypeLoader
@@ -51,14 +72,34 @@ import org.jdesktop.fuse.core.CoreModule;
  * @author Romain Guy
  */
 public final class TypeLoaderFactory {
-    private static List<TypeLoader<?>> loaders = new LinkedList<TypeLoader<?>>();
+    private static final List<Registration> loaders = new CopyOnWriteArrayList<Registration>();
 
     private TypeLoaderFactory() {
     }
 
-    // core type loaders are assumed
+    // core type loaders are assumed, other modules are discovered
     static {
-        ResourceInjector.addModule(new CoreModule());
+        Iterator<FuseModule> it = ServiceLoader.load(FuseModule.class).iterator();
+        while (true) {
+            FuseModule mod;
+            try {
+                if (!it.hasNext()) {
+                    break;
+                }
+                mod = it.next();
+            } catch (ServiceConfigurationError e) {
+                // a broken provider must not prevent the others from loading
+                continue;
+            }
+            
+            if (FuseUtilities.isVersionValid(mod.requiredVersion())) {
+                ResourceInjector.addModule(mod);
+            }
+        }
+        
+        if (!ResourceInjector.isModuleAdded(CoreModule.class.getName())) {
+            ResourceInjector.addModule(new CoreModule());
+        }
     }
     
     /**
@@ -76,7 +117,70 @@ public final class TypeLoaderFactory {
      */
     public static void addTypeLoader(TypeLoader<?> loader) {
         if (loader != null) {
-            loaders.add(loader);
+            loaders.add(new Registration(loader, null, ResourceInjector.getInitializingModule()));
+        }
+    }
+    
+    /**
+     * <p>Registers a TypeLoader which is instantiated on demand, the first
+     * time a resource of one of the described types is injected.  The
+     * TypeLoader class is resolved with the class loader of the module being
+     * added, or the class loader of TypeLoaderFactory when called outside of
+     * a module <code>init()</code> method.</p>
+     * 
+     * @param descriptor    The descriptor of the TypeLoader to be registered.
+     * @see TypeLoaderDescriptor
+     * @since 1.1
+     */
+    public static void addTypeLoader(TypeLoaderDescriptor descriptor) {
+        if (descriptor != null) {
+            loaders.add(new Registration(null, descriptor, ResourceInjector.getInitializingModule()));
+        }
+    }
+    
+    /**
+     * Unregisters the specified TypeLoader.  Once removed, the TypeLoader
+     * and the values it cached are no longer referenced by Fuse.
+     * 
+     * @param loader    The TypeLoader instance to unregister.
+     * @return <code>true</code> if the TypeLoader was registered.
+     * @see #addTypeLoader(TypeLoader)
+     * @since 1.1
+     */
+    public static boolean removeTypeLoader(TypeLoader<?> loader) {
+        for (Registration registration : loaders) {
+            if (registration.getLoaderIfCreated() == loader) {
+                return loaders.remove(registration);
+            }
+        }
+        
+        return false;
+    }
+    
+    /**
+     * Unregisters the specified TypeLoaderDescriptor along with the TypeLoader
+     * it instantiated, if any.
+     * 
+     * @param descriptor    The TypeLoaderDescriptor instance to unregister.
+     * @return <code>true</code> if the TypeLoaderDescriptor was registered.
+     * @see #addTypeLoader(TypeLoaderDescriptor)
+     * @since 1.1
+     */
+    public static boolean removeTypeLoader(TypeLoaderDescriptor descriptor) {
+        for (Registration registration : loaders) {
+            if (registration.descriptor == descriptor) {
+                return loaders.remove(registration);
+            }
+        }
+        
+        return false;
+    }
+    
+    static void removeTypeLoaders(FuseModule owner) {
+        for (Registration registration : loaders) {
+            if (registration.owner == owner) {
+                loaders.remove(registration);
+            }
         }
     }
     
@@ -90,13 +194,83 @@ public final class TypeLoaderFactory {
      */
     @SuppressWarnings("unchecked")
     public static <T> TypeLoader<T> getLoaderForType(Class<T> type) {
-        for (TypeLoader<?> loader: loaders) {
-            if (loader.supportsType(type)) {
-                return (TypeLoader<T>) loader;
+        for (Registration registration : loaders) {
+            if (registration.supportsType(type)) {
+                return (TypeLoader<T>) registration.getLoader();
             }
         }
         
         throw new TypeLoadingException("Theme resource type " + type +
                                          " is not supported.");
     }
-}
\ No newline at end of file
+    
+    // Used to find the TypeLoader(s) recorded in a ResourceProfile
+    static TypeLoader<?> getLoader(String className) {
+        for (Registration registration : loaders) {
+            TypeLoader<?> loader = registration.loader;
+            if (loader != null ? loader.getClass().getName().equals(className) :
+                registration.descriptor.getLoaderClassName().equals(className)) {
+                return registration.getLoader();
+            }
+        }
+        
+        return null;
+    }
+    
+    /**
+     * Returns the cache statistics of every registered TypeLoader, keyed
+     * by the TypeLoader class name, in registration order.  TypeLoader(s)
+     * registered by descriptor which have not been instantiated yet are
+     * omitted.
+     * 
+     * @return The cache statistics of all registered TypeLoader(s).
+     * @see TypeLoader#getCacheStatistics()
+     * @since 1.1
+     */
+    public static Map<String, TypeLoader.CacheStatistics> getCacheStatistics() {
+        Map<String, TypeLoader.CacheStatistics> statistics =
+            new LinkedHashMap<String, TypeLoader.CacheStatistics>();
+        
+        for (Registration registration : loaders) {
+            TypeLoader<?> loader = registration.getLoaderIfCreated();
+            if (loader != null) {
+                statistics.put(loader.getClass().getName(), loader.getCacheStatistics());
+            }
+        }
+        
+        return statistics;
+    }
+    
+    private static final class Registration {
+        private final TypeLoader<?> loader;
+        private final TypeLoaderDescriptor descriptor;
+        private final FuseModule owner;
+        
+        private Registration(TypeLoader<?> loader, TypeLoaderDescriptor descriptor, FuseModule owner) {
+            this.loader = loader;
+            this.descriptor = descriptor;
+            this.owner = owner;
+        }
+        
+        private boolean supportsType(Class<?> type) {
+            return loader != null ? loader.supportsType(type) : descriptor.supportsType(type);
+        }
+        
+        private TypeLoader<?> getLoader() {
+            if (loader != null) {
+                return loader;
+            }
+            
+            ClassLoader classLoader = (owner == null ? TypeLoaderFactory.class : owner.getClass()).getClassLoader();
+            return descriptor.getLoader(classLoader);
+        }
+        
+        private TypeLoader<?> getLoaderIfCreated() {
+            if (loader != null || !descriptor.isLoaded()) {
+                return loader;
+            }
+            
+            return getLoader();
+        }
+    }
+}
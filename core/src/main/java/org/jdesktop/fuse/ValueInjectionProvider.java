@@ -62,6 +62,39 @@ abstract class ValueInjectionProvider {
     }
     
     abstract void setValue(Object component, Object resource);
+
+    // primitive writers box by default, see DirectValueInjectionProvider
+    void setBoolean(Object component, boolean value) {
+        setValue(component, value);
+    }
+
+    void setByte(Object component, byte value) {
+        setValue(component, value);
+    }
+
+    void setChar(Object component, char value) {
+        setValue(component, value);
+    }
+
+    void setShort(Object component, short value) {
+        setValue(component, value);
+    }
+
+    void setInt(Object component, int value) {
+        setValue(component, value);
+    }
+
+    void setLong(Object component, long value) {
+        setValue(component, value);
+    }
+
+    void setFloat(Object component, float value) {
+        setValue(component, value);
+    }
+
+    void setDouble(Object component, double value) {
+        setValue(component, value);
+    }
     
     private static class DirectValueInjectionProvider extends ValueInjectionProvider {
         private final Field field;
@@ -72,24 +105,132 @@ abstract class ValueInjectionProvider {
 
         @Override
         void setValue(Object component, Object resource) {
-            Class<?> klass = field.getDeclaringClass();
-            
-            String name = field.getName();
+            makeAccessible();
 
-            if (!field.isAccessible()) {
-                field.setAccessible(true);
+            try {
+                field.set(component, resource);
+            } catch (IllegalArgumentException e) {
+                throw cannotSet();
+            } catch (IllegalAccessException e) {
+                throw cannotSet();
             }
+        }
+
+        @Override
+        void setBoolean(Object component, boolean value) {
+            makeAccessible();
 
             try {
-                field.set(component, resource);
+                field.setBoolean(component, value);
+            } catch (IllegalArgumentException e) {
+                throw cannotSet();
+            } catch (IllegalAccessException e) {
+                throw cannotSet();
+            }
+        }
+
+        @Override
+        void setByte(Object component, byte value) {
+            makeAccessible();
+
+            try {
+                field.setByte(component, value);
+            } catch (IllegalArgumentException e) {
+                throw cannotSet();
+            } catch (IllegalAccessException e) {
+                throw cannotSet();
+            }
+        }
+
+        @Override
+        void setChar(Object component, char value) {
+            makeAccessible();
+
+            try {
+                field.setChar(component, value);
+            } catch (IllegalArgumentException e) {
+                throw cannotSet();
+            } catch (IllegalAccessException e) {
+                throw cannotSet();
+            }
+        }
+
+        @Override
+        void setShort(Object component, short value) {
+            makeAccessible();
+
+            try {
+                field.setShort(component, value);
+            } catch (IllegalArgumentException e) {
+                throw cannotSet();
+            } catch (IllegalAccessException e) {
+                throw cannotSet();
+            }
+        }
+
+        @Override
+        void setInt(Object component, int value) {
+            makeAccessible();
+
+            try {
+                field.setInt(component, value);
+            } catch (IllegalArgumentException e) {
+                throw cannotSet();
+            } catch (IllegalAccessException e) {
+                throw cannotSet();
+            }
+        }
+
+        @Override
+        void setLong(Object component, long value) {
+            makeAccessible();
+
+            try {
+                field.setLong(component, value);
+            } catch (IllegalArgumentException e) {
+                throw cannotSet();
+            } catch (IllegalAccessException e) {
+                throw cannotSet();
+            }
+        }
+
+        @Override
+        void setFloat(Object component, float value) {
+            makeAccessible();
+
+            try {
+                field.setFloat(component, value);
+            } catch (IllegalArgumentException e) {
+                throw cannotSet();
+            } catch (IllegalAccessException e) {
+                throw cannotSet();
+            }
+        }
+
+        @Override
+        void setDouble(Object component, double value) {
+            makeAccessible();
+
+            try {
+                field.setDouble(component, value);
             } catch (IllegalArgumentException e) {
-                throw new TypeLoadingException("Cannot set the value of field " +
-                                               name + " in class " + klass.getName());
+                throw cannotSet();
             } catch (IllegalAccessException e) {
-                throw new TypeLoadingException("Cannot set the value of field " +
-                                               name + " in class " + klass.getName());
+                throw cannotSet();
             }
         }
+
+        private void makeAccessible() {
+            if (!field.isAccessible()) {
+                field.setAccessible(true);
+            }
+        }
+
+        private TypeLoadingException cannotSet() {
+            return new TypeLoadingException("Cannot set the value of field " +
+                                            field.getName() + " in class " +
+                                            field.getDeclaringClass().getName());
+        }
     }
     
     private static final class BeanValueInjectionProvider extends DirectValueInjectionProvider {
@@ -117,5 +258,77 @@ abstract class ValueInjectionProvider {
                 super.setValue(component, resource);
             }
         }
+
+        @Override
+        void setBoolean(Object component, boolean value) {
+            if (setter != null) {
+                setValue(component, value);
+            } else {
+                super.setBoolean(component, value);
+            }
+        }
+
+        @Override
+        void setByte(Object component, byte value) {
+            if (setter != null) {
+                setValue(component, value);
+            } else {
+                super.setByte(component, value);
+            }
+        }
+
+        @Override
+        void setChar(Object component, char value) {
+            if (setter != null) {
+                setValue(component, value);
+            } else {
+                super.setChar(component, value);
+            }
+        }
+
+        @Override
+        void setShort(Object component, short value) {
+            if (setter != null) {
+                setValue(component, value);
+            } else {
+                super.setShort(component, value);
+            }
+        }
+
+        @Override
+        void setInt(Object component, int value) {
+            if (setter != null) {
+                setValue(component, value);
+            } else {
+                super.setInt(component, value);
+            }
+        }
+
+        @Override
+        void setLong(Object component, long value) {
+            if (setter != null) {
+                setValue(component, value);
+            } else {
+                super.setLong(component, value);
+            }
+        }
+
+        @Override
+        void setFloat(Object component, float value) {
+            if (setter != null) {
+                setValue(component, value);
+            } else {
+                super.setFloat(component, value);
+            }
+        }
+
+        @Override
+        void setDouble(Object component, double value) {
+            if (setter != null) {
+                setValue(component, value);
+            } else {
+                super.setDouble(component, value);
+            }
+        }
     }
 }
@@ -33,20 +33,30 @@ package org.jdesktop.fuse.core;
 
 import java.util.Map;
 
+import org.jdesktop.fuse.PrimitiveLoader.BooleanLoader;
 import org.jdesktop.fuse.TypeLoader;
 
-class BooleanTypeLoader extends TypeLoader<Boolean> {
+class BooleanTypeLoader extends TypeLoader<Boolean> implements BooleanLoader {
     BooleanTypeLoader() {
         super(boolean.class, Boolean.class);
     }
 
+    @Override
+    protected CachePolicy getCachePolicy() {
+        return CachePolicy.NONE;
+    }
+
     @Override
     public Boolean loadType(String name, String value, Class<?> resolver, Map<String, Object> properties) {
-        value = value.trim();
+        return parseBoolean(name, value);
+    }
+
+    public boolean parseBoolean(String name, CharSequence value) {
+        String trimmed = value.toString().trim();
         
-        boolean boolValue = value.equalsIgnoreCase("yes") || value.equalsIgnoreCase("on");
+        boolean boolValue = trimmed.equalsIgnoreCase("yes") || trimmed.equalsIgnoreCase("on");
         if (!boolValue) {
-            boolValue = Boolean.parseBoolean(value);
+            boolValue = Boolean.parseBoolean(trimmed);
         }
         return boolValue;
     }
@@ -33,18 +33,28 @@ package org.jdesktop.fuse.core;
 
 import java.util.Map;
 
+import org.jdesktop.fuse.PrimitiveLoader.ByteLoader;
 import org.jdesktop.fuse.TypeLoader;
 import org.jdesktop.fuse.TypeLoadingException;
 
-class ByteTypeLoader extends TypeLoader<Byte> {
+class ByteTypeLoader extends TypeLoader<Byte> implements ByteLoader {
     ByteTypeLoader() {
         super(byte.class, Byte.class);
     }
 
+    @Override
+    protected CachePolicy getCachePolicy() {
+        return CachePolicy.NONE;
+    }
+
     @Override
     public Byte loadType(String name, String value, Class<?> resolver, Map<String, Object> properties) {
+        return parseByte(name, value);
+    }
+
+    public byte parseByte(String name, CharSequence value) {
         try {
-            return Byte.parseByte(value);
+            return Byte.parseByte(value.toString());
         } catch (NumberFormatException e) {
             throw new TypeLoadingException("Theme resource " + name +
                                              " is not a valid byte.", e);
@@ -33,16 +33,26 @@ package org.jdesktop.fuse.core;
 
 import java.util.Map;
 
+import org.jdesktop.fuse.PrimitiveLoader.CharLoader;
 import org.jdesktop.fuse.TypeLoader;
 import org.jdesktop.fuse.TypeLoadingException;
 
-class CharacterTypeLoader extends TypeLoader<Character> {
+class CharacterTypeLoader extends TypeLoader<Character> implements CharLoader {
     CharacterTypeLoader() {
         super(char.class, Character.class);
     }
 
+    @Override
+    protected CachePolicy getCachePolicy() {
+        return CachePolicy.NONE;
+    }
+
     @Override
     public Character loadType(String name, String value, Class<?> resolver, Map<String, Object> properties) {
+        return parseChar(name, value);
+    }
+
+    public char parseChar(String name, CharSequence value) {
         if (value.length() == 0) {
             throw new TypeLoadingException("Theme resource " + name +
                                              " is not a valid character.");
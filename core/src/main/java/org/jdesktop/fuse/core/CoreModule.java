@@ -35,6 +35,7 @@ import static org.jdesktop.fuse.TypeLoaderFactory.addTypeLoader;
 
 import org.jdesktop.fuse.FuseModule;
 import org.jdesktop.fuse.ModuleInitException;
+import org.jdesktop.fuse.TypeLoaderDescriptor;
 
 /**
  * This class is the FuseModule subclass encapsulating the /Core
@@ -55,23 +56,28 @@ public final class CoreModule extends FuseModule {
 
     @Override
     public void init() throws ModuleInitException {
-        addTypeLoader(new BooleanTypeLoader());
-        addTypeLoader(new ByteTypeLoader());
-        addTypeLoader(new CalendarTypeLoader());
-        addTypeLoader(new CharacterTypeLoader());
-        addTypeLoader(new DateTypeLoader());
-        addTypeLoader(new DoubleTypeLoader());
-        addTypeLoader(new FileTypeLoader());
-        addTypeLoader(new FloatTypeLoader());
-        addTypeLoader(new IntTypeLoader());
-        addTypeLoader(new LongTypeLoader());
-        addTypeLoader(new ShortTypeLoader());
-        addTypeLoader(new StringTypeLoader());
-        addTypeLoader(new StringBufferTypeLoader());
-        addTypeLoader(new StringBuilderTypeLoader());
-        addTypeLoader(new URITypeLoader());
-        addTypeLoader(new URLTypeLoader());
-        addTypeLoader(new UUIDTypeLoader());
-        addTypeLoader(new XmlDocumentTypeLoader());
+        addTypeLoader(core("BooleanTypeLoader", "boolean", "java.lang.Boolean"));
+        addTypeLoader(core("ByteTypeLoader", "byte", "java.lang.Byte"));
+        addTypeLoader(core("CalendarTypeLoader", "java.util.Calendar"));
+        addTypeLoader(core("CharacterTypeLoader", "char", "java.lang.Character"));
+        addTypeLoader(core("DateTypeLoader", "java.util.Date"));
+        addTypeLoader(core("DoubleTypeLoader", "double", "java.lang.Double"));
+        addTypeLoader(core("FileTypeLoader", "java.io.File"));
+        addTypeLoader(core("FloatTypeLoader", "float", "java.lang.Float"));
+        addTypeLoader(core("IntTypeLoader", "int", "java.lang.Integer"));
+        addTypeLoader(core("LongTypeLoader", "long", "java.lang.Long"));
+        addTypeLoader(core("ShortTypeLoader", "short", "java.lang.Short"));
+        addTypeLoader(core("StringTypeLoader", "java.lang.String"));
+        addTypeLoader(core("StringBufferTypeLoader", "java.lang.StringBuffer"));
+        addTypeLoader(core("StringBuilderTypeLoader", "java.lang.StringBuilder"));
+        addTypeLoader(core("URITypeLoader", "java.net.URI"));
+        addTypeLoader(core("URLTypeLoader", "java.net.URL"));
+        addTypeLoader(core("UUIDTypeLoader", "java.util.UUID"));
+        addTypeLoader(core("XmlDocumentTypeLoader", "org.w3c.dom.Document"));
+    }
+    
+    // loaders are only instantiated when a field of their type is first injected
+    private static TypeLoaderDescriptor core(String loader, String... types) {
+        return new TypeLoaderDescriptor(CoreModule.class.getPackage().getName() + '.' + loader, types);
     }
 }
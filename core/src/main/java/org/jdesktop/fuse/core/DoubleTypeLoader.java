@@ -33,18 +33,28 @@ package org.jdesktop.fuse.core;
 
 import java.util.Map;
 
+import org.jdesktop.fuse.PrimitiveLoader.DoubleLoader;
 import org.jdesktop.fuse.TypeLoader;
 import org.jdesktop.fuse.TypeLoadingException;
 
-class DoubleTypeLoader extends TypeLoader<Double> {
+class DoubleTypeLoader extends TypeLoader<Double> implements DoubleLoader {
     DoubleTypeLoader() {
         super(double.class, Double.class);
     }
     
+    @Override
+    protected CachePolicy getCachePolicy() {
+        return CachePolicy.NONE;
+    }
+
     @Override
     public Double loadType(String name, String value, Class<?> resolver, Map<String, Object> properties) {
+        return parseDouble(name, value);
+    }
+
+    public double parseDouble(String name, CharSequence value) {
         try {
-            return Double.parseDouble(value);
+            return Double.parseDouble(value.toString());
         } catch (NumberFormatException e) {
             throw new TypeLoadingException("Theme resource " + name +
                                              " is not a valid double.", e);
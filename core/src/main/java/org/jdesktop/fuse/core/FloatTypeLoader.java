@@ -33,18 +33,28 @@ package org.jdesktop.fuse.core;
 
 import java.util.Map;
 
+import org.jdesktop.fuse.PrimitiveLoader.FloatLoader;
 import org.jdesktop.fuse.TypeLoader;
 import org.jdesktop.fuse.TypeLoadingException;
 
-class FloatTypeLoader extends TypeLoader<Float> {
+class FloatTypeLoader extends TypeLoader<Float> implements FloatLoader {
     FloatTypeLoader() {
         super(float.class, Float.class);
     }
     
+    @Override
+    protected CachePolicy getCachePolicy() {
+        return CachePolicy.NONE;
+    }
+
     @Override
     public Float loadType(String name, String value, Class<?> resolver, Map<String, Object> properties) {
+        return parseFloat(name, value);
+    }
+
+    public float parseFloat(String name, CharSequence value) {
         try {
-            return Float.parseFloat(value);
+            return Float.parseFloat(value.toString());
         } catch (NumberFormatException e) {
             throw new TypeLoadingException("Theme resource " + name +
                                              " is not a valid float.", e);
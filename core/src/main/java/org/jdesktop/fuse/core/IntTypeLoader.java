@@ -33,18 +33,28 @@ package org.jdesktop.fuse.core;
 
 import java.util.Map;
 
+import org.jdesktop.fuse.PrimitiveLoader.IntLoader;
 import org.jdesktop.fuse.TypeLoader;
 import org.jdesktop.fuse.TypeLoadingException;
 
-class IntTypeLoader extends TypeLoader<Integer> {
+class IntTypeLoader extends TypeLoader<Integer> implements IntLoader {
     IntTypeLoader() {
         super(int.class, Integer.class);
     }
     
+    @Override
+    protected CachePolicy getCachePolicy() {
+        return CachePolicy.NONE;
+    }
+
     @Override
     public Integer loadType(String name, String value, Class<?> resolver, Map<String, Object> properties) {
+        return parseInt(name, value);
+    }
+
+    public int parseInt(String name, CharSequence value) {
         try {
-            return Integer.parseInt(value);
+            return Integer.parseInt(value.toString());
         } catch (NumberFormatException e) {
             throw new TypeLoadingException("Theme resource " + name +
                                              " is not a valid integer.", e);
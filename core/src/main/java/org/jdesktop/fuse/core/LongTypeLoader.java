@@ -33,18 +33,28 @@ package org.jdesktop.fuse.core;
 
 import java.util.Map;
 
+import org.jdesktop.fuse.PrimitiveLoader.LongLoader;
 import org.jdesktop.fuse.TypeLoader;
 import org.jdesktop.fuse.TypeLoadingException;
 
-class LongTypeLoader extends TypeLoader<Long> {
+class LongTypeLoader extends TypeLoader<Long> implements LongLoader {
     LongTypeLoader() {
         super(long.class, Long.class);
     }
 
+    @Override
+    protected CachePolicy getCachePolicy() {
+        return CachePolicy.NONE;
+    }
+
     @Override
     public Long loadType(String name, String value, Class<?> resolver, Map<String, Object> properties) {
+        return parseLong(name, value);
+    }
+
+    public long parseLong(String name, CharSequence value) {
         try {
-            return Long.parseLong(value);
+            return Long.parseLong(value.toString());
         } catch (NumberFormatException e) {
             throw new TypeLoadingException("Theme resource " + name +
                                              " is not a valid long.", e);
@@ -33,18 +33,28 @@ package org.jdesktop.fuse.core;
 
 import java.util.Map;
 
+import org.jdesktop.fuse.PrimitiveLoader.ShortLoader;
 import org.jdesktop.fuse.TypeLoader;
 import org.jdesktop.fuse.TypeLoadingException;
 
-class ShortTypeLoader extends TypeLoader<Short> {
+class ShortTypeLoader extends TypeLoader<Short> implements ShortLoader {
     ShortTypeLoader() {
         super(short.class, Short.class);
     }
 
+    @Override
+    protected CachePolicy getCachePolicy() {
+        return CachePolicy.NONE;
+    }
+
     @Override
     public Short loadType(String name, String value, Class<?> resolver, Map<String, Object> properties) {
+        return parseShort(name, value);
+    }
+
+    public short parseShort(String name, CharSequence value) {
         try {
-            return Short.parseShort(value);
+            return Short.parseShort(value.toString());
         } catch (NumberFormatException e) {
             throw new TypeLoadingException("Theme resource " + name +
                                              " is not a valid short.", e);
@@ -44,6 +44,11 @@ class StringBufferTypeLoader extends TypeLoader<StringBuffer> {
 		super(StringBuffer.class);
 	}
 	
+	@Override
+	protected CachePolicy getCachePolicy() {
+		return CachePolicy.NONE;
+	}
+
 	@Override
 	public StringBuffer loadType(String name, String value, Class<?> resolver, Map<String, Object> properties) {
 		return new StringBuffer(value);
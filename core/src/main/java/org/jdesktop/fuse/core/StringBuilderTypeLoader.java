@@ -44,6 +44,11 @@ class StringBuilderTypeLoader extends TypeLoader<StringBuilder> {
 		super(StringBuilder.class);
 	}
 	
+	@Override
+	protected CachePolicy getCachePolicy() {
+		return CachePolicy.NONE;
+	}
+
 	@Override
 	public StringBuilder loadType(String name, String value, Class<?> resolver, Map<String, Object> properties) {
 		return new StringBuilder(value);
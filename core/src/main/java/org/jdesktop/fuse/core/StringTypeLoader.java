@@ -40,6 +40,11 @@ class StringTypeLoader extends TypeLoader<String> {
         super(String.class);
     }
     
+    @Override
+    protected CachePolicy getCachePolicy() {
+        return CachePolicy.NONE;
+    }
+
     @Override
     public String loadType(String name, String value, Class<?> resolver, Map<String, Object> properties) {
         return value;
@@ -51,6 +51,11 @@ class XmlDocumentTypeLoader extends TypeLoader<Document> {
         super(Document.class);
     }
 
+    @Override
+    protected CachePolicy getCachePolicy() {
+        return CachePolicy.SOFT;
+    }
+
     @Override
     public Document loadType(String name, String value, Class<?> resolver, Map<String, Object> properties) {
         DocumentBuilder builder = null;
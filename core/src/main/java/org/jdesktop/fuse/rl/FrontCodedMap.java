@@ -0,0 +1,393 @@
+/**
+ * Copyright (c) 2006, Sun Microsystems, Inc
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 
+ *   * Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *   * Redistributions in binary form must reproduce the above
+ *     copyright notice, this list of conditions and the following 
+ *     disclaimer in the documentation and/or other materials provided 
+ *     with the distribution.
+ *   * Neither the name of the Fuse project nor the names of its
+ *     contributors may be used to endorse or promote products derived 
+ *     from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.jdesktop.fuse.rl;
+
+import java.nio.charset.Charset;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * <p>An immutable map of resources whose keys are front coded.  Resource keys
+ * share long prefixes such as <code>BerthPlanView.header.</code>, so the keys
+ * are sorted by their UTF-8 bytes and stored in blocks of sixteen: the first key
+ * of a block is stored whole, every following key as the length of the prefix it
+ * shares with the previous key and the remaining bytes.  All blocks live in a
+ * single byte array; the values are held in an array indexed by the rank of
+ * their key.</p>
+ * 
+ * <p>A lookup binary searches the first keys of the blocks then decodes at most
+ * one block.  Keys are only created as strings when iterating, which follows
+ * the order of the keys.</p>
+ */
+final class FrontCodedMap extends AbstractMap<String, String> {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final int BLOCK_SIZE = 16;
+    
+    private final byte[] data;
+    private final int[] blocks;
+    private final String[] values;
+    private final int maxKeyLength;
+    
+    private FrontCodedMap(byte[] data, int[] blocks, String[] values, int maxKeyLength) {
+        this.data = data;
+        this.blocks = blocks;
+        this.values = values;
+        this.maxKeyLength = maxKeyLength;
+    }
+    
+    static FrontCodedMap of(Map<String, String> resources) {
+        int size = resources.size();
+        
+        final byte[][] keys = new byte[size][];
+        String[] unsorted = new String[size];
+        Integer[] order = new Integer[size];
+        
+        int i = 0;
+        int length = 0;
+        int maxKeyLength = 0;
+        for (Map.Entry<String, String> entry : resources.entrySet()) {
+            keys[i] = entry.getKey().getBytes(UTF_8);
+            unsorted[i] = entry.getValue();
+            order[i] = i;
+            
+            length += keys[i].length;
+            maxKeyLength = Math.max(maxKeyLength, keys[i].length);
+            i++;
+        }
+        
+        Arrays.sort(order, new Comparator<Integer>() {
+            public int compare(Integer a, Integer b) {
+                return FrontCodedMap.compare(keys[a], keys[a].length, keys[b]);
+            }
+        });
+        
+        Output out = new Output(length / 2 + 16);
+        int[] blocks = new int[(size + BLOCK_SIZE - 1) / BLOCK_SIZE];
+        String[] values = new String[size];
+        
+        byte[] previous = null;
+        for (i = 0; i < size; i++) {
+            byte[] key = keys[order[i]];
+            values[i] = unsorted[order[i]];
+            
+            int shared = 0;
+            if (i % BLOCK_SIZE == 0) {
+                blocks[i / BLOCK_SIZE] = out.length;
+            } else {
+                int max = Math.min(previous.length, key.length);
+                while (shared < max && previous[shared] == key[shared]) {
+                    shared++;
+                }
+                out.writeVarInt(shared);
+            }
+            
+            out.writeVarInt(key.length - shared);
+            out.write(key, shared, key.length - shared);
+            previous = key;
+        }
+        
+        return new FrontCodedMap(out.toByteArray(), blocks, values, maxKeyLength);
+    }
+    
+    @Override
+    public int size() {
+        return values.length;
+    }
+    
+    @Override
+    public boolean containsKey(Object key) {
+        return key instanceof String && rank((String) key) >= 0;
+    }
+    
+    @Override
+    public String get(Object key) {
+        if (!(key instanceof String)) {
+            return null;
+        }
+        
+        int rank = rank((String) key);
+        return rank < 0 ? null : values[rank];
+    }
+    
+    String findKey(String scope, String name) {
+        String key = scope + '.' + name;
+        if (rank(key) >= 0) {
+            return key;
+        }
+        
+        key = "*." + name;
+        return rank(key) >= 0 ? key : null;
+    }
+    
+    // the sorted keys starting with key + '.' are contiguous
+    List<String> subKeys(String key) {
+        byte[] prefix = (key + '.').getBytes(UTF_8);
+        if (values.length == 0) {
+            return Collections.emptyList();
+        }
+        
+        List<String> keys = new ArrayList<String>();
+        Cursor cursor = new Cursor(Math.max(0, findBlock(prefix)));
+        while (cursor.next()) {
+            int cmp = compare(cursor.key, cursor.length, prefix);
+            if (cmp >= 0) {
+                if (!cursor.startsWith(prefix)) {
+                    break;
+                }
+                keys.add(cursor.toString());
+            }
+        }
+        
+        return keys;
+    }
+    
+    @Override
+    public Set<Map.Entry<String, String>> entrySet() {
+        return new AbstractSet<Map.Entry<String, String>>() {
+            @Override
+            public Iterator<Map.Entry<String, String>> iterator() {
+                return new Iterator<Map.Entry<String, String>>() {
+                    private final Cursor cursor = new Cursor(0);
+                    private boolean ready;
+                    
+                    public boolean hasNext() {
+                        if (!ready) {
+                            ready = cursor.next();
+                        }
+                        return ready;
+                    }
+                    
+                    public Map.Entry<String, String> next() {
+                        if (!hasNext()) {
+                            throw new NoSuchElementException();
+                        }
+                        
+                        ready = false;
+                        return new SimpleImmutableEntry<String, String>(cursor.toString(),
+                                                                        values[cursor.rank]);
+                    }
+                    
+                    public void remove() {
+                        throw new UnsupportedOperationException();
+                    }
+                };
+            }
+            
+            @Override
+            public int size() {
+                return values.length;
+            }
+        };
+    }
+    
+    private int rank(String name) {
+        byte[] key = name.getBytes(UTF_8);
+        if (key.length > maxKeyLength) {
+            return -1;
+        }
+        
+        int block = findBlock(key);
+        if (block < 0) {
+            return -1;
+        }
+        
+        Cursor cursor = new Cursor(block);
+        for (int i = 0; i < BLOCK_SIZE && cursor.next(); i++) {
+            int cmp = compare(cursor.key, cursor.length, key);
+            if (cmp == 0) {
+                return cursor.rank;
+            } else if (cmp > 0) {
+                break;
+            }
+        }
+        
+        return -1;
+    }
+    
+    // the last block whose first key is lower than or equal to the key, or -1
+    private int findBlock(byte[] key) {
+        int low = 0;
+        int high = blocks.length - 1;
+        
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int pos = blocks[mid];
+            
+            int length = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = data[pos++];
+                length |= (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+            
+            int cmp = compare(data, pos, length, key);
+            if (cmp == 0) {
+                return mid;
+            } else if (cmp < 0) {
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        
+        return high;
+    }
+    
+    private static int compare(byte[] a, int length, byte[] b) {
+        return compare(a, 0, length, b);
+    }
+    
+    // compares unsigned bytes, which sorts UTF-8 strings by code point
+    private static int compare(byte[] a, int offset, int length, byte[] b) {
+        int max = Math.min(length, b.length);
+        for (int i = 0; i < max; i++) {
+            int cmp = (a[offset + i] & 0xFF) - (b[i] & 0xFF);
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        
+        return length - b.length;
+    }
+    
+    /**
+     * Decodes the keys in order from the start of a block.
+     */
+    private final class Cursor {
+        private final byte[] key = new byte[maxKeyLength];
+        private int length;
+        private int rank;
+        private int pos;
+        
+        private Cursor(int block) {
+            rank = block * BLOCK_SIZE - 1;
+            pos = blocks.length == 0 ? 0 : blocks[block];
+        }
+        
+        private boolean next() {
+            if (rank + 1 >= values.length) {
+                return false;
+            }
+            
+            rank++;
+            int shared = rank % BLOCK_SIZE == 0 ? 0 : readVarInt();
+            int suffix = readVarInt();
+            
+            System.arraycopy(data, pos, key, shared, suffix);
+            pos += suffix;
+            length = shared + suffix;
+            
+            return true;
+        }
+        
+        private boolean startsWith(byte[] prefix) {
+            if (length < prefix.length) {
+                return false;
+            }
+            
+            for (int i = 0; i < prefix.length; i++) {
+                if (key[i] != prefix[i]) {
+                    return false;
+                }
+            }
+            
+            return true;
+        }
+        
+        private int readVarInt() {
+            int value = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = data[pos++];
+                value |= (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+            
+            return value;
+        }
+        
+        @Override
+        public String toString() {
+            return new String(key, 0, length, UTF_8);
+        }
+    }
+    
+    private static final class Output {
+        private byte[] bytes;
+        private int length;
+        
+        private Output(int capacity) {
+            bytes = new byte[capacity];
+        }
+        
+        private void writeVarInt(int value) {
+            while ((value & ~0x7F) != 0) {
+                writeByte((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            writeByte(value);
+        }
+        
+        private void writeByte(int b) {
+            ensureCapacity(1);
+            bytes[length++] = (byte) b;
+        }
+        
+        private void write(byte[] b, int offset, int count) {
+            ensureCapacity(count);
+            System.arraycopy(b, offset, bytes, length, count);
+            length += count;
+        }
+        
+        private void ensureCapacity(int count) {
+            if (length + count > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, length + count));
+            }
+        }
+        
+        private byte[] toByteArray() {
+            return Arrays.copyOf(bytes, length);
+        }
+    }
+}
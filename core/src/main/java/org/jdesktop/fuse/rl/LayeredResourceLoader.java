@@ -0,0 +1,282 @@
+/**
+ * Copyright (c) 2006, Sun Microsystems, Inc
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 
+ *   * Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *   * Redistributions in binary form must reproduce the above
+ *     copyright notice, this list of conditions and the following 
+ *     disclaimer in the documentation and/or other materials provided 
+ *     with the distribution.
+ *   * Neither the name of the Fuse project nor the names of its
+ *     contributors may be used to endorse or promote products derived 
+ *     from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.jdesktop.fuse.rl;
+
+import java.io.File;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.jdesktop.fuse.ResourceLoader;
+
+/**
+ * <p>A resource loader stacking other resource loaders as layers, for example a
+ * base theme, a site theme and user overrides.  Resources of upper layers
+ * override the resources of lower layers.  The layers are not copied: a merged
+ * index maps every key to the layer which wins it, so a lookup is a single hash
+ * probe followed by a call to that layer whatever the number of layers.</p>
+ * 
+ * <p>The index is updated incrementally when a layer is added, removed or
+ * replaced, only visiting the keys of that layer.  If the contents of a layer
+ * change after it was added, {@link #refreshLayer(ResourceLoader)} must be called.
+ * Lookups never lock and see each key either before or after an update.</p>
+ * 
+ * <p>The <code>load</code> methods taking files, URLs, paths or streams push a
+ * new {@link PropertiesResourceLoader} layer holding the loaded resources;
+ * <code>load(ResourceLoader...)</code> pushes the specified loaders as layers.</p>
+ *
+ * @since 1.1
+ */
+public final class LayeredResourceLoader implements ResourceLoader {
+    private final List<ResourceLoader> layers = new CopyOnWriteArrayList<ResourceLoader>();
+    private final ConcurrentMap<String, ResourceLoader> index = new ConcurrentHashMap<String, ResourceLoader>();
+    private final Lock writeLock = new ReentrantLock();
+    
+    /**
+     * Creates a new instance with the specified layers, from the bottom to the top.
+     * 
+     * @param layers    The initial layers.
+     */
+    public LayeredResourceLoader(ResourceLoader... layers) {
+        for (ResourceLoader layer : layers) {
+            addLayer(layer);
+        }
+    }
+    
+    /**
+     * Adds the specified layer on top of the existing layers.
+     * 
+     * @param layer The layer to add.
+     */
+    public void addLayer(ResourceLoader layer) {
+        if (layer == null) {
+            throw new NullPointerException("Cannot add a null layer");
+        }
+        
+        writeLock.lock();
+        try {
+            layers.add(layer);
+            for (String key : layer) {
+                if (layer.get(key) != null) {
+                    index.put(key, layer);
+                }
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+    
+    /**
+     * Removes the specified layer.  The keys it won are handed to the layers below.
+     * 
+     * @param layer The layer to remove.
+     * @return <code>true</code> if the layer was present.
+     */
+    public boolean removeLayer(ResourceLoader layer) {
+        writeLock.lock();
+        try {
+            int position = layers.indexOf(layer);
+            if (position < 0) {
+                return false;
+            }
+            
+            layers.remove(position);
+            for (String key : layer) {
+                if (index.get(key) == layer) {
+                    reindex(key);
+                }
+            }
+            
+            return true;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+    
+    /**
+     * Replaces the specified layer with another one at the same position.
+     * 
+     * @param layer         The layer to replace.
+     * @param replacement   The new layer.
+     * @return <code>true</code> if the layer was present.
+     */
+    public boolean replaceLayer(ResourceLoader layer, ResourceLoader replacement) {
+        if (replacement == null) {
+            throw new NullPointerException("Cannot add a null layer");
+        }
+        
+        writeLock.lock();
+        try {
+            int position = layers.indexOf(layer);
+            if (position < 0) {
+                return false;
+            }
+            
+            layers.set(position, replacement);
+            for (String key : layer) {
+                if (index.get(key) == layer) {
+                    reindex(key);
+                }
+            }
+            for (String key : replacement) {
+                reindex(key);
+            }
+            
+            return true;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+    
+    /**
+     * Updates the index after the contents of the specified layer changed.
+     * 
+     * @param layer The layer whose contents changed.
+     */
+    public void refreshLayer(ResourceLoader layer) {
+        writeLock.lock();
+        try {
+            if (!layers.contains(layer)) {
+                return;
+            }
+            
+            // keys the layer no longer holds, then its current keys
+            for (Map.Entry<String, ResourceLoader> entry : index.entrySet()) {
+                if (entry.getValue() == layer && layer.get(entry.getKey()) == null) {
+                    reindex(entry.getKey());
+                }
+            }
+            for (String key : layer) {
+                reindex(key);
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+    
+    /**
+     * @return The layers, from the bottom to the top.
+     */
+    public List<ResourceLoader> getLayers() {
+        return Collections.unmodifiableList(new ArrayList<ResourceLoader>(layers));
+    }
+    
+    // finds the topmost layer holding the key, called with the write lock held
+    private void reindex(String key) {
+        for (int i = layers.size() - 1; i >= 0; i--) {
+            ResourceLoader layer = layers.get(i);
+            if (layer.get(key) != null) {
+                index.put(key, layer);
+                return;
+            }
+        }
+        
+        index.remove(key);
+    }
+
+    public void load(URL... urls) {
+        PropertiesResourceLoader layer = new PropertiesResourceLoader();
+        layer.load(urls);
+        addLayer(layer);
+    }
+
+    public void load(InputStream... streams) {
+        PropertiesResourceLoader layer = new PropertiesResourceLoader();
+        layer.load(streams);
+        addLayer(layer);
+    }
+
+    public void load(String... paths) {
+        PropertiesResourceLoader layer = new PropertiesResourceLoader();
+        layer.load(paths);
+        addLayer(layer);
+    }
+
+    public void load(Class<?> resolver, String... paths) {
+        PropertiesResourceLoader layer = new PropertiesResourceLoader();
+        layer.load(resolver, paths);
+        addLayer(layer);
+    }
+
+    public void load(File... files) {
+        PropertiesResourceLoader layer = new PropertiesResourceLoader();
+        layer.load(files);
+        addLayer(layer);
+    }
+
+    public void load(ResourceLoader... loaders) {
+        for (ResourceLoader loader : loaders) {
+            addLayer(loader);
+        }
+    }
+
+    /**
+     * Closes every layer.
+     */
+    public void close() {
+        for (ResourceLoader layer : layers) {
+            layer.close();
+        }
+    }
+
+    /**
+     * Removes every layer.  The layers themselves are left untouched.
+     */
+    public void clear() {
+        writeLock.lock();
+        try {
+            layers.clear();
+            index.clear();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    public String get(String key) {
+        ResourceLoader layer = index.get(key);
+        
+        return layer == null ? null : layer.get(key);
+    }
+
+    public Iterator<String> iterator() {
+        return Collections.unmodifiableSet(index.keySet()).iterator();
+    }
+}
@@ -34,6 +34,7 @@ package org.jdesktop.fuse.rl;
 import java.io.File;
 import java.io.InputStream;
 import java.net.URL;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
 
@@ -73,10 +74,31 @@ public final class MapResourceLoader implements ResourceLoader {
 
 	public void load(File... file) {}
 
+    /**
+     * Copies the resources of the specified loaders into the peered Map.  Equal
+     * values, whether loaded now or already in the Map, share a single String.
+     */
     public void load(ResourceLoader... loaders) {
+        Map<String, String> table = new HashMap<String, String>();
+        for (String value : map.values()) {
+            if (value != null && !table.containsKey(value)) {
+                table.put(value, value);
+            }
+        }
+        
         for (ResourceLoader loader : loaders) {
             for (String key : loader) {
-                map.put(key, loader.get(key));
+                String value = loader.get(key);
+                
+                if (value != null) {
+                    String canonical = table.get(value);
+                    if (canonical == null) {
+                        table.put(value, value);
+                    } else {
+                        value = canonical;
+                    }
+                }
+                map.put(key, value);
             }
         }
     }
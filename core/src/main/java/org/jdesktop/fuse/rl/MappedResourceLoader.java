@@ -0,0 +1,472 @@
+/**
+ * Copyright (c) 2006, Sun Microsystems, Inc
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 
+ *   * Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *   * Redistributions in binary form must reproduce the above
+ *     copyright notice, this list of conditions and the following 
+ *     disclaimer in the documentation and/or other materials provided 
+ *     with the distribution.
+ *   * Neither the name of the Fuse project nor the names of its
+ *     contributors may be used to endorse or promote products derived 
+ *     from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.jdesktop.fuse.rl;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.net.MalformedURLException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.jdesktop.fuse.ResourceInjector;
+import org.jdesktop.fuse.ResourceLoader;
+import org.jdesktop.fuse.TypeLoadingException;
+
+/**
+ * <p>A resource loader for very large properties files.  Files are mapped into
+ * memory with <code>FileChannel.map</code> rather than read and parsed.  Loading
+ * a file only builds a compact index from the hash of every key to the position
+ * of its entry in the file; a value is decoded the first time its key is
+ * requested and cached from then on.  Load time and heap usage are therefore
+ * proportional to the resources actually injected rather than to the size of
+ * the files.</p>
+ * 
+ * <p>The syntax is the one understood by {@link PropertiesResourceLoader}.  Each
+ * entry is decoded as UTF-8, or as ISO-8859-1 if it is not valid UTF-8.  Resources
+ * loaded from URLs which are not files, from streams or from other loaders are
+ * held on the heap.  As with PropertiesResourceLoader, resources loaded later
+ * override resources loaded earlier.</p>
+ * 
+ * <p>Theme bundles produced by {@link ThemeBundleCompiler} are recognized and
+ * loaded the same way.  Their index is precomputed, so loading them costs no
+ * more than mapping the file.</p>
+ * 
+ * <p>Mapped files should not be modified while they are loaded.</p>
+ *
+ * @see PropertiesResourceLoader
+ * @see ThemeBundleCompiler
+ * @since 1.1
+ */
+public final class MappedResourceLoader implements ResourceLoader {
+    private final List<Layer> layers = new CopyOnWriteArrayList<Layer>();
+    
+    /**
+     * Creates a new, empty instance.
+     */
+    public MappedResourceLoader() {
+    }
+
+    public void load(URL... urls) {
+        List<Layer> loaded = new ArrayList<Layer>(urls.length);
+        for (URL url : urls) {
+            if (url == null) {
+                throw new TypeLoadingException("Resource was null");
+            }
+            
+            if ("file".equals(url.getProtocol())) {
+                try {
+                    loaded.add(map(new File(url.toURI())));
+                    continue;
+                } catch (URISyntaxException e) {
+                    // not a plain file path, read it as a stream
+                } catch (IllegalArgumentException e) {
+                    // not a plain file path, read it as a stream
+                }
+            }
+            
+            try {
+                InputStream stream = url.openStream();
+                try {
+                    loaded.add(read(stream));
+                } finally {
+                    stream.close();
+                }
+            } catch (IOException e) {
+                throw new TypeLoadingException("Cannot open " + url + ".", e);
+            }
+        }
+        
+        layers.addAll(loaded);
+    }
+
+    public void load(InputStream... streams) {
+        List<Layer> loaded = new ArrayList<Layer>(streams.length);
+        for (InputStream stream : streams) {
+            try {
+                loaded.add(read(stream));
+            } catch (IOException e) {
+                throw new TypeLoadingException("No properties found.", e);
+            }
+        }
+        
+        layers.addAll(loaded);
+    }
+
+    public void load(String... paths) {
+        load(ResourceInjector.class, paths);
+    }
+
+    public void load(Class<?> resolver, String... paths) {
+        List<URL> urls = new ArrayList<URL>(paths.length);
+        
+        for (String path : paths) {
+            URL url = resolver.getResource(path);
+            if (url == null) {
+                throw new TypeLoadingException("Resource \"" + path + "\" was not found");
+            }
+            
+            urls.add(url);
+        }
+        
+        load(urls.toArray(new URL[urls.size()]));
+    }
+
+    public void load(File... files) {
+        List<Layer> loaded = new ArrayList<Layer>(files.length);
+        for (File file : files) {
+            loaded.add(map(file));
+        }
+        
+        layers.addAll(loaded);
+    }
+
+    public void load(ResourceLoader... loaders) {
+        Map<String, String> values = new LinkedHashMap<String, String>();
+        for (ResourceLoader loader : loaders) {
+            for (String key : loader) {
+                String value = loader.get(key);
+                if (value != null) {
+                    values.put(key, value);
+                }
+            }
+        }
+        
+        layers.add(new MapLayer(values));
+    }
+
+    public void close() {
+    }
+
+    public void clear() {
+        layers.clear();
+    }
+
+    public String get(String key) {
+        Object[] snapshot = layers.toArray();
+        for (int i = snapshot.length - 1; i >= 0; i--) {
+            String value = ((Layer) snapshot[i]).get(key);
+            if (value != null) {
+                return value;
+            }
+        }
+        
+        return null;
+    }
+
+    /**
+     * Iterates over the keys of all loaded resources.  This requires the keys
+     * of every mapped file to be decoded and should be avoided on large files.
+     */
+    public Iterator<String> iterator() {
+        Set<String> keys = new LinkedHashSet<String>();
+        for (Layer layer : layers) {
+            layer.collectKeys(keys);
+        }
+        
+        return Collections.unmodifiableSet(keys).iterator();
+    }
+    
+    private static Layer map(File file) {
+        try {
+            RandomAccessFile raf = new RandomAccessFile(file, "r");
+            try {
+                FileChannel channel = raf.getChannel();
+                if (channel.size() > Integer.MAX_VALUE) {
+                    throw new TypeLoadingException("Cannot map " + file + ", the file is too large.");
+                }
+                
+                // the mapping remains valid once the channel is closed
+                return layer(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+            } finally {
+                raf.close();
+            }
+        } catch (IOException e) {
+            try {
+                throw new TypeLoadingException("Cannot open " + file.toURI().toURL() + ".", e);
+            } catch (MalformedURLException e1) {
+                throw new TypeLoadingException("Cannot open " + file + ".", e);
+            }
+        }
+    }
+    
+    private static Layer read(InputStream stream) throws IOException {
+        return layer(PropertiesParser.readFully(stream));
+    }
+    
+    private static Layer layer(ByteBuffer buffer) throws IOException {
+        return ThemeBundle.isBundle(buffer) ? ThemeBundle.open(buffer) : new MappedLayer(buffer);
+    }
+    
+    // resources held by a loaded file, stream or loader
+    abstract static class Layer {
+        abstract String get(String key);
+        
+        abstract void collectKeys(Set<String> keys);
+    }
+    
+    private static final class MapLayer extends Layer {
+        private final Map<String, String> values;
+        
+        MapLayer(Map<String, String> values) {
+            this.values = values;
+        }
+        
+        @Override
+        String get(String key) {
+            return values.get(key);
+        }
+        
+        @Override
+        void collectKeys(Set<String> keys) {
+            keys.addAll(values.keySet());
+        }
+    }
+    
+    /**
+     * An open addressing index over the entries of a properties file held in a
+     * byte buffer.  Every slot stores the hash of a key, as computed by
+     * <code>String.hashCode()</code>, and the position of its entry plus one.
+     */
+    private static final class MappedLayer extends Layer {
+        private final ByteBuffer buffer;
+        private final int[] hashes;
+        private final int[] positions;
+        private final int mask;
+        
+        private final ConcurrentMap<String, String> decoded = new ConcurrentHashMap<String, String>();
+        
+        MappedLayer(ByteBuffer buffer) throws IOException {
+            this.buffer = buffer;
+            
+            int[] entryHashes = new int[64];
+            int[] entryPositions = new int[64];
+            int count = 0;
+            
+            int limit = buffer.limit();
+            int pos = hasByteOrderMark(buffer) ? 3 : 0;
+            while (pos < limit) {
+                byte b = buffer.get(pos);
+                if (isWhiteSpace(b) || b == '\n' || b == '\r') {
+                    pos++;
+                    continue;
+                } else if (b == '#' || b == '!') {
+                    while (pos < limit && !isLineEnd(buffer.get(pos))) {
+                        pos++;
+                    }
+                    continue;
+                }
+                
+                int start = pos;
+                int hash = 0;
+                boolean simple = true;
+                
+                while (pos < limit) {
+                    b = buffer.get(pos);
+                    if (b == '=' || b == ':' || isWhiteSpace(b) || isLineEnd(b)) {
+                        break;
+                    }
+                    
+                    if (b == '\\') {
+                        simple = false;
+                        pos = skipEscape(pos);
+                    } else {
+                        // bytes of multi-byte characters are negative
+                        simple &= b > 0;
+                        hash = 31 * hash + b;
+                        pos++;
+                    }
+                }
+                
+                if (!simple) {
+                    hash = decodeEntry(start)[0].hashCode();
+                }
+                pos = lineEnd(pos);
+                
+                if (count == entryHashes.length) {
+                    entryHashes = grow(entryHashes);
+                    entryPositions = grow(entryPositions);
+                }
+                entryHashes[count] = hash;
+                entryPositions[count] = start;
+                count++;
+            }
+            
+            int capacity = Integer.highestOneBit(Math.max(count, 1) * 2 - 1) << 1;
+            hashes = new int[capacity];
+            positions = new int[capacity];
+            mask = capacity - 1;
+            
+            for (int i = 0; i < count; i++) {
+                insert(entryHashes[i], entryPositions[i]);
+            }
+        }
+        
+        // later entries for the same key replace earlier ones
+        private void insert(int hash, int position) throws IOException {
+            int slot = hash & mask;
+            while (positions[slot] != 0) {
+                if (hashes[slot] == hash &&
+                    decodeEntry(positions[slot] - 1)[0].equals(decodeEntry(position)[0])) {
+                    break;
+                }
+                slot = (slot + 1) & mask;
+            }
+            
+            hashes[slot] = hash;
+            positions[slot] = position + 1;
+        }
+        
+        @Override
+        String get(String key) {
+            String value = decoded.get(key);
+            if (value != null) {
+                return value;
+            }
+            
+            int hash = key.hashCode();
+            int slot = hash & mask;
+            while (positions[slot] != 0) {
+                if (hashes[slot] == hash) {
+                    String[] entry = decodeEntry(positions[slot] - 1);
+                    if (entry[0].equals(key)) {
+                        decoded.putIfAbsent(key, entry[1]);
+                        return entry[1];
+                    }
+                }
+                slot = (slot + 1) & mask;
+            }
+            
+            return null;
+        }
+        
+        @Override
+        void collectKeys(Set<String> keys) {
+            for (int slot = 0; slot < positions.length; slot++) {
+                if (positions[slot] != 0) {
+                    keys.add(decodeEntry(positions[slot] - 1)[0]);
+                }
+            }
+        }
+        
+        // returns the key and value of the entry starting at the specified position
+        private String[] decodeEntry(int start) {
+            int end = lineEnd(start);
+            ByteBuffer bytes = buffer.duplicate();
+            // through Buffer, whose limit() and position() return Buffer on Java 8
+            ((Buffer) bytes).limit(end);
+            ((Buffer) bytes).position(start);
+            
+            final String[] entry = new String[2];
+            try {
+                PropertiesParser.parse(PropertiesParser.decode(bytes.slice()), new PropertiesParser.Handler() {
+                    public void property(String key, String value) {
+                        if (entry[0] == null) {
+                            entry[0] = key;
+                            entry[1] = value;
+                        }
+                    }
+                });
+            } catch (IOException e) {
+                throw new TypeLoadingException("Theme resource at offset " + start + " is malformed.", e);
+            }
+            
+            return entry;
+        }
+        
+        // the end of the logical line containing the specified position
+        private int lineEnd(int pos) {
+            int limit = buffer.limit();
+            while (pos < limit) {
+                byte b = buffer.get(pos);
+                if (b == '\\') {
+                    pos = skipEscape(pos);
+                } else if (isLineEnd(b)) {
+                    return pos;
+                } else {
+                    pos++;
+                }
+            }
+            
+            return limit;
+        }
+        
+        // skips a backslash and the character or line terminator it escapes
+        private int skipEscape(int pos) {
+            int limit = buffer.limit();
+            pos++;
+            if (pos < limit) {
+                byte b = buffer.get(pos++);
+                if (b == '\r' && pos < limit && buffer.get(pos) == '\n') {
+                    pos++;
+                }
+            }
+            
+            return pos;
+        }
+        
+        private static boolean hasByteOrderMark(ByteBuffer buffer) {
+            return buffer.limit() >= 3 && buffer.get(0) == (byte) 0xEF &&
+                   buffer.get(1) == (byte) 0xBB && buffer.get(2) == (byte) 0xBF;
+        }
+        
+        private static boolean isWhiteSpace(byte b) {
+            return b == ' ' || b == '\t' || b == '\f';
+        }
+        
+        private static boolean isLineEnd(byte b) {
+            return b == '\n' || b == '\r';
+        }
+        
+        private static int[] grow(int[] array) {
+            int[] grown = new int[array.length * 2];
+            System.arraycopy(array, 0, grown, 0, array.length);
+            
+            return grown;
+        }
+    }
+}
@@ -0,0 +1,681 @@
+/**
+ * Copyright (c) 2006, Sun Microsystems, Inc
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 
+ *   * Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *   * Redistributions in binary form must reproduce the above
+ *     copyright notice, this list of conditions and the following 
+ *     disclaimer in the documentation and/or other materials provided 
+ *     with the distribution.
+ *   * Neither the name of the Fuse project nor the names of its
+ *     contributors may be used to endorse or promote products derived 
+ *     from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.jdesktop.fuse.rl;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.Charset;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.jdesktop.fuse.ResourceInjector;
+import org.jdesktop.fuse.ResourceLoader;
+import org.jdesktop.fuse.TypeLoadingException;
+
+/**
+ * <p>A resource loader keeping its keys and values outside of the Java heap.
+ * Every resource is stored as UTF-8 bytes in direct byte buffers allocated in
+ * chunks of one megabyte, and found through an open addressing hash index which
+ * is also held in a direct buffer.  Strings are only created when a resource is
+ * requested, so heap usage and garbage collection times do not grow with the
+ * number of loaded resources.  This loader is meant for catalogs of labels or
+ * tooltips with millions of entries.</p>
+ * 
+ * <p>Recently requested resources can be kept on the heap in a small cache of
+ * the size given to the constructor, to avoid decoding the most used strings on
+ * every request.  The cache takes no lock: when it is full, the resources not
+ * requested since the previous eviction are removed first.</p>
+ * 
+ * <p>The syntax is the one understood by {@link PropertiesResourceLoader}.  Each
+ * file is read and parsed on the heap before its resources are copied out of it,
+ * so a load temporarily needs memory proportional to the size of the file being
+ * loaded.  The resources of a load are published at once when the whole load
+ * succeeded, the storage taken by a load which failed is dropped.  Resources
+ * loaded later override resources loaded earlier.  The storage of overridden
+ * resources is only dropped by {@link #clear()}, which should be preferred to
+ * repeated loads of the same files.</p>
+ * 
+ * <p>Dropped storage is not returned to the system at once: the memory of a
+ * direct byte buffer is only freed once the garbage collector collects the
+ * buffer, which takes little heap and may therefore survive many collections.
+ * When the direct memory limit (<code>-XX:MaxDirectMemorySize</code>) is
+ * reached, the JVM requests a full collection before failing with an
+ * OutOfMemoryError, which does not help if explicit collections are disabled
+ * with <code>-XX:+DisableExplicitGC</code>.</p>
+ *
+ * @see PropertiesResourceLoader
+ * @since 1.1
+ */
+public final class OffHeapResourceLoader implements ResourceLoader {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    
+    private static final int CHUNK_SIZE = 1 << 20;
+    // an entry is the length of the key, the length of the value and their bytes
+    private static final int ENTRY_HEADER = 8;
+    // a slot is the hash of a key and the address of its entry plus one
+    private static final int SLOT_SIZE = 12;
+    private static final int MIN_CAPACITY = 1024;
+    
+    private final ReadWriteLock locker = new ReentrantReadWriteLock();
+    private final Lock loadLock = new ReentrantLock();
+    
+    // guarded by loadLock, published to readers by the index under locker
+    private volatile ByteBuffer[] chunks = new ByteBuffer[0];
+    private int fill;
+    
+    // guarded by locker
+    private ByteBuffer index;
+    private int mask;
+    private int size;
+    
+    // replaced rather than cleared under the write lock of locker, null for no cache
+    private final int cacheSize;
+    private volatile Cache cache;
+
+    /**
+     * Creates a new, empty instance without any cache on the heap.
+     */
+    public OffHeapResourceLoader() {
+        this(0);
+    }
+
+    /**
+     * Creates a new, empty instance keeping up to the specified number of
+     * recently requested resources on the heap.
+     * 
+     * @param cacheSize The number of resources to cache, 0 for no cache.
+     */
+    public OffHeapResourceLoader(final int cacheSize) {
+        if (cacheSize < 0) {
+            throw new IllegalArgumentException("The cache size cannot be negative");
+        }
+        
+        this.cacheSize = cacheSize;
+        cache = cacheSize == 0 ? null : new Cache(cacheSize);
+        
+        index = allocateIndex(MIN_CAPACITY);
+        mask = MIN_CAPACITY - 1;
+    }
+
+    public void load(URL... urls) {
+        for (URL url : urls) {
+            if (url == null) {
+                throw new TypeLoadingException("Resource was null");
+            }
+        }
+        
+        Batch batch = begin();
+        try {
+            for (URL url : urls) {
+                InputStream stream;
+                try {
+                    stream = url.openStream();
+                } catch (IOException e) {
+                    throw new TypeLoadingException("Cannot open " + url + ".", e);
+                }
+                
+                read(stream, batch);
+            }
+            
+            commit(batch);
+        } finally {
+            end(batch);
+        }
+    }
+
+    public void load(InputStream... streams) {
+        Batch batch = begin();
+        try {
+            for (InputStream stream : streams) {
+                try {
+                    PropertiesParser.parse(stream, batch);
+                } catch (IOException e) {
+                    throw new TypeLoadingException("No properties found.", e);
+                }
+            }
+            
+            commit(batch);
+        } finally {
+            end(batch);
+        }
+    }
+
+    public void load(String... paths) {
+        load(ResourceInjector.class, paths);
+    }
+
+    public void load(Class<?> resolver, String... paths) {
+        URL[] urls = new URL[paths.length];
+        
+        for (int i = 0; i < paths.length; i++) {
+            urls[i] = resolver.getResource(paths[i]);
+            if (urls[i] == null) {
+                throw new TypeLoadingException("Resource \"" + paths[i] + "\" was not found");
+            }
+        }
+        
+        load(urls);
+    }
+
+    public void load(File... files) {
+        Batch batch = begin();
+        try {
+            for (File file : files) {
+                InputStream stream;
+                try {
+                    stream = new FileInputStream(file);
+                } catch (IOException e) {
+                    throw new TypeLoadingException("Cannot open " + file + ".", e);
+                }
+                
+                read(stream, batch);
+            }
+            
+            commit(batch);
+        } finally {
+            end(batch);
+        }
+    }
+
+    public void load(ResourceLoader... loaders) {
+        Batch batch = begin();
+        try {
+            for (ResourceLoader loader : loaders) {
+                for (String key : loader) {
+                    String value = loader.get(key);
+                    if (value != null) {
+                        batch.property(key, value);
+                    }
+                }
+            }
+            
+            commit(batch);
+        } finally {
+            end(batch);
+        }
+    }
+
+    /**
+     * Drops the loaded resources.  This is the same as calling
+     * {@link #clear()}.
+     */
+    public void close() {
+        clear();
+    }
+
+    /**
+     * Drops the loaded resources and their storage.  The direct buffers are
+     * freed when they are garbage collected, not when this method returns.
+     */
+    public void clear() {
+        loadLock.lock();
+        try {
+            locker.writeLock().lock();
+            try {
+                chunks = new ByteBuffer[0];
+                fill = 0;
+                
+                index = allocateIndex(MIN_CAPACITY);
+                mask = MIN_CAPACITY - 1;
+                size = 0;
+                
+                clearCache();
+            } finally {
+                locker.writeLock().unlock();
+            }
+        } finally {
+            loadLock.unlock();
+        }
+    }
+
+    public String get(String key) {
+        Cache cached = cache;
+        if (cached != null) {
+            String value = cached.get(key);
+            if (value != null) {
+                return value;
+            }
+        }
+        
+        byte[] bytes = key.getBytes(UTF_8);
+        String value;
+        
+        locker.readLock().lock();
+        try {
+            long address = find(key.hashCode(), bytes);
+            if (address == -1) {
+                return null;
+            }
+            
+            value = readValue(chunks, address);
+            // the cache of the index the value was read from, a load replaces both
+            cached = cache;
+        } finally {
+            locker.readLock().unlock();
+        }
+        
+        if (cached != null) {
+            cached.put(key, value);
+        }
+        
+        return value;
+    }
+
+    /**
+     * Iterates over the keys of the resources loaded when this method is called.
+     * The keys are decoded as the iteration proceeds.
+     */
+    public Iterator<String> iterator() {
+        final ByteBuffer[] entries;
+        final long[] addresses;
+        
+        locker.readLock().lock();
+        try {
+            entries = chunks;
+            addresses = new long[size];
+            
+            int count = 0;
+            for (int slot = 0; slot <= mask; slot++) {
+                long address = index.getLong(slot * SLOT_SIZE + 4);
+                if (address != 0) {
+                    addresses[count++] = address - 1;
+                }
+            }
+        } finally {
+            locker.readLock().unlock();
+        }
+        
+        return new Iterator<String>() {
+            private int next = 0;
+            
+            public boolean hasNext() {
+                return next < addresses.length;
+            }
+
+            public String next() {
+                if (next == addresses.length) {
+                    throw new NoSuchElementException();
+                }
+                
+                return readKey(entries, addresses[next++]);
+            }
+
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+    
+    private Batch begin() {
+        loadLock.lock();
+        return new Batch();
+    }
+    
+    // drops the storage appended by a batch which was not committed
+    private void end(Batch batch) {
+        try {
+            if (!batch.committed) {
+                chunks = batch.chunks;
+                fill = batch.fill;
+            }
+        } finally {
+            loadLock.unlock();
+        }
+    }
+    
+    private void read(InputStream stream, Batch batch) {
+        try {
+            PropertiesParser.parse(stream, batch);
+        } catch (IOException e) {
+            throw new TypeLoadingException("No properties found.", e);
+        } finally {
+            try {
+                stream.close();
+            } catch (IOException e) {       // if we can't close the stream, just ignore it
+            }
+        }
+    }
+    
+    private void commit(Batch batch) {
+        locker.writeLock().lock();
+        try {
+            ensureCapacity(size + batch.count);
+            for (int i = 0; i < batch.count; i++) {
+                insert(batch.pending.getInt(i * SLOT_SIZE), batch.pending.getLong(i * SLOT_SIZE + 4));
+            }
+            
+            clearCache();
+            batch.committed = true;
+        } finally {
+            locker.writeLock().unlock();
+        }
+    }
+    
+    // Never call without acquiring write lock locker
+    private void clearCache() {
+        if (cache != null) {
+            cache = new Cache(cacheSize);
+        }
+    }
+    
+    // Never call without holding loadLock
+    private long append(String key, String value) {
+        byte[] keyBytes = key.getBytes(UTF_8);
+        byte[] valueBytes = value.getBytes(UTF_8);
+        int length = ENTRY_HEADER + keyBytes.length + valueBytes.length;
+        
+        ByteBuffer[] current = chunks;
+        if (current.length == 0 || current[current.length - 1].capacity() - fill < length) {
+            ByteBuffer[] grown = new ByteBuffer[current.length + 1];
+            System.arraycopy(current, 0, grown, 0, current.length);
+            grown[current.length] = ByteBuffer.allocateDirect(Math.max(CHUNK_SIZE, length));
+            
+            current = grown;
+            chunks = grown;
+            fill = 0;
+        }
+        
+        ByteBuffer chunk = current[current.length - 1];
+        int offset = fill;
+        chunk.putInt(offset, keyBytes.length);
+        chunk.putInt(offset + 4, valueBytes.length);
+        
+        int pos = offset + ENTRY_HEADER;
+        for (byte b : keyBytes) {
+            chunk.put(pos++, b);
+        }
+        for (byte b : valueBytes) {
+            chunk.put(pos++, b);
+        }
+        fill = pos;
+        
+        return ((long) (current.length - 1) << 32) | offset;
+    }
+    
+    // Never call without acquiring read lock locker
+    private long find(int hash, byte[] key) {
+        ByteBuffer[] entries = chunks;
+        int slot = hash & mask;
+        
+        while (true) {
+            long address = index.getLong(slot * SLOT_SIZE + 4);
+            if (address == 0) {
+                return -1;
+            }
+            
+            if (index.getInt(slot * SLOT_SIZE) == hash && keyEquals(entries, address - 1, key)) {
+                return address - 1;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+    
+    // Never call without acquiring write lock locker
+    private void insert(int hash, long address) {
+        ByteBuffer[] entries = chunks;
+        int slot = hash & mask;
+        
+        while (true) {
+            long existing = index.getLong(slot * SLOT_SIZE + 4);
+            if (existing == 0) {
+                size++;
+                break;
+            }
+            
+            // a later entry for the same key replaces the earlier one
+            if (index.getInt(slot * SLOT_SIZE) == hash && keysEqual(entries, existing - 1, address)) {
+                break;
+            }
+            slot = (slot + 1) & mask;
+        }
+        
+        index.putInt(slot * SLOT_SIZE, hash);
+        index.putLong(slot * SLOT_SIZE + 4, address + 1);
+    }
+    
+    // keeps the index at most half full
+    private void ensureCapacity(int count) {
+        long capacity = mask + 1;
+        if (count * 2L <= capacity) {
+            return;
+        }
+        
+        while (count * 2L > capacity) {
+            capacity <<= 1;
+        }
+        if (capacity * SLOT_SIZE > Integer.MAX_VALUE) {
+            throw new TypeLoadingException("Cannot index more than " +
+                                           (Integer.MAX_VALUE / SLOT_SIZE / 2) + " resources.");
+        }
+        
+        ByteBuffer previous = index;
+        int previousCapacity = mask + 1;
+        
+        index = allocateIndex((int) capacity);
+        mask = (int) capacity - 1;
+        
+        // keys are unique in the previous index, so the hashes alone place them
+        for (int slot = 0; slot < previousCapacity; slot++) {
+            long address = previous.getLong(slot * SLOT_SIZE + 4);
+            if (address != 0) {
+                int hash = previous.getInt(slot * SLOT_SIZE);
+                
+                int target = hash & mask;
+                while (index.getLong(target * SLOT_SIZE + 4) != 0) {
+                    target = (target + 1) & mask;
+                }
+                index.putInt(target * SLOT_SIZE, hash);
+                index.putLong(target * SLOT_SIZE + 4, address);
+            }
+        }
+    }
+    
+    private static ByteBuffer allocateIndex(int capacity) {
+        return ByteBuffer.allocateDirect(capacity * SLOT_SIZE).order(ByteOrder.nativeOrder());
+    }
+    
+    private static boolean keyEquals(ByteBuffer[] entries, long address, byte[] key) {
+        ByteBuffer chunk = entries[(int) (address >>> 32)];
+        int offset = (int) address;
+        
+        if (chunk.getInt(offset) != key.length) {
+            return false;
+        }
+        
+        int pos = offset + ENTRY_HEADER;
+        for (byte b : key) {
+            if (chunk.get(pos++) != b) {
+                return false;
+            }
+        }
+        
+        return true;
+    }
+    
+    private static boolean keysEqual(ByteBuffer[] entries, long address, long other) {
+        ByteBuffer chunk = entries[(int) (address >>> 32)];
+        ByteBuffer otherChunk = entries[(int) (other >>> 32)];
+        int offset = (int) address;
+        int otherOffset = (int) other;
+        
+        int length = chunk.getInt(offset);
+        if (otherChunk.getInt(otherOffset) != length) {
+            return false;
+        }
+        
+        for (int i = ENTRY_HEADER; i < ENTRY_HEADER + length; i++) {
+            if (chunk.get(offset + i) != otherChunk.get(otherOffset + i)) {
+                return false;
+            }
+        }
+        
+        return true;
+    }
+    
+    private static String readKey(ByteBuffer[] entries, long address) {
+        ByteBuffer chunk = entries[(int) (address >>> 32)];
+        int offset = (int) address;
+        
+        return decode(chunk, offset + ENTRY_HEADER, chunk.getInt(offset));
+    }
+    
+    private static String readValue(ByteBuffer[] entries, long address) {
+        ByteBuffer chunk = entries[(int) (address >>> 32)];
+        int offset = (int) address;
+        int keyLength = chunk.getInt(offset);
+        
+        return decode(chunk, offset + ENTRY_HEADER + keyLength, chunk.getInt(offset + 4));
+    }
+    
+    private static String decode(ByteBuffer chunk, int offset, int length) {
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = chunk.get(offset + i);
+        }
+        
+        return new String(bytes, UTF_8);
+    }
+    
+    /**
+     * The entries appended by a load which is not committed yet.  Only the hash
+     * and the address of every entry are kept, in a direct buffer.
+     */
+    private final class Batch implements PropertiesParser.Handler {
+        // the storage before the batch, restored if it fails
+        private final ByteBuffer[] chunks = OffHeapResourceLoader.this.chunks;
+        private final int fill = OffHeapResourceLoader.this.fill;
+        private boolean committed;
+        
+        private ByteBuffer pending = allocateIndex(MIN_CAPACITY);
+        private int count;
+        
+        public void property(String key, String value) {
+            if ((count + 1) * SLOT_SIZE > pending.capacity()) {
+                if (pending.capacity() > Integer.MAX_VALUE / 2) {
+                    throw new TypeLoadingException("Cannot load more than " +
+                                                   (Integer.MAX_VALUE / SLOT_SIZE / 2) + " resources at once.");
+                }
+                
+                ByteBuffer grown = allocateIndex(pending.capacity() / SLOT_SIZE * 2);
+                ByteBuffer entries = pending.duplicate();
+                // through Buffer, whose position() and limit() return Buffer on Java 8
+                ((Buffer) entries).position(0).limit(count * SLOT_SIZE);
+                grown.put(entries);
+                pending = grown;
+            }
+            
+            pending.putInt(count * SLOT_SIZE, key.hashCode());
+            pending.putLong(count * SLOT_SIZE + 4, append(key, value));
+            count++;
+        }
+    }
+    
+    /**
+     * The resources recently requested.  Every cached value carries a flag set
+     * when it is requested.  Once the cache is full, an eviction pass removes
+     * the values whose flag is not set and clears the others, until an eighth
+     * of the cache is free.  A single thread evicts at a time.
+     */
+    private static final class Cache {
+        private final ConcurrentMap<String, Cached> values = new ConcurrentHashMap<String, Cached>();
+        private final AtomicBoolean evicting = new AtomicBoolean();
+        private final int capacity;
+        
+        private Cache(int capacity) {
+            this.capacity = capacity;
+        }
+        
+        private String get(String key) {
+            Cached cached = values.get(key);
+            if (cached == null) {
+                return null;
+            }
+            
+            // only written when not set, to keep hits from writing shared memory
+            if (!cached.requested) {
+                cached.requested = true;
+            }
+            return cached.value;
+        }
+        
+        private void put(String key, String value) {
+            if (values.putIfAbsent(key, new Cached(value)) == null && values.size() > capacity) {
+                evict();
+            }
+        }
+        
+        private void evict() {
+            if (!evicting.compareAndSet(false, true)) {
+                return;
+            }
+            
+            try {
+                int target = capacity - capacity / 8;
+                while (values.size() > target) {
+                    Iterator<Cached> iterator = values.values().iterator();
+                    while (iterator.hasNext() && values.size() > target) {
+                        Cached cached = iterator.next();
+                        if (cached.requested) {
+                            cached.requested = false;
+                        } else {
+                            iterator.remove();
+                        }
+                    }
+                }
+            } finally {
+                evicting.set(false);
+            }
+        }
+    }
+    
+    private static final class Cached {
+        private final String value;
+        private volatile boolean requested;
+        
+        private Cached(String value) {
+            this.value = value;
+        }
+    }
+}
@@ -0,0 +1,232 @@
+/**
+ * Copyright (c) 2006, Sun Microsystems, Inc
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 
+ *   * Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *   * Redistributions in binary form must reproduce the above
+ *     copyright notice, this list of conditions and the following 
+ *     disclaimer in the documentation and/or other materials provided 
+ *     with the distribution.
+ *   * Neither the name of the Fuse project nor the names of its
+ *     contributors may be used to endorse or promote products derived 
+ *     from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.jdesktop.fuse.rl;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.SoftReference;
+import java.net.HttpURLConnection;
+import java.net.JarURLConnection;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.zip.CRC32;
+
+import org.jdesktop.fuse.TypeLoadingException;
+
+/**
+ * A process-wide cache of parsed properties files.  Every ResourceInjector
+ * loading the same theme shares one immutable snapshot of its resources instead
+ * of parsing and storing the file again.  Snapshots are keyed by URL and
+ * validated against a fingerprint of the content: the CRC32 of the bytes of
+ * files, which are read without opening a connection, the last modification and
+ * length reported by the connection of other URLs, or the CRC32 of the bytes
+ * when the connection reports neither.  Snapshots are softly referenced and
+ * dropped when memory runs low, together with their entry on the next lookup.
+ */
+final class ParsedFileCache {
+    private static final ConcurrentMap<String, Entry> cache = new ConcurrentHashMap<String, Entry>();
+    private static final ReferenceQueue<Map<String, String>> cleared = new ReferenceQueue<Map<String, String>>();
+    
+    private ParsedFileCache() {
+    }
+    
+    /**
+     * Returns the resources of the properties file at the specified URL, parsing
+     * it only if no snapshot of the same content is cached.  The returned map is
+     * immutable and front coded when <code>compact</code> is <code>true</code>.
+     */
+    static Map<String, String> get(URL url, boolean compact) {
+        String key = (compact ? "compact:" : "") + url.toExternalForm();
+        removeClearedEntries();
+        
+        // a modification time and size miss edits within the timer resolution
+        File file = toFile(url);
+        if (file != null) {
+            return get(key, readFile(url, file), compact);
+        }
+        
+        URLConnection connection;
+        String fingerprint;
+        try {
+            connection = url.openConnection();
+            if (connection instanceof JarURLConnection) {
+                // the jar file is closed with the stream rather than cached
+                connection.setUseCaches(false);
+            }
+            
+            long modified = connection.getLastModified();
+            long length = connection.getContentLengthLong();
+            fingerprint = modified <= 0 || length < 0 ? null : "url:" + modified + ':' + length;
+        } catch (IOException e) {
+            throw new TypeLoadingException("Cannot open " + url + ".", e);
+        }
+        
+        if (fingerprint == null) {
+            return get(key, read(url, connection), compact);
+        }
+        
+        Map<String, String> resources = lookup(key, fingerprint);
+        if (resources != null) {
+            release(connection);
+            return resources;
+        }
+        
+        return parse(key, fingerprint, read(url, connection), compact);
+    }
+    
+    // looks the content up by its CRC32, parsing it on a miss
+    private static Map<String, String> get(String key, ByteBuffer bytes, boolean compact) {
+        CRC32 crc = new CRC32();
+        crc.update(bytes.array(), bytes.arrayOffset() + bytes.position(), bytes.remaining());
+        String fingerprint = "crc:" + crc.getValue() + ':' + bytes.remaining();
+        
+        Map<String, String> resources = lookup(key, fingerprint);
+        return resources != null ? resources : parse(key, fingerprint, bytes, compact);
+    }
+    
+    private static Map<String, String> parse(String key, String fingerprint, ByteBuffer bytes, boolean compact) {
+        final Map<String, String> values = new LinkedHashMap<String, String>();
+        try {
+            PropertiesParser.parse(PropertiesParser.decode(bytes), new PropertiesParser.Handler() {
+                public void property(String name, String value) {
+                    values.put(name, value);
+                }
+            });
+        } catch (IOException e) {
+            throw new TypeLoadingException("No properties found.", e);
+        }
+        
+        Resources.internValues(values);
+        Map<String, String> resources = compact ? FrontCodedMap.of(values) : new SnapshotMap(values);
+        cache.put(key, new Entry(key, fingerprint, resources));
+        
+        return resources;
+    }
+    
+    private static Map<String, String> lookup(String key, String fingerprint) {
+        Entry entry = cache.get(key);
+        if (entry == null || !fingerprint.equals(entry.fingerprint)) {
+            return null;
+        }
+        
+        Map<String, String> resources = entry.get();
+        if (resources == null) {
+            cache.remove(key, entry);
+        }
+        return resources;
+    }
+    
+    // the entries of files which are not loaded again would otherwise stay forever
+    private static void removeClearedEntries() {
+        Entry entry;
+        while ((entry = (Entry) cleared.poll()) != null) {
+            cache.remove(entry.key, entry);
+        }
+    }
+
+    
+    // returns null when the URL does not denote a plain file
+    private static File toFile(URL url) {
+        if (!"file".equals(url.getProtocol())) {
+            return null;
+        }
+        
+        try {
+            return new File(url.toURI());
+        } catch (URISyntaxException e) {
+            return null;
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+    
+    private static ByteBuffer readFile(URL url, File file) {
+        try {
+            return ByteBuffer.wrap(Files.readAllBytes(file.toPath()));
+        } catch (IOException e) {
+            throw new TypeLoadingException("Cannot open " + url + ".", e);
+        }
+    }
+    
+    // frees what the connection holds when its content is not needed
+    private static void release(URLConnection connection) {
+        if (connection instanceof HttpURLConnection) {
+            ((HttpURLConnection) connection).disconnect();
+            return;
+        }
+        
+        try {
+            connection.getInputStream().close();
+        } catch (IOException e) {       // if we can't close the stream, just ignore it
+        }
+    }
+    
+    private static ByteBuffer read(URL url, URLConnection connection) {
+        InputStream stream;
+        try {
+            stream = connection.getInputStream();
+        } catch (IOException e) {
+            throw new TypeLoadingException("Cannot open " + url + ".", e);
+        }
+        
+        try {
+            return PropertiesParser.readFully(stream);
+        } catch (IOException e) {
+            throw new TypeLoadingException("No properties found.", e);
+        } finally {
+            try {
+                stream.close();
+            } catch (IOException e) {       // if we can't close the stream, just ignore it
+            }
+        }
+    }
+    
+    private static final class Entry extends SoftReference<Map<String, String>> {
+        private final String key;
+        private final String fingerprint;
+        
+        private Entry(String key, String fingerprint, Map<String, String> resources) {
+            super(resources, cleared);
+            this.key = key;
+            this.fingerprint = fingerprint;
+        }
+    }
+}
@@ -0,0 +1,340 @@
+/**
+ * Copyright (c) 2006, Sun Microsystems, Inc
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 
+ *   * Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *   * Redistributions in binary form must reproduce the above
+ *     copyright notice, this list of conditions and the following 
+ *     disclaimer in the documentation and/or other materials provided 
+ *     with the distribution.
+ *   * Neither the name of the Fuse project nor the names of its
+ *     contributors may be used to endorse or promote products derived 
+ *     from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.jdesktop.fuse.rl;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CodingErrorAction;
+import java.util.Map;
+
+/**
+ * <p>A single pass parser for theme properties files.  The syntax is the one
+ * of <code>java.util.Properties</code> (comments, line continuations, the
+ * <code>=</code>, <code>:</code> and white space separators and the
+ * <code>\t</code>, <code>\n</code>, <code>\r</code>, <code>\f</code> and
+ * <code>&#92;u</code><i>xxxx</i> escapes) with the following differences:</p>
+ * 
+ * <ul>
+ *  <li>The <code>\{</code>, <code>\}</code> and <code>\\</code> escapes are
+ *      kept as is in values so that ResourceInjector can tell escaped braces
+ *      from references when it resolves the value.</li>
+ *  <li>The file is decoded as UTF-8, or as ISO-8859-1 if it is not valid
+ *      UTF-8.</li>
+ * </ul>
+ * 
+ * <p>The stream is read in blocks and parsed in memory.  Properties are handed
+ * to a {@link Handler} in file order as they are parsed.</p>
+ */
+final class PropertiesParser {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final Charset ISO_8859_1 = Charset.forName("ISO-8859-1");
+    
+    private final char[] in;
+    private final int length;
+    private int pos;
+    private int line = 1;
+    
+    private final StringBuilder buffer = new StringBuilder();
+    
+    private PropertiesParser(char[] in, int length) {
+        this.in = in;
+        this.length = length;
+    }
+    
+    /**
+     * Receives the properties found by the parser.
+     */
+    interface Handler {
+        void property(String key, String value);
+    }
+    
+    /**
+     * Parses the specified stream into the specified map, later keys replacing
+     * earlier ones.  The stream is read to its end but not closed.
+     */
+    static void parse(InputStream stream, final Map<String, String> target) throws IOException {
+        parse(stream, new Handler() {
+            public void property(String key, String value) {
+                target.put(key, value);
+            }
+        });
+    }
+    
+    /**
+     * Parses the specified stream, passing every property to the handler.  The
+     * stream is read to its end but not closed.
+     */
+    static void parse(InputStream stream, Handler handler) throws IOException {
+        parse(decode(readFully(stream)), handler);
+    }
+    
+    /**
+     * Parses the specified characters, passing every property to the handler.
+     */
+    static void parse(CharBuffer chars, Handler handler) throws IOException {
+        if (chars.hasArray() && chars.arrayOffset() == 0 && chars.position() == 0) {
+            new PropertiesParser(chars.array(), chars.limit()).parse(handler);
+        } else {
+            char[] copy = new char[chars.remaining()];
+            chars.duplicate().get(copy);
+            new PropertiesParser(copy, copy.length).parse(handler);
+        }
+    }
+    
+    static ByteBuffer readFully(InputStream stream) throws IOException {
+        byte[] bytes = new byte[Math.max(stream.available(), 8192)];
+        int count = 0;
+        int read;
+        while ((read = stream.read(bytes, count, bytes.length - count)) != -1) {
+            count += read;
+            if (count == bytes.length) {
+                byte[] grown = new byte[bytes.length * 2];
+                System.arraycopy(bytes, 0, grown, 0, count);
+                bytes = grown;
+            }
+        }
+        
+        return ByteBuffer.wrap(bytes, 0, count);
+    }
+    
+    // decodes the remaining bytes as UTF-8, or ISO-8859-1 if they are not valid UTF-8
+    static CharBuffer decode(ByteBuffer bytes) {
+        try {
+            return UTF_8.newDecoder()
+                        .onMalformedInput(CodingErrorAction.REPORT)
+                        .onUnmappableCharacter(CodingErrorAction.REPORT)
+                        .decode(bytes.duplicate());
+        } catch (CharacterCodingException e) {
+            return ISO_8859_1.decode(bytes);
+        }
+    }
+    
+    private void parse(Handler handler) throws IOException {
+        if (length > 0 && in[0] == '\uFEFF') {
+            pos++;
+        }
+        
+        while (pos < length) {
+            skipWhiteSpace();
+            if (pos >= length) {
+                break;
+            }
+            
+            char c = in[pos];
+            if (c == '\n' || c == '\r') {
+                skipLineEnd();
+            } else if (c == '#' || c == '!') {
+                skipComment();
+            } else {
+                String key = readKey();
+                skipSeparator();
+                String value = readValue();
+                
+                handler.property(key, value);
+            }
+        }
+    }
+    
+    private String readKey() throws IOException {
+        int start = pos;
+        while (pos < length) {
+            char c = in[pos];
+            if (c == '=' || c == ':' || isWhiteSpace(c) || c == '\n' || c == '\r') {
+                return new String(in, start, pos - start);
+            } else if (c == '\\') {
+                break;
+            }
+            pos++;
+        }
+        if (pos >= length) {
+            return new String(in, start, pos - start);
+        }
+        
+        // slow path, the key contains escapes
+        buffer.setLength(0);
+        buffer.append(in, start, pos - start);
+        
+        while (pos < length) {
+            char c = in[pos];
+            if (c == '=' || c == ':' || isWhiteSpace(c) || c == '\n' || c == '\r') {
+                break;
+            }
+            
+            pos++;
+            if (c == '\\') {
+                readEscape(false);
+            } else {
+                buffer.append(c);
+            }
+        }
+        
+        return buffer.toString();
+    }
+    
+    private void skipSeparator() {
+        skipWhiteSpace();
+        if (pos < length && (in[pos] == '=' || in[pos] == ':')) {
+            pos++;
+            skipWhiteSpace();
+        }
+    }
+    
+    private String readValue() throws IOException {
+        int start = pos;
+        while (pos < length) {
+            char c = in[pos];
+            if (c == '\n' || c == '\r') {
+                return new String(in, start, pos - start);
+            } else if (c == '\\') {
+                break;
+            }
+            pos++;
+        }
+        if (pos >= length) {
+            return new String(in, start, pos - start);
+        }
+        
+        // slow path, the value contains escapes
+        buffer.setLength(0);
+        buffer.append(in, start, pos - start);
+        
+        while (pos < length) {
+            char c = in[pos];
+            if (c == '\n' || c == '\r') {
+                break;
+            }
+            
+            pos++;
+            if (c == '\\') {
+                readEscape(true);
+            } else {
+                buffer.append(c);
+            }
+        }
+        
+        return buffer.toString();
+    }
+    
+    // called with pos after the backslash
+    private void readEscape(boolean raw) throws IOException {
+        if (pos >= length) {
+            return;
+        }
+        
+        char c = in[pos++];
+        switch (c) {
+            case '\n':
+            case '\r':
+                // line continuation
+                pos--;
+                skipLineEnd();
+                skipWhiteSpace();
+                break;
+            case 't':
+                buffer.append('\t');
+                break;
+            case 'n':
+                buffer.append('\n');
+                break;
+            case 'r':
+                buffer.append('\r');
+                break;
+            case 'f':
+                buffer.append('\f');
+                break;
+            case 'u':
+                buffer.append(readUnicode());
+                break;
+            case '{':
+            case '}':
+            case '\\':
+                if (raw) {
+                    buffer.append('\\');
+                }
+                buffer.append(c);
+                break;
+            default:
+                buffer.append(c);
+        }
+    }
+    
+    private char readUnicode() throws IOException {
+        if (pos + 4 > length) {
+            throw malformedUnicode();
+        }
+        
+        int value = 0;
+        for (int i = 0; i < 4; i++) {
+            int digit = Character.digit(in[pos++], 16);
+            if (digit < 0) {
+                throw malformedUnicode();
+            }
+            value = (value << 4) | digit;
+        }
+        
+        return (char) value;
+    }
+    
+    private IOException malformedUnicode() {
+        return new IOException("Malformed \\uxxxx encoding at line " + line + ".");
+    }
+    
+    private void skipComment() {
+        while (pos < length && in[pos] != '\n' && in[pos] != '\r') {
+            pos++;
+        }
+    }
+    
+    private void skipLineEnd() {
+        if (pos < length && in[pos] == '\r') {
+            pos++;
+        }
+        if (pos < length && in[pos] == '\n') {
+            pos++;
+        }
+        line++;
+    }
+    
+    private void skipWhiteSpace() {
+        while (pos < length && isWhiteSpace(in[pos])) {
+            pos++;
+        }
+    }
+    
+    private static boolean isWhiteSpace(char c) {
+        return c == ' ' || c == '\t' || c == '\f';
+    }
+}
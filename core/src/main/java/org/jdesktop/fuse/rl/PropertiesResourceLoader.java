@@ -37,29 +37,66 @@ import java.io.InputStream;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
-
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import org.jdesktop.fuse.FuseExecutors;
+import org.jdesktop.fuse.IndexedResourceLoader;
 import org.jdesktop.fuse.ResourceInjector;
 import org.jdesktop.fuse.ResourceLoader;
+import org.jdesktop.fuse.SnapshotResourceLoader;
 import org.jdesktop.fuse.TypeLoadingException;
 
 /**
  * <p>A resource loader to load resources from a properties file.  This is the default
  * resource loader used by ResourceInjector.</p> 
  *
+ * <p>When several files are loaded at once they are fetched and parsed concurrently.
+ * The results are merged in argument order, so resources in later files override
+ * resources in earlier ones, and are published to readers in a single step.</p>
+ *
+ * <p>Files loaded from URLs, paths and File(s) are parsed once per process: the
+ * parsed resources are cached and shared by every loader loading the same,
+ * unmodified file.  The resources a loader loads on top of a shared file are
+ * stored apart, so each additional ResourceInjector loading a common base theme
+ * only costs its own overrides.</p>
+ *
+ * <p>Large themes can be held in a compact form, see
+ * {@link #PropertiesResourceLoader(boolean)}.</p>
+ *
  * @see org.jdesktop.fuse.ResourceInjector
  * @since 0.2
  * @author Daniel Spiewak
  */
-public final class PropertiesResourceLoader implements ResourceLoader {
+public final class PropertiesResourceLoader implements IndexedResourceLoader, SnapshotResourceLoader {
 	private Resources properties;
 
     /**
      * Creates a new instance and initializes the properties peer.
      */
 	public PropertiesResourceLoader() {
-		properties = new Resources();
+		this(false);
+	}
+
+    /**
+     * Creates a new instance and initializes the properties peer, optionally
+     * storing the keys front coded.  Keys sharing a prefix then only store that
+     * prefix once, which considerably reduces the memory used by large themes,
+     * at the price of slower lookups and loads.  The keys are iterated in sorted
+     * order.
+     * 
+     * @param compactKeys   <code>true</code> to store the keys front coded.
+     * @since 1.1
+     */
+	public PropertiesResourceLoader(boolean compactKeys) {
+		properties = new Resources(compactKeys);
 	}
 
 	public void load(URL... urls) {
@@ -67,33 +104,51 @@ public final class PropertiesResourceLoader implements ResourceLoader {
 			throw new NullPointerException("Cannot load null urls");
 		}
 		
-        List<InputStream> streams = new ArrayList<InputStream>(urls.length);
-        
         for (URL url : urls) {
             if (url == null) {
                 throw new TypeLoadingException("Resource was null");
             }
-            
-            try {
-                InputStream stream = url.openStream();
-                streams.add(stream);
-            } catch (IOException e) {
-                throw new TypeLoadingException("Cannot open " + url + ".", e);
-            }
         }
         
-        loadProperties(streams.toArray(new InputStream[streams.size()]));
+        final boolean compact = properties.isCompact();
+        if (urls.length == 0) {
+            return;
+        } else if (urls.length == 1) {
+            properties.putAll(ParsedFileCache.get(urls[0], compact), Collections.<String, String>emptyMap());
+            return;
+        }
         
-        for (InputStream is : streams) {
-            try {
-                is.close();
-            } catch (IOException e) {       // if we can't close the stream, just ignore it
-            }
+        // files are fetched and parsed concurrently, then merged in argument order
+        List<Future<Map<String, String>>> parts = new ArrayList<Future<Map<String, String>>>(urls.length);
+        for (final URL url : urls) {
+            parts.add(ParserExecutor.EXECUTOR.submit(new Callable<Map<String, String>>() {
+                public Map<String, String> call() {
+                    return ParsedFileCache.get(url, compact);
+                }
+            }));
+        }
+        
+        Map<String, String> shared = getPart(parts.get(0));
+        Map<String, String> values = new LinkedHashMap<String, String>();
+        for (Future<Map<String, String>> part : parts.subList(1, parts.size())) {
+            values.putAll(getPart(part));
         }
+        
+        properties.putAll(shared, values);
 	}
 
 	public void load(InputStream... streams) {
-		loadProperties(streams);
+        Map<String, String> values = new LinkedHashMap<String, String>();
+        
+		try {
+            for (InputStream is : streams) {
+                PropertiesParser.parse(is, values);
+            }
+		} catch (IOException e) {
+			throw new TypeLoadingException("No properties found.", e);
+		}
+		
+		properties.putAll(values);
 	}
 
 	public void load(String... paths) {
@@ -130,11 +185,14 @@ public final class PropertiesResourceLoader implements ResourceLoader {
 	}
 
     public void load(ResourceLoader... loaders) {
+        Map<String, String> values = new LinkedHashMap<String, String>();
         for (ResourceLoader loader : loaders) {
             for (String key : loader) {
-                properties.put(key, loader.get(key));
+                values.put(key, loader.get(key));
             }
         }
+        
+        properties.putAll(values);
     }
 
     public void close() {
@@ -152,13 +210,34 @@ public final class PropertiesResourceLoader implements ResourceLoader {
         return properties.iterator();
     }
 
-    private void loadProperties(InputStream... streams) {
-		try {
-            for (InputStream is : streams) {
-                properties.load(is);
+    public String findKey(String scope, String name) {
+        return properties.findKey(scope, name);
+    }
+
+    public List<String> subKeys(String key) {
+        return properties.subKeys(key);
+    }
+
+    public ResourceLoader snapshot() {
+        return properties.view();
+    }
+
+    private static Map<String, String> getPart(Future<Map<String, String>> part) {
+        try {
+            return part.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new TypeLoadingException("Interrupted while loading properties.", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
             }
-		} catch (IOException e) {
-			throw new TypeLoadingException("No properties found.", e);
-		}
-	}
+            throw new TypeLoadingException("No properties found.", e.getCause());
+        }
+    }
+    
+    // created on the first multi-file load
+    private static final class ParserExecutor {
+        private static final ExecutorService EXECUTOR = FuseExecutors.newResourceExecutor();
+    }
 }
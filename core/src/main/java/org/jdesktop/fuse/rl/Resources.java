@@ -31,78 +31,374 @@
 
 package org.jdesktop.fuse.rl;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.net.URL;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.Iterator;
-import java.util.LinkedHashSet;
-import java.util.Properties;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Set;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 
+import org.jdesktop.fuse.IndexedResourceLoader;
+import org.jdesktop.fuse.ResourceLoader;
+
+/**
+ * The key/value store backing the resource loaders of this package.  The
+ * contents are held in an immutable snapshot which is replaced as a whole on
+ * every modification: reads and iteration never lock, and a load builds the
+ * next snapshot on the side before publishing it.  Scoped keys are found with
+ * two lookups in the snapshot.  Prefix queries are answered by the SnapshotMap
+ * holding the resources, which sorts its keys on the first query.
+ * Compact stores keep their snapshot in a FrontCodedMap instead, which answers
+ * structural queries itself.  Equal values share a single String in every
+ * snapshot.  A read-only view of the current snapshot can be handed out, see
+ * view().
+ * 
+ * A snapshot shared with other stores, such as a file cached by ParsedFileCache,
+ * is not copied when it is the first thing loaded.  It becomes the base of the
+ * store and later loads are kept in an overlay on top of it.  The keys of the
+ * base are then indexed once for all stores sharing it, and only the overlay is
+ * indexed per store.
+ */
 final class Resources implements Iterable<String> {
-    private final Properties properties;
+    private final Lock writeLock = new ReentrantLock();
+    private volatile Map<String, String> snapshot = Collections.emptyMap();
+    private final boolean compact;
+    private volatile View view;
+    
+    // guarded by writeLock, the shared snapshot and the resources loaded on top of it
+    private Map<String, String> base;
+    private Map<String, String> overlay;
     
     Resources() {
-        properties = new Properties();
+        this(false);
     }
     
-    public synchronized void clear() {
-        properties.clear();
+    Resources(boolean compact) {
+        this.compact = compact;
+    }
+    
+    public void clear() {
+        writeLock.lock();
+        try {
+            snapshot = Collections.emptyMap();
+            base = null;
+            overlay = null;
+        } finally {
+            writeLock.unlock();
+        }
     }
 
-    public synchronized String get(String key) {
-        return properties.getProperty(key);
+    public String get(String key) {
+        return snapshot.get(key);
     }
 
-    public synchronized void load(InputStream stream) throws IOException {
-        EscapeInputStream in = new EscapeInputStream(stream);
-        properties.load(in);
-        in.close();
+    public void load(InputStream stream) throws IOException {
+        Map<String, String> loaded = new LinkedHashMap<String, String>();
+        PropertiesParser.parse(stream, loaded);
+        putAll(loaded);
     }
     
-    public synchronized void put(String key, String value) {
-        properties.put(key, value);
+    public void put(String key, String value) {
+        putAll(Collections.singletonMap(key, value));
+    }
+    
+    public void putAll(Map<String, String> values) {
+        putAll(null, values);
+    }
+    
+    /**
+     * Publishes the shared, immutable resources followed by the specified values
+     * in a single step.  The shared resources are kept as they are when nothing
+     * was loaded before.
+     */
+    public void putAll(Map<String, String> shared, Map<String, String> values) {
+        if ((shared == null || shared.isEmpty()) && values.isEmpty()) {
+            return;
+        }
+        
+        writeLock.lock();
+        try {
+            Map<String, String> next;
+            if (base == null && snapshot.isEmpty() && shared != null) {
+                base = shared;
+                next = new LinkedHashMap<String, String>(values);
+            } else {
+                next = new LinkedHashMap<String, String>(base == null ? snapshot : overlay);
+                if (shared != null) {
+                    next.putAll(shared);
+                }
+                next.putAll(values);
+            }
+            internValues(next);
+            
+            Map<String, String> resources = next.isEmpty() ? Collections.<String, String>emptyMap() :
+                                            compact ? FrontCodedMap.of(next) : new SnapshotMap(next);
+            if (base == null) {
+                snapshot = resources;
+            } else {
+                overlay = resources;
+                snapshot = resources.isEmpty() ? base : new OverlayMap(base, resources);
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+    
+    boolean isCompact() {
+        return compact;
     }
     
     public Iterator<String> iterator() {
-        Set<String> keySet = new LinkedHashSet<String>();
-        for (Object obj : properties.keySet()) {
-            keySet.add((String) obj);
+        return snapshot.keySet().iterator();
+    }
+    
+    /**
+     * Returns a read-only loader over the current snapshot.  The same instance is
+     * returned until the next modification.
+     */
+    public ResourceLoader view() {
+        Map<String, String> current = snapshot;
+        View view = this.view;
+        
+        // concurrent readers may create the same view twice, which is harmless
+        if (view == null || view.resources.snapshot != current) {
+            Resources frozen = new Resources(compact);
+            frozen.snapshot = current;
+            
+            view = new View(frozen);
+            this.view = view;
         }
         
-        return keySet.iterator();
+        return view;
     }
-
-    private static final class EscapeInputStream extends InputStream {
-        private final InputStream stream;
-        private int read;
-        private int stacked = -1;
     
-        EscapeInputStream(InputStream stream) throws IOException {
-            this.stream = stream;
-            read = stream.read();
+    public String findKey(String scope, String name) {
+        Map<String, String> current = snapshot;
+        if (current instanceof FrontCodedMap) {
+            return ((FrontCodedMap) current).findKey(scope, name);
+        }
+        
+        String key = scope + '.' + name;
+        if (current.containsKey(key)) {
+            return key;
         }
+        
+        key = "*." + name;
+        return current.containsKey(key) ? key : null;
+    }
     
-        @Override
-        public int read() throws IOException {
-            if (read == -1) {
-                return -1;
-            }
+    public List<String> subKeys(String key) {
+        return subKeys(snapshot, key);
+    }
+    
+    private static List<String> subKeys(Map<String, String> resources, String key) {
+        if (resources instanceof FrontCodedMap) {
+            return ((FrontCodedMap) resources).subKeys(key);
+        } else if (resources instanceof SnapshotMap) {
+            return ((SnapshotMap) resources).subKeys(key);
+        } else if (resources instanceof OverlayMap) {
+            OverlayMap overlaid = (OverlayMap) resources;
             
-            if (stacked != -1) {
-                int oldStacked = stacked;
-                stacked = -1;
-                return oldStacked;
+            List<String> keys = subKeys(overlaid.base, key);
+            int shared = keys.size();
+            for (String added : subKeys(overlaid.overlay, key)) {
+                if (!overlaid.base.containsKey(added)) {
+                    keys.add(added);
+                }
             }
             
-            int readAhead = stream.read();
+            if (keys.size() > shared) {
+                Collections.sort(keys);
+            }
+            return keys;
+        }
+        
+        return new ArrayList<String>();
+    }
     
-            if (read == '\\' && (readAhead == '\\' || readAhead == '{' || readAhead == '}')) {
-                stacked  = '\\';
+    /**
+     * Replaces equal values of the specified map by a single instance.  Themes
+     * repeat the same colors, fonts and insets many times.  The table is local
+     * to the call rather than <code>String.intern()</code>, so values no longer
+     * used by any snapshot can be collected.
+     */
+    static void internValues(Map<String, String> values) {
+        Map<String, String> table = new HashMap<String, String>();
+        for (Map.Entry<String, String> entry : values.entrySet()) {
+            String value = entry.getValue();
+            if (value == null) {
+                continue;
             }
             
-            int oldRead = read;
-            read = readAhead;
-            return oldRead;
+            String canonical = table.get(value);
+            if (canonical == null) {
+                table.put(value, value);
+            } else if (canonical != value) {
+                entry.setValue(canonical);
+            }
+        }
+    }
+    
+    /**
+     * A snapshot of a store, never modified.
+     */
+    private static final class View implements IndexedResourceLoader {
+        private final Resources resources;
+        
+        private View(Resources resources) {
+            this.resources = resources;
+        }
+        
+        public void load(URL... urls) {
+            throw new UnsupportedOperationException("A snapshot of resources cannot be modified.");
+        }
+        
+        public void load(InputStream... streams) {
+            throw new UnsupportedOperationException("A snapshot of resources cannot be modified.");
+        }
+        
+        public void load(String... paths) {
+            throw new UnsupportedOperationException("A snapshot of resources cannot be modified.");
+        }
+        
+        public void load(Class<?> resolver, String... paths) {
+            throw new UnsupportedOperationException("A snapshot of resources cannot be modified.");
+        }
+        
+        public void load(File... files) {
+            throw new UnsupportedOperationException("A snapshot of resources cannot be modified.");
+        }
+        
+        public void load(ResourceLoader... loaders) {
+            throw new UnsupportedOperationException("A snapshot of resources cannot be modified.");
+        }
+        
+        public void close() {
+        }
+        
+        public void clear() {
+            throw new UnsupportedOperationException("A snapshot of resources cannot be modified.");
+        }
+        
+        public String get(String key) {
+            return resources.get(key);
+        }
+        
+        public Iterator<String> iterator() {
+            return resources.iterator();
+        }
+        
+        public String findKey(String scope, String name) {
+            return resources.findKey(scope, name);
+        }
+        
+        public List<String> subKeys(String key) {
+            return resources.subKeys(key);
+        }
+    }
+    
+    /**
+     * The resources of an overlay on top of a shared base, the overlay taking
+     * precedence.
+     */
+    private static final class OverlayMap extends AbstractMap<String, String> {
+        private final Map<String, String> base;
+        private final Map<String, String> overlay;
+        private final int size;
+        
+        private OverlayMap(Map<String, String> base, Map<String, String> overlay) {
+            this.base = base;
+            this.overlay = overlay;
+            
+            int added = 0;
+            for (String key : overlay.keySet()) {
+                if (!base.containsKey(key)) {
+                    added++;
+                }
+            }
+            size = base.size() + added;
+        }
+        
+        @Override
+        public String get(Object key) {
+            String value = overlay.get(key);
+            return value != null ? value : base.get(key);
+        }
+        
+        @Override
+        public boolean containsKey(Object key) {
+            return overlay.containsKey(key) || base.containsKey(key);
+        }
+        
+        @Override
+        public int size() {
+            return size;
+        }
+        
+        @Override
+        public Set<Map.Entry<String, String>> entrySet() {
+            return new AbstractSet<Map.Entry<String, String>>() {
+                @Override
+                public Iterator<Map.Entry<String, String>> iterator() {
+                    final Iterator<Map.Entry<String, String>> overlaid = overlay.entrySet().iterator();
+                    final Iterator<Map.Entry<String, String>> shared = base.entrySet().iterator();
+                    
+                    return new Iterator<Map.Entry<String, String>>() {
+                        private Map.Entry<String, String> next;
+                        
+                        public boolean hasNext() {
+                            if (next != null) {
+                                return true;
+                            }
+                            
+                            if (overlaid.hasNext()) {
+                                next = overlaid.next();
+                                return true;
+                            }
+                            
+                            while (shared.hasNext()) {
+                                Map.Entry<String, String> entry = shared.next();
+                                if (!overlay.containsKey(entry.getKey())) {
+                                    next = entry;
+                                    return true;
+                                }
+                            }
+                            
+                            return false;
+                        }
+                        
+                        public Map.Entry<String, String> next() {
+                            if (!hasNext()) {
+                                throw new NoSuchElementException();
+                            }
+                            
+                            Map.Entry<String, String> entry = next;
+                            next = null;
+                            return new SimpleImmutableEntry<String, String>(entry);
+                        }
+                        
+                        public void remove() {
+                            throw new UnsupportedOperationException();
+                        }
+                    };
+                }
+                
+                @Override
+                public int size() {
+                    return size;
+                }
+            };
         }
     }
 }
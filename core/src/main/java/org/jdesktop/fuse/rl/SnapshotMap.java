@@ -0,0 +1,116 @@
+/**
+ * Copyright (c) 2006, Sun Microsystems, Inc
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 
+ *   * Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *   * Redistributions in binary form must reproduce the above
+ *     copyright notice, this list of conditions and the following 
+ *     disclaimer in the documentation and/or other materials provided 
+ *     with the distribution.
+ *   * Neither the name of the Fuse project nor the names of its
+ *     contributors may be used to endorse or promote products derived 
+ *     from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.jdesktop.fuse.rl;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * An immutable map of resources which answers prefix queries.  The sorted array
+ * of the keys is built on the first query and lives as long as the map, so every
+ * store sharing a snapshot, such as a file cached by ParsedFileCache, shares its
+ * index as well.
+ */
+final class SnapshotMap extends AbstractMap<String, String> {
+    private final Map<String, String> resources;
+    private volatile String[] sortedKeys;
+    
+    /**
+     * Wraps the specified map, which must not be modified afterwards.
+     */
+    SnapshotMap(Map<String, String> resources) {
+        this.resources = Collections.unmodifiableMap(resources);
+    }
+    
+    @Override
+    public String get(Object key) {
+        return resources.get(key);
+    }
+    
+    @Override
+    public boolean containsKey(Object key) {
+        return resources.containsKey(key);
+    }
+    
+    @Override
+    public int size() {
+        return resources.size();
+    }
+    
+    @Override
+    public Set<String> keySet() {
+        return resources.keySet();
+    }
+    
+    @Override
+    public Set<Map.Entry<String, String>> entrySet() {
+        return resources.entrySet();
+    }
+    
+    /**
+     * Returns the keys starting with the specified key followed by a dot, sorted.
+     */
+    List<String> subKeys(String key) {
+        // the keys starting with the prefix are contiguous once sorted
+        String[] keys = getSortedKeys();
+        String prefix = key + '.';
+        
+        int from = Arrays.binarySearch(keys, prefix);
+        if (from < 0) {
+            from = -from - 1;
+        }
+        
+        List<String> found = new ArrayList<String>();
+        for (int i = from; i < keys.length && keys[i].startsWith(prefix); i++) {
+            found.add(keys[i]);
+        }
+        
+        return found;
+    }
+    
+    // concurrent builds are harmless
+    private String[] getSortedKeys() {
+        String[] keys = sortedKeys;
+        if (keys == null) {
+            keys = resources.keySet().toArray(new String[resources.size()]);
+            Arrays.sort(keys);
+            sortedKeys = keys;
+        }
+        
+        return keys;
+    }
+}
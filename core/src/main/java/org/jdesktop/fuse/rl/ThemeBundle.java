@@ -0,0 +1,335 @@
+/**
+ * Copyright (c) 2006, Sun Microsystems, Inc
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 
+ *   * Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *   * Redistributions in binary form must reproduce the above
+ *     copyright notice, this list of conditions and the following 
+ *     disclaimer in the documentation and/or other materials provided 
+ *     with the distribution.
+ *   * Neither the name of the Fuse project nor the names of its
+ *     contributors may be used to endorse or promote products derived 
+ *     from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.jdesktop.fuse.rl;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.jdesktop.fuse.TypeLoadingException;
+
+/**
+ * <p>The binary theme bundle format written by {@link ThemeBundleCompiler} and
+ * read by {@link MappedResourceLoader}.  All integers are big endian:</p>
+ * 
+ * <pre>
+ * int      magic (NUL followed by "FUB", which cannot start a properties or XML file)
+ * int      version
+ * int      number of resources
+ * int      number of slots
+ * int      number of buckets
+ * int[]    the displacement of every bucket
+ * int[][3] for every slot, the fingerprint of the key and the offsets of the key
+ *          and value strings in the string table (-1 for an empty slot)
+ * string table: for every string, its length in bytes followed by its UTF-8 bytes
+ * </pre>
+ * 
+ * <p>The key index is a perfect hash built with the hash and displace method:
+ * a key is hashed into a bucket, and the displacement of the bucket selects the
+ * hash function mapping every key of the bucket to its own slot.  Looking up a
+ * key never probes more than one slot.</p>
+ */
+final class ThemeBundle {
+    static final int MAGIC = 0x00465542;
+    static final int VERSION = 1;
+    
+    private static final int HEADER_SIZE = 5 * 4;
+    private static final int MAX_DISPLACEMENT = 1 << 24;
+    
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    
+    private ThemeBundle() {
+    }
+    
+    static boolean isBundle(ByteBuffer buffer) {
+        return buffer.limit() >= HEADER_SIZE && buffer.getInt(0) == MAGIC;
+    }
+    
+    static MappedResourceLoader.Layer open(ByteBuffer buffer) {
+        if (buffer.getInt(4) != VERSION) {
+            throw new TypeLoadingException("Theme bundle version " + buffer.getInt(4) +
+                                           " is not supported.");
+        }
+        
+        int slotCount = buffer.getInt(12);
+        int bucketCount = buffer.getInt(16);
+        long slotsStart = HEADER_SIZE + bucketCount * 4L;
+        long stringsStart = slotsStart + slotCount * 12L;
+        if (slotCount <= 0 || bucketCount <= 0 || stringsStart > buffer.limit()) {
+            throw corrupt();
+        }
+        
+        // every string must at least start with its length within the string table
+        long stringsSize = buffer.limit() - stringsStart;
+        for (int i = 0; i < slotCount; i++) {
+            int slot = (int) slotsStart + i * 12;
+            int keyOffset = buffer.getInt(slot + 4);
+            if (keyOffset == -1) {
+                continue;
+            }
+            
+            int valueOffset = buffer.getInt(slot + 8);
+            if (keyOffset < 0 || keyOffset + 4L > stringsSize || valueOffset < 0 || valueOffset + 4L > stringsSize) {
+                throw corrupt();
+            }
+        }
+        
+        return new BundleLayer(buffer, slotCount, bucketCount, (int) slotsStart, (int) stringsStart);
+    }
+    
+    private static TypeLoadingException corrupt() {
+        return new TypeLoadingException("Theme bundle is truncated or corrupt.");
+    }
+    
+    /**
+     * Writes the specified resources as a theme bundle.
+     */
+    static void write(Map<String, String> resources, OutputStream out) throws IOException {
+        final List<String> keys = new ArrayList<String>(resources.size());
+        for (Map.Entry<String, String> entry : resources.entrySet()) {
+            if (entry.getValue() != null) {
+                keys.add(entry.getKey());
+            }
+        }
+        
+        int count = keys.size();
+        int slotCount = count + count / 4 + 1;
+        int bucketCount = count / 4 + 1;
+        
+        List<List<Integer>> buckets = new ArrayList<List<Integer>>(bucketCount);
+        for (int i = 0; i < bucketCount; i++) {
+            buckets.add(new ArrayList<Integer>());
+        }
+        for (int i = 0; i < count; i++) {
+            buckets.get(index(hash(keys.get(i), 0), bucketCount)).add(i);
+        }
+        
+        // the largest buckets are placed first, while most slots are free
+        Integer[] order = new Integer[bucketCount];
+        for (int i = 0; i < bucketCount; i++) {
+            order[i] = i;
+        }
+        final List<List<Integer>> sizes = buckets;
+        Arrays.sort(order, new Comparator<Integer>() {
+            public int compare(Integer a, Integer b) {
+                return sizes.get(b).size() - sizes.get(a).size();
+            }
+        });
+        
+        int[] displacements = new int[bucketCount];
+        int[] slots = new int[slotCount];
+        Arrays.fill(slots, -1);
+        
+        for (int b : order) {
+            List<Integer> bucket = buckets.get(b);
+            if (bucket.isEmpty()) {
+                break;
+            }
+            
+            int[] placed = new int[bucket.size()];
+            for (int d = 1; ; d++) {
+                if (d == MAX_DISPLACEMENT) {
+                    throw new IOException("Cannot build the theme bundle index.");
+                }
+                
+                if (place(keys, bucket, d, slots, placed)) {
+                    for (int i = 0; i < placed.length; i++) {
+                        slots[placed[i]] = bucket.get(i);
+                    }
+                    displacements[b] = d;
+                    break;
+                }
+            }
+        }
+        
+        // string table
+        ByteArrayOutputStream strings = new ByteArrayOutputStream();
+        DataOutputStream stringsOut = new DataOutputStream(strings);
+        int[] keyOffsets = new int[count];
+        int[] valueOffsets = new int[count];
+        for (int i = 0; i < count; i++) {
+            keyOffsets[i] = writeString(stringsOut, keys.get(i));
+            valueOffsets[i] = writeString(stringsOut, resources.get(keys.get(i)));
+        }
+        stringsOut.flush();
+        
+        DataOutputStream data = new DataOutputStream(out);
+        data.writeInt(MAGIC);
+        data.writeInt(VERSION);
+        data.writeInt(count);
+        data.writeInt(slotCount);
+        data.writeInt(bucketCount);
+        for (int d : displacements) {
+            data.writeInt(d);
+        }
+        for (int entry : slots) {
+            if (entry == -1) {
+                data.writeInt(0);
+                data.writeInt(-1);
+                data.writeInt(-1);
+            } else {
+                data.writeInt(hash(keys.get(entry), 0));
+                data.writeInt(keyOffsets[entry]);
+                data.writeInt(valueOffsets[entry]);
+            }
+        }
+        strings.writeTo(data);
+        data.flush();
+    }
+    
+    // finds a free, distinct slot for every key of the bucket
+    private static boolean place(List<String> keys, List<Integer> bucket, int displacement,
+                                 int[] slots, int[] placed) {
+        for (int i = 0; i < placed.length; i++) {
+            int slot = index(hash(keys.get(bucket.get(i)), displacement), slots.length);
+            if (slots[slot] != -1) {
+                return false;
+            }
+            for (int j = 0; j < i; j++) {
+                if (placed[j] == slot) {
+                    return false;
+                }
+            }
+            placed[i] = slot;
+        }
+        
+        return true;
+    }
+    
+    private static int writeString(DataOutputStream out, String value) throws IOException {
+        int offset = out.size();
+        byte[] bytes = value.getBytes(UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+        
+        return offset;
+    }
+    
+    static int hash(String key, int seed) {
+        int h = 0x811C9DC5 ^ (seed * 0x9E3779B9);
+        for (int i = 0; i < key.length(); i++) {
+            h = (h ^ key.charAt(i)) * 0x01000193;
+        }
+        
+        // murmur3 finalizer
+        h ^= h >>> 16;
+        h *= 0x85EBCA6B;
+        h ^= h >>> 13;
+        h *= 0xC2B2AE35;
+        h ^= h >>> 16;
+        
+        return h;
+    }
+    
+    private static int index(int hash, int length) {
+        return (hash & 0x7FFFFFFF) % length;
+    }
+    
+    private static final class BundleLayer extends MappedResourceLoader.Layer {
+        private final ByteBuffer buffer;
+        private final int slotCount;
+        private final int bucketCount;
+        private final int slotsStart;
+        private final int stringsStart;
+        
+        private final ConcurrentMap<String, String> decoded = new ConcurrentHashMap<String, String>();
+        
+        BundleLayer(ByteBuffer buffer, int slotCount, int bucketCount, int slotsStart, int stringsStart) {
+            this.buffer = buffer;
+            this.slotCount = slotCount;
+            this.bucketCount = bucketCount;
+            this.slotsStart = slotsStart;
+            this.stringsStart = stringsStart;
+        }
+        
+        @Override
+        String get(String key) {
+            String value = decoded.get(key);
+            if (value != null) {
+                return value;
+            }
+            
+            int fingerprint = hash(key, 0);
+            int displacement = buffer.getInt(HEADER_SIZE + index(fingerprint, bucketCount) * 4);
+            if (displacement == 0) {
+                return null;
+            }
+            
+            int slot = slotsStart + index(hash(key, displacement), slotCount) * 12;
+            if (buffer.getInt(slot + 4) == -1 || buffer.getInt(slot) != fingerprint ||
+                !key.equals(readString(buffer.getInt(slot + 4)))) {
+                return null;
+            }
+            
+            value = readString(buffer.getInt(slot + 8));
+            decoded.putIfAbsent(key, value);
+            
+            return value;
+        }
+        
+        @Override
+        void collectKeys(Set<String> keys) {
+            for (int i = 0; i < slotCount; i++) {
+                int keyOffset = buffer.getInt(slotsStart + i * 12 + 4);
+                if (keyOffset != -1) {
+                    keys.add(readString(keyOffset));
+                }
+            }
+        }
+        
+        private String readString(int offset) {
+            int position = stringsStart + offset;
+            int length = buffer.getInt(position);
+            if (length < 0 || position + 4L + length > buffer.limit()) {
+                throw corrupt();
+            }
+            
+            byte[] bytes = new byte[length];
+            for (int i = 0; i < bytes.length; i++) {
+                bytes[i] = buffer.get(position + 4 + i);
+            }
+            
+            return new String(bytes, UTF_8);
+        }
+    }
+}
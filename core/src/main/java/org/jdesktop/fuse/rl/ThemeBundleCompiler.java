@@ -0,0 +1,112 @@
+/**
+ * Copyright (c) 2006, Sun Microsystems, Inc
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 
+ *   * Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *   * Redistributions in binary form must reproduce the above
+ *     copyright notice, this list of conditions and the following 
+ *     disclaimer in the documentation and/or other materials provided 
+ *     with the distribution.
+ *   * Neither the name of the Fuse project nor the names of its
+ *     contributors may be used to endorse or promote products derived 
+ *     from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.jdesktop.fuse.rl;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.jdesktop.fuse.ResourceLoader;
+
+/**
+ * <p>Compiles properties and XML theme files into a binary theme bundle which
+ * can be loaded by {@link MappedResourceLoader}.  A bundle holds the resources
+ * in a string table together with a perfect hash index of the keys, so loading
+ * it requires no parsing at all.  Since the bundle is mapped read-only, several
+ * JVMs loading the same bundle share its pages in the operating system cache.</p>
+ * 
+ * <p>The compiler is meant to be run at build time:</p>
+ * 
+ * <pre>java -cp fuse-core.jar org.jdesktop.fuse.rl.ThemeBundleCompiler theme.fuseb base.properties site.xml</pre>
+ * 
+ * <p>Sources ending with <code>.xml</code> are read with {@link XMLResourceLoader},
+ * all other sources with {@link PropertiesResourceLoader}.  Resources in later
+ * sources override resources in earlier ones.  Values are stored exactly as the
+ * loaders return them: references are still resolved by ResourceInjector at
+ * injection time, so that they may point to resources loaded from elsewhere.</p>
+ *
+ * @see MappedResourceLoader
+ * @since 1.1
+ */
+public final class ThemeBundleCompiler {
+    private ThemeBundleCompiler() {
+    }
+    
+    /**
+     * Compiles the specified sources into a theme bundle.
+     * 
+     * @param output    The bundle file to write.
+     * @param sources   The properties and XML theme files to compile, in override order.
+     * @throws IOException if the bundle cannot be written.
+     */
+    public static void compile(File output, File... sources) throws IOException {
+        Map<String, String> resources = new LinkedHashMap<String, String>();
+        for (File source : sources) {
+            ResourceLoader loader = source.getName().endsWith(".xml") ?
+                                    new XMLResourceLoader() : new PropertiesResourceLoader();
+            loader.load(source);
+            
+            for (String key : loader) {
+                resources.put(key, loader.get(key));
+            }
+        }
+        
+        OutputStream out = new BufferedOutputStream(new FileOutputStream(output));
+        try {
+            ThemeBundle.write(resources, out);
+        } finally {
+            out.close();
+        }
+    }
+    
+    /**
+     * Command line entry point.  The first argument is the bundle file to
+     * write, the remaining arguments are the theme files to compile.
+     */
+    public static void main(String... args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: ThemeBundleCompiler <bundle> <theme file>...");
+            System.exit(1);
+        }
+        
+        File[] sources = new File[args.length - 1];
+        for (int i = 1; i < args.length; i++) {
+            sources[i - 1] = new File(args[i]);
+        }
+        
+        compile(new File(args[0]), sources);
+    }
+}
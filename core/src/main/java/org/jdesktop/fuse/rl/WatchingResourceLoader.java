@@ -0,0 +1,364 @@
+/**
+ * Copyright (c) 2006, Sun Microsystems, Inc
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 
+ *   * Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *   * Redistributions in binary form must reproduce the above
+ *     copyright notice, this list of conditions and the following 
+ *     disclaimer in the documentation and/or other materials provided 
+ *     with the distribution.
+ *   * Neither the name of the Fuse project nor the names of its
+ *     contributors may be used to endorse or promote products derived 
+ *     from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.jdesktop.fuse.rl;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.jdesktop.fuse.ResourceChangeListener;
+import org.jdesktop.fuse.ResourceLoader;
+import org.jdesktop.fuse.TypeLoadingException;
+
+/**
+ * <p>A resource loader which reloads theme files when they change on disk.
+ * Every file loaded with {@link #load(File...)} is kept in its own layer of a
+ * {@link LayeredResourceLoader} and its directory is watched with a
+ * <code>java.nio.file.WatchService</code>.  When a file changes, only that file
+ * is parsed again.  The effective values of its keys before and after the reload
+ * are compared and the keys whose value changed are published to the registered
+ * {@link ResourceChangeListener}(s), such as a Hive:</p>
+ * 
+ * <pre>WatchingResourceLoader loader = new WatchingResourceLoader();
+ *ResourceInjector.get().setLoader(loader);
+ *loader.load(new File("theme.properties"));
+ *loader.addResourceChangeListener(hive);</pre>
+ * 
+ * <p>Successive changes to a file within the reload delay are coalesced into a
+ * single reload.  Files are parsed and listeners are notified on a background
+ * thread.  If a changed file cannot be parsed, for example because it is still
+ * being written, its previous resources are kept and the file is parsed again
+ * once after the reload delay.  Files which still cannot be parsed and
+ * exceptions thrown by listeners are logged to the
+ * <code>org.jdesktop.fuse.rl.WatchingResourceLoader</code> logger.  Files ending with
+ * <code>.xml</code> are read with {@link XMLResourceLoader}, all other files with
+ * {@link PropertiesResourceLoader}.  Resources loaded by the other
+ * <code>load</code> methods are not watched.</p>
+ * 
+ * <p>The loader must be closed to stop watching.</p>
+ *
+ * @see ResourceChangeListener
+ * @since 1.1
+ */
+public final class WatchingResourceLoader implements ResourceLoader {
+    private static final long DEFAULT_DELAY = 200;
+    private static final Logger LOGGER = Logger.getLogger(WatchingResourceLoader.class.getName());
+    
+    private final LayeredResourceLoader layers = new LayeredResourceLoader();
+    private final Map<Path, ResourceLoader> watched = new ConcurrentHashMap<Path, ResourceLoader>();
+    private final Map<Path, ScheduledFuture<?>> pending = new ConcurrentHashMap<Path, ScheduledFuture<?>>();
+    private final Set<Path> directories = Collections.newSetFromMap(new ConcurrentHashMap<Path, Boolean>());
+    private final List<ResourceChangeListener> listeners = new CopyOnWriteArrayList<ResourceChangeListener>();
+    
+    private final long delay;
+    private final WatchService watchService;
+    private final ScheduledExecutorService scheduler;
+    private final Thread watcher;
+    
+    /**
+     * Creates a new instance coalescing changes within 200 milliseconds.
+     */
+    public WatchingResourceLoader() {
+        this(DEFAULT_DELAY);
+    }
+    
+    /**
+     * Creates a new instance coalescing changes within the specified delay.
+     * 
+     * @param delay The delay in milliseconds between the last change to a file
+     *              and its reload.
+     */
+    public WatchingResourceLoader(long delay) {
+        this.delay = delay;
+        
+        try {
+            watchService = FileSystems.getDefault().newWatchService();
+        } catch (IOException e) {
+            throw new TypeLoadingException("Cannot watch theme files.", e);
+        }
+        
+        ThreadFactory factory = new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "fuse-theme-reload");
+                thread.setDaemon(true);
+                
+                return thread;
+            }
+        };
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, factory);
+        // coalesced reloads are cancelled, they must not wait in the queue until their delay
+        executor.setRemoveOnCancelPolicy(true);
+        scheduler = executor;
+        
+        watcher = new Thread(new Runnable() {
+            public void run() {
+                watch();
+            }
+        }, "fuse-theme-watcher");
+        watcher.setDaemon(true);
+        watcher.start();
+    }
+    
+    /**
+     * Registers a listener notified of the keys whose value changed after a reload.
+     * 
+     * @param listener  The listener to add.
+     */
+    public void addResourceChangeListener(ResourceChangeListener listener) {
+        listeners.add(listener);
+    }
+    
+    /**
+     * Unregisters the specified listener.
+     * 
+     * @param listener  The listener to remove.
+     */
+    public void removeResourceChangeListener(ResourceChangeListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Loads the specified files and watches them for changes.  Loading a file
+     * which is already loaded moves its resources on top of the others.
+     */
+    public void load(File... files) {
+        for (File file : files) {
+            Path path = file.toPath().toAbsolutePath().normalize();
+            ResourceLoader layer = createLayer(path);
+            
+            ResourceLoader previous = watched.put(path, layer);
+            if (previous != null) {
+                layers.removeLayer(previous);
+            }
+            layers.addLayer(layer);
+            
+            Path directory = path.getParent();
+            if (directories.add(directory)) {
+                try {
+                    directory.register(watchService, ENTRY_CREATE, ENTRY_MODIFY);
+                } catch (IOException e) {
+                    directories.remove(directory);
+                    throw new TypeLoadingException("Cannot watch " + directory + ".", e);
+                }
+            }
+        }
+    }
+
+    public void load(URL... urls) {
+        layers.load(urls);
+    }
+
+    public void load(InputStream... streams) {
+        layers.load(streams);
+    }
+
+    public void load(String... paths) {
+        layers.load(paths);
+    }
+
+    public void load(Class<?> resolver, String... paths) {
+        layers.load(resolver, paths);
+    }
+
+    public void load(ResourceLoader... loaders) {
+        layers.load(loaders);
+    }
+
+    /**
+     * Stops watching the loaded files.
+     */
+    public void close() {
+        watcher.interrupt();
+        try {
+            watchService.close();
+        } catch (IOException e) {       // the watcher thread is stopping anyway
+        }
+        scheduler.shutdownNow();
+    }
+
+    public void clear() {
+        watched.clear();
+        layers.clear();
+    }
+
+    public String get(String key) {
+        return layers.get(key);
+    }
+
+    public Iterator<String> iterator() {
+        return layers.iterator();
+    }
+    
+    private void watch() {
+        while (true) {
+            WatchKey key;
+            try {
+                key = watchService.take();
+            } catch (InterruptedException e) {
+                return;
+            } catch (ClosedWatchServiceException e) {
+                return;
+            }
+            
+            Path directory = (Path) key.watchable();
+            for (WatchEvent<?> event : key.pollEvents()) {
+                if (event.kind() == OVERFLOW) {
+                    for (Path path : watched.keySet()) {
+                        if (directory.equals(path.getParent())) {
+                            scheduleReload(path, false);
+                        }
+                    }
+                } else {
+                    Path path = directory.resolve((Path) event.context());
+                    if (watched.containsKey(path)) {
+                        scheduleReload(path, false);
+                    }
+                }
+            }
+            
+            key.reset();
+        }
+    }
+    
+    // a later change to the same file postpones the reload
+    private void scheduleReload(final Path path, final boolean retry) {
+        ScheduledFuture<?> future = scheduler.schedule(new Runnable() {
+            public void run() {
+                pending.remove(path);
+                try {
+                    reload(path, retry);
+                } catch (RuntimeException e) {
+                    LOGGER.log(Level.WARNING, "Cannot reload " + path + ".", e);
+                }
+            }
+        }, delay, TimeUnit.MILLISECONDS);
+        
+        ScheduledFuture<?> previous = pending.put(path, future);
+        if (previous != null) {
+            previous.cancel(false);
+        }
+    }
+    
+    // package-private for the tests, which do not wait for the file system
+    void reload(Path path, boolean retry) {
+        ResourceLoader old = watched.get(path);
+        if (old == null) {
+            return;
+        }
+        
+        ResourceLoader layer;
+        try {
+            layer = createLayer(path);
+        } catch (TypeLoadingException e) {
+            // keep the previous resources, the file may still be being written
+            if (retry) {
+                LOGGER.log(Level.WARNING, "Cannot parse " + path + ", its previous resources are kept.", e);
+            } else if (!pending.containsKey(path)) {
+                scheduleReload(path, true);
+            }
+            return;
+        }
+        
+        Set<String> keys = new HashSet<String>();
+        for (String key : old) {
+            keys.add(key);
+        }
+        for (String key : layer) {
+            keys.add(key);
+        }
+        
+        Map<String, String> before = new HashMap<String, String>();
+        for (String key : keys) {
+            before.put(key, layers.get(key));
+        }
+        
+        if (!watched.replace(path, old, layer)) {
+            return;
+        }
+        layers.replaceLayer(old, layer);
+        
+        Set<String> changed = new HashSet<String>();
+        for (String key : keys) {
+            String value = layers.get(key);
+            if (value == null ? before.get(key) != null : !value.equals(before.get(key))) {
+                changed.add(key);
+            }
+        }
+        
+        if (!changed.isEmpty()) {
+            Set<String> published = Collections.unmodifiableSet(changed);
+            for (ResourceChangeListener listener : listeners) {
+                try {
+                    listener.resourcesChanged(this, published);
+                } catch (RuntimeException e) {
+                    LOGGER.log(Level.WARNING, "A listener failed to handle the changes of " + path + ".", e);
+                }
+            }
+        }
+    }
+    
+    private static ResourceLoader createLayer(Path path) {
+        File file = path.toFile();
+        ResourceLoader layer = file.getName().endsWith(".xml") ?
+                               new XMLResourceLoader() : new PropertiesResourceLoader();
+        layer.load(file);
+        
+        return layer;
+    }
+}
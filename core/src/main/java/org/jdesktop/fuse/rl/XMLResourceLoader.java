@@ -32,79 +32,95 @@
 package org.jdesktop.fuse.rl;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URL;
-import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.Stack;
 
-import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.parsers.SAXParser;
-import javax.xml.parsers.SAXParserFactory;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 
+import org.jdesktop.fuse.IndexedResourceLoader;
 import org.jdesktop.fuse.ResourceLoader;
-import org.xml.sax.Attributes;
-import org.xml.sax.SAXException;
-import org.xml.sax.helpers.DefaultHandler;
+import org.jdesktop.fuse.SnapshotResourceLoader;
+import org.jdesktop.fuse.TypeLoadingException;
 
 /**
- * A resource loader implementation which loads the resource values from
- * an XML file using the SAX parser obtained using JAXP.  The XML format
- * itself is well defined in the Fuse web documentation.
+ * <p>A resource loader implementation which loads the resource values from
+ * an XML file using a StAX stream reader obtained using JAXP.  The XML format
+ * itself is well defined in the Fuse web documentation.</p>
+ * 
+ * <p>Every load uses its own stream reader, so concurrent loads are safe.  The
+ * resources of a load are published at once when the whole load succeeded; a
+ * malformed file raises a <code>TypeLoadingException</code> and leaves the
+ * previously loaded resources untouched.</p>
+ * 
+ * <p>Large themes can be held in a compact form, see
+ * {@link #XMLResourceLoader(boolean)}.</p>
  * 
  * @since 0.2
  * @author Daniel Spiewak
  */
-public final class XMLResourceLoader extends DefaultHandler implements ResourceLoader {
-	private SAXParser parser;
-	private Map<String, String> properties;
+public final class XMLResourceLoader implements IndexedResourceLoader, SnapshotResourceLoader {
+    // configured once, creating stream readers is thread safe
+    private static final XMLInputFactory FACTORY = createFactory();
     
-    private Stack<String> currentKey;
+	private final Resources properties;
 	
     /**
-     * Initializes the in-memory resource cache and creates the SAX
-     * parser using JAXP.
+     * Initializes the in-memory resource cache.
      */
 	public XMLResourceLoader() {
-		properties = new HashMap<String, String>();
-		
-		try {
-			parser = SAXParserFactory.newInstance().newSAXParser();
-		} catch (ParserConfigurationException e) {
-			properties = null;
-		} catch (SAXException e) {
-			properties = null;
-		}
+		this(false);
+	}
+
+    /**
+     * Initializes the in-memory resource cache, optionally storing the keys
+     * front coded.  Keys sharing a prefix then only store that prefix once,
+     * which considerably reduces the memory used by large themes, at the price
+     * of slower lookups and loads.  The keys are iterated in sorted order.
+     * 
+     * @param compactKeys   <code>true</code> to store the keys front coded.
+     * @since 1.1
+     */
+	public XMLResourceLoader(boolean compactKeys) {
+		properties = new Resources(compactKeys);
 	}
 
 	public void load(URL... urls) {
-        currentKey = new Stack<String>();
+        Map<String, String> values = new LinkedHashMap<String, String>();
         
         for (URL url : urls) {
-    		try {
-    			parser.parse(url.openStream(), this);
-    		} catch (SAXException e) {
-    			properties = null;
-    		} catch (IOException e) {
-    			properties = null;
-    		}
+            if (url == null) {
+                throw new TypeLoadingException("Resource was null");
+            }
+            
+            InputStream stream;
+            try {
+                stream = url.openStream();
+            } catch (IOException e) {
+                throw new TypeLoadingException("Cannot open " + url + ".", e);
+            }
+            parse(stream, url, values, true);
         }
+        
+        properties.putAll(values);
 	}
 
 	public void load(InputStream... streams) {
-        currentKey = new Stack<String>();
+        Map<String, String> values = new LinkedHashMap<String, String>();
         
         for (InputStream is : streams) {
-    		try {
-    			parser.parse(is, this);
-    		} catch (SAXException e) {
-    			properties = null;
-    		} catch (IOException e) {
-    			properties = null;
-    		}
+            parse(is, "stream", values, false);
         }
+        
+        properties.putAll(values);
 	}
 
 	public void load(String... paths) {
@@ -112,39 +128,43 @@ public final class XMLResourceLoader extends DefaultHandler implements ResourceL
 	}
 
 	public void load(Class<?> resolver, String... paths) {
-        currentKey = new Stack<String>();
+        URL[] urls = new URL[paths.length];
         
-        for (String path : paths) {
-    		try {
-    			parser.parse(resolver.getResourceAsStream(path), this);
-    		} catch (SAXException e) {
-    			properties = null;
-    		} catch (IOException e) {
-    			properties = null;
-    		}
+        for (int i = 0; i < paths.length; i++) {
+            urls[i] = resolver.getResource(paths[i]);
+            if (urls[i] == null) {
+                throw new TypeLoadingException("Resource \"" + paths[i] + "\" was not found");
+            }
         }
+        
+        load(urls);
 	}
 
     public void load(ResourceLoader... loaders) {
+        Map<String, String> values = new LinkedHashMap<String, String>();
         for (ResourceLoader loader : loaders) {
             for (String key : loader) {
-                properties.put(key, loader.get(key));
+                values.put(key, loader.get(key));
             }
         }
+        
+        properties.putAll(values);
     }
 
     public void load(File... files) {
-        currentKey = new Stack<String>();
+        Map<String, String> values = new LinkedHashMap<String, String>();
         
         for (File file : files) {
-    		try {
-    			parser.parse(file, this);
-    		} catch (SAXException e) {
-    			properties = null;
-    		} catch (IOException e) {
-    			properties = null;
-    		}
+            InputStream stream;
+            try {
+                stream = new FileInputStream(file);
+            } catch (IOException e) {
+                throw new TypeLoadingException("Cannot open " + file + ".", e);
+            }
+            parse(stream, file, values, true);
         }
+        
+        properties.putAll(values);
 	}
 
 	public void close() {}
@@ -158,67 +178,105 @@ public final class XMLResourceLoader extends DefaultHandler implements ResourceL
 	}
 
     public Iterator<String> iterator() {
-        return properties.keySet().iterator();
+        return properties.iterator();
     }
 
-    @Override
-	public void startElement(String uri, String localName, String qName, Attributes attributes) throws SAXException {
-		startElement(qName, attributes);
-	}
-	
-	/**
-	 * Compatibility with SAX 1.0
-	 */
-	public void startElement(String name, Attributes attributes) throws SAXException {
-        if (name.equals("resources")) {
-            return;
-        }
+    public String findKey(String scope, String name) {
+        return properties.findKey(scope, name);
+    }
+
+    public List<String> subKeys(String key) {
+        return properties.subKeys(key);
+    }
+
+    public ResourceLoader snapshot() {
+        return properties.view();
+    }
+    
+    /*
+     * Keys are built in a single prefix buffer: every element appends its
+     * segment and the buffer is truncated back when the element ends.  Nested
+     * objects are joined with '$', resources with '.' and the fuse:global
+     * element contributes the '*' prefix.
+     */
+    private static void parse(InputStream stream, Object source, Map<String, String> values,
+                              boolean close) {
+        StringBuilder prefix = new StringBuilder();
+        int[] lengths = new int[16];
+        int depth = 0;
         
-        if (name.equals("object")) {
-            if (currentKey.size() == 0) {
-                currentKey.push(attributes.getValue("class"));
-            } else {
-                String cur = currentKey.pop();
+        XMLStreamReader reader = null;
+        try {
+            reader = FACTORY.createXMLStreamReader(stream);
+            
+            while (reader.hasNext()) {
+                int event = reader.next();
                 
-                currentKey.push(cur + "$" + attributes.getValue("class"));
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    if (depth == lengths.length) {
+                        int[] grown = new int[depth * 2];
+                        System.arraycopy(lengths, 0, grown, 0, depth);
+                        lengths = grown;
+                    }
+                    lengths[depth++] = prefix.length();
+                    
+                    String name = getName(reader);
+                    if (name.equals("object")) {
+                        if (prefix.length() > 0) {
+                            prefix.append('$');
+                        }
+                        prefix.append(reader.getAttributeValue(null, "class"));
+                    } else if (name.equals("resource")) {
+                        if (prefix.length() > 0) {
+                            prefix.append('.');
+                        }
+                        prefix.append(reader.getAttributeValue(null, "key"));
+                        
+                        String value = reader.getAttributeValue(null, "value");
+                        if (value != null) {
+                            values.put(prefix.toString(), value);
+                        }
+                    } else if (name.equals("fuse:global") && prefix.length() == 0) {
+                        prefix.append('*');
+                    }
+                } else if (event == XMLStreamConstants.END_ELEMENT) {
+                    prefix.setLength(lengths[--depth]);
+                }
             }
-        } else if (name.equals("resource")) {
-            StringBuilder key = new StringBuilder();
-            
-            for (String curKey : currentKey) {
-                key.append(curKey);
-                key.append('.');
+        } catch (XMLStreamException e) {
+            throw new TypeLoadingException("Cannot parse " + source + ".", e);
+        } finally {
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (XMLStreamException e) {        // nothing left to release
+                }
             }
-            key.append(attributes.getValue("key"));
-            
-            properties.put(key.toString(), attributes.getValue("value"));
-            currentKey.push(attributes.getValue("key"));
-        } else if (name.equals("fuse:global")) {
-            if (currentKey.size() != 0) {
-                return;
+            if (close) {
+                try {
+                    stream.close();
+                } catch (IOException e) {       // if we can't close the stream, just ignore it
+                }
             }
-            
-            currentKey.push("*");
         }
-	}
-
-    @Override
-	public void endElement(String uri, String localName, String qName) throws SAXException {
-		endElement(qName);
-	}
-	
-	/**
-	 * Compatibility with SAX 1.0
-	 */
-	public void endElement(String name) throws SAXException {
-        if (name.equals("resources")) {
-            return;
-        } else if (name.equals("object") || name.equals("resource")) {
-            currentKey.pop();
-        } else if (name.equals("fuse:global")) {
-            if (currentKey.peek().equals("*")) {
-                currentKey.pop();
-            }
+    }
+    
+    private static String getName(XMLStreamReader reader) {
+        String prefix = reader.getPrefix();
+        if (prefix == null || prefix.length() == 0) {
+            return reader.getLocalName();
         }
-	}
+        
+        return prefix + ':' + reader.getLocalName();
+    }
+    
+    private static XMLInputFactory createFactory() {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        
+        // the fuse: prefix is used without a namespace declaration
+        factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, Boolean.FALSE);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+        
+        return factory;
+    }
 }
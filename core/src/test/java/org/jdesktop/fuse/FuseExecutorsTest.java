@@ -0,0 +1,91 @@
+/**
+ * Copyright (c) 2006, Sun Microsystems, Inc
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 
+ *   * Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *   * Redistributions in binary form must reproduce the above
+ *     copyright notice, this list of conditions and the following 
+ *     disclaimer in the documentation and/or other materials provided 
+ *     with the distribution.
+ *   * Neither the name of the Fuse project nor the names of its
+ *     contributors may be used to endorse or promote products derived 
+ *     from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.jdesktop.fuse;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class FuseExecutorsTest {
+    
+    @Test
+    public void usesVirtualThreadsFromJava21() throws Exception {
+        String version = System.getProperty("java.specification.version");
+        boolean java21 = !version.startsWith("1.") && Integer.parseInt(version) >= 21;
+        assertEquals(java21, FuseExecutors.isVirtual());
+        
+        final Thread[] thread = new Thread[1];
+        ExecutorService executor = FuseExecutors.newResourceExecutor();
+        executor.submit(new Runnable() {
+            public void run() {
+                thread[0] = Thread.currentThread();
+            }
+        }).get();
+        executor.shutdown();
+        
+        assertTrue(thread[0].getName().startsWith("fuse-resource-"));
+        assertTrue(thread[0].isDaemon());
+    }
+    
+    @Test
+    public void boundedExecutorStartsAtMostTheSpecifiedThreads() throws Exception {
+        final Set<Thread> threads = Collections.synchronizedSet(new HashSet<Thread>());
+        final CountDownLatch done = new CountDownLatch(100);
+        
+        ExecutorService executor = FuseExecutors.newResourceExecutor(3);
+        for (int i = 0; i < 100; i++) {
+            executor.execute(new Runnable() {
+                public void run() {
+                    threads.add(Thread.currentThread());
+                    done.countDown();
+                }
+            });
+        }
+        
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        executor.shutdown();
+        assertTrue(threads.size() <= 3);
+    }
+    
+    @Test(expected = IllegalArgumentException.class)
+    public void boundedExecutorNeedsAThread() {
+        FuseExecutors.newResourceExecutor(0);
+    }
+}
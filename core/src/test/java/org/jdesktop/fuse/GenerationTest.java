@@ -0,0 +1,100 @@
+/**
+ * Copyright (c) 2006, Sun Microsystems, Inc
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 
+ *   * Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *   * Redistributions in binary form must reproduce the above
+ *     copyright notice, this list of conditions and the following 
+ *     disclaimer in the documentation and/or other materials provided 
+ *     with the distribution.
+ *   * Neither the name of the Fuse project nor the names of its
+ *     contributors may be used to endorse or promote products derived 
+ *     from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.jdesktop.fuse;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class GenerationTest {
+    private final ResourceInjector injector = ResourceInjector.get(GenerationTest.class);
+    
+    @After
+    public void dispose() {
+        injector.dispose();
+    }
+    
+    @Test
+    public void generationKeepsTheResourcesItWasCreatedWith() {
+        injector.load(theme("old"));
+        Generation generation = injector.generation();
+        
+        injector.load(theme("new"));
+        assertEquals("old", generation.getValue("Panel.title"));
+        assertEquals("new", injector.generation().getValue("Panel.title"));
+        
+        injector.reset();
+        assertEquals("old", generation.getValue("Panel.title"));
+        assertNull(injector.generation().getValue("Panel.title"));
+    }
+    
+    @Test
+    public void loadsBypassingTheInjectorArePublished() {
+        injector.load(theme("old"));
+        injector.generation();
+        
+        injector.getLoader().load(theme("new"));
+        assertEquals("new", injector.generation().getValue("Panel.title"));
+    }
+    
+    @Test
+    public void injectionNeverSeesALoadHalfway() throws InterruptedException {
+        injector.load(theme("0"));
+        
+        Thread loading = new Thread() {
+            @Override
+            public void run() {
+                for (int i = 1; i <= 2000; i++) {
+                    injector.load(theme(String.valueOf(i)));
+                }
+            }
+        };
+        loading.start();
+        
+        while (loading.isAlive()) {
+            Generation generation = injector.generation();
+            String title = generation.getValue("Panel.title");
+            Thread.yield();
+            assertEquals(title, generation.getValue("Panel.name"));
+        }
+        loading.join();
+    }
+    
+    private static InputStream theme(String value) {
+        return new ByteArrayInputStream(("Panel.title=" + value + "\nPanel.name=" + value + "\n").getBytes());
+    }
+}
@@ -0,0 +1,186 @@
+/**
+ * Copyright (c) 2006, Sun Microsystems, Inc
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 
+ *   * Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *   * Redistributions in binary form must reproduce the above
+ *     copyright notice, this list of conditions and the following 
+ *     disclaimer in the documentation and/or other materials provided 
+ *     with the distribution.
+ *   * Neither the name of the Fuse project nor the names of its
+ *     contributors may be used to endorse or promote products derived 
+ *     from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.jdesktop.fuse;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.lang.reflect.Field;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class HiveTest {
+    private final ResourceInjector injector = ResourceInjector.get(HiveTest.class);
+    // the standard provider of Hive injects nothing
+    private final Hive<Object> hive = new Hive<Object>(HiveTest.class) {
+        @Override
+        protected HiveInjectionProvider<Object> getStandardInjectionProvider() {
+            return new HiveInjectionProvider<Object>() {
+                @Override
+                public void inject(Object key, boolean populateHierarchy, Object instance) {
+                    ResourceInjector.get(key).inject(populateHierarchy, new Object[] { instance });
+                }
+            };
+        }
+    };
+    
+    @Before
+    public void load() {
+        load("HiveTest$Panel.title=Berths\n" +
+             "HiveTest$Panel.subtitle={Common.caption} plan\n" +
+             "Common.caption=Quay\n" +
+             "*.footer=Port\n");
+    }
+    
+    @After
+    public void dispose() {
+        injector.dispose();
+    }
+    
+    @Test
+    public void onlyFieldsReadingAChangedKeyAreInjectedAgain() {
+        Panel panel = new Panel();
+        hive.inject(panel);
+        assertEquals("Berths", panel.title);
+        assertEquals("Quay plan", panel.subtitle);
+        assertEquals("Port", panel.footer);
+        
+        panel.subtitle = "stale";
+        panel.footer = "stale";
+        change("HiveTest$Panel.title", "Vessels");
+        
+        assertEquals("Vessels", panel.title);
+        assertEquals("stale", panel.subtitle);
+        assertEquals("stale", panel.footer);
+    }
+    
+    @Test
+    public void fieldsReadingAReferencedKeyAreInjectedAgain() {
+        Panel panel = new Panel();
+        hive.inject(panel);
+        
+        panel.title = "stale";
+        change("Common.caption", "Berth");
+        
+        assertEquals("Berth plan", panel.subtitle);
+        assertEquals("stale", panel.title);
+    }
+    
+    @Test
+    public void scopedKeyOverridingAWildcardIsInjected() {
+        Panel panel = new Panel();
+        hive.inject(panel);
+        
+        change("HiveTest$Panel.footer", "Terminal");
+        assertEquals("Terminal", panel.footer);
+        
+        // the field now reads the scoped key only
+        panel.footer = "stale";
+        change("*.footer", "Harbour");
+        assertEquals("stale", panel.footer);
+    }
+    
+    @Test
+    public void collectedInstancesLeaveTheIndex() throws Exception {
+        hive.inject(new Panel());
+        assertEquals(1, ((Map<?, ?>) field("injectionPoints")).size());
+        assertFalse(((Map<?, ?>) field("dependents")).isEmpty());
+        
+        // collected references are queued by another thread, and polled on the next change
+        for (int i = 0; i < 50 && !((Map<?, ?>) field("injectionPoints")).isEmpty(); i++) {
+            PreloadTest.collectGarbage();
+            Thread.sleep(20);
+            hive.resourcesChanged(injector.getLoader(), Collections.<String>emptySet());
+        }
+        
+        assertTrue(((Map<?, ?>) field("injectionPoints")).isEmpty());
+        assertTrue(((Map<?, ?>) field("dependents")).isEmpty());
+    }
+    
+    @Test
+    public void instancesInjectedWithoutResourceInjectorAreInjectedAgainEntirely() {
+        final AtomicInteger injections = new AtomicInteger();
+        Hive<Object> custom = new Hive<Object>(HiveTest.class) {
+            @Override
+            protected HiveInjectionProvider<Object> getStandardInjectionProvider() {
+                return new HiveInjectionProvider<Object>() {
+                    @Override
+                    public void inject(Object key, boolean populateHierarchy, Object instance) {
+                        injections.incrementAndGet();
+                    }
+                };
+            }
+        };
+        
+        Object instance = new Object();
+        custom.inject(instance);
+        custom.resourcesChanged(injector.getLoader(), Collections.singleton("HiveTest$Panel.title"));
+        
+        assertEquals(2, injections.get());
+    }
+    
+    private void change(String key, String value) {
+        load(key + '=' + value + '\n');
+        hive.resourcesChanged(injector.getLoader(), new HashSet<String>(Arrays.asList(key)));
+    }
+    
+    private void load(String properties) {
+        injector.load(new ByteArrayInputStream(properties.getBytes()));
+    }
+    
+    private Object field(String name) throws Exception {
+        Field field = Hive.class.getDeclaredField(name);
+        field.setAccessible(true);
+        
+        return field.get(hive);
+    }
+    
+    static final class Panel {
+        @InjectedResource
+        String title;
+        
+        @InjectedResource
+        String subtitle;
+        
+        @InjectedResource
+        String footer;
+    }
+}
@@ -0,0 +1,187 @@
+/**
+ * Copyright (c) 2006, Sun Microsystems, Inc
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 
+ *   * Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *   * Redistributions in binary form must reproduce the above
+ *     copyright notice, this list of conditions and the following 
+ *     disclaimer in the documentation and/or other materials provided 
+ *     with the distribution.
+ *   * Neither the name of the Fuse project nor the names of its
+ *     contributors may be used to endorse or promote products derived 
+ *     from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.jdesktop.fuse;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.ref.WeakReference;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.jdesktop.fuse.rl.MapResourceLoader;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Loads a plugin in its own class loader, injects its screens through
+ * ResourceInjector and Hive, including ResourceInjector instances keyed by
+ * plugin objects, removes its module and checks that the class loader is
+ * garbage collected.
+ */
+public class PluginUnloadTest {
+    private static final String PLUGIN_PACKAGE = "org.jdesktop.fuse.plugin.";
+    
+    private final Map<String, String> resources = new HashMap<String, String>();
+    private ResourceLoader previousLoader;
+    private ExecutorService executor;
+    
+    @Before
+    public void setUp() {
+        resources.put("PluginPanel.value", "night");
+        resources.put("PluginPanel.title", "Plugin");
+        resources.put("PluginPanel.width", "42");
+        
+        previousLoader = ResourceInjector.get().getLoader();
+        ResourceInjector.get().setLoader(new MapResourceLoader(resources));
+        executor = Executors.newFixedThreadPool(2);
+    }
+    
+    @After
+    public void tearDown() {
+        executor.shutdown();
+        ResourceInjector.get().setLoader(previousLoader);
+    }
+    
+    @Test
+    public void removedPluginIsCollected() throws Exception {
+        Hive<Object> hive = new Hive<Object>() {
+            @Override
+            protected HiveInjectionProvider<Object> getStandardInjectionProvider() {
+                return new HiveInjectionProvider<Object>() {
+                    @Override
+                    public void inject(Object key, boolean populateHierarchy, Object instance) {
+                        ResourceInjector.get(key).inject(populateHierarchy, new Object[] { instance });
+                    }
+                };
+            }
+        };
+        
+        WeakReference<ClassLoader> plugin = runPlugin(hive);
+        
+        for (int i = 0; i < 50 && plugin.get() != null; i++) {
+            System.gc();
+            Thread.sleep(20);
+            
+            // the hive outlives the plugin, as in a client, and keeps injecting
+            hive.inject(new Object());
+        }
+        
+        assertNull("The plugin class loader is still reachable", plugin.get());
+    }
+    
+    private WeakReference<ClassLoader> runPlugin(Hive<Object> hive) throws Exception {
+        ClassLoader loader = new PluginClassLoader(getClass().getClassLoader());
+        FuseModule module = (FuseModule) loader.loadClass(PLUGIN_PACKAGE + "PluginModule").newInstance();
+        ResourceInjector.addModule(module);
+        
+        Class<?> panelClass = loader.loadClass(PLUGIN_PACKAGE + "PluginPanel");
+        Object panel = panelClass.newInstance();
+        hive.inject(panel);
+        assertEquals("Plugin night 42", panel.toString());
+        
+        resources.put("PluginPanel.title", "Changed");
+        hive.resourcesChanged(ResourceInjector.get().getLoader(), Collections.singleton("PluginPanel.title"));
+        assertEquals("Changed night 42", panel.toString());
+        
+        ResourceInjector.get().preload(executor, panelClass).get();
+        
+        // injectors keyed by the plugin are never disposed, as when a client forgets to
+        ResourceInjector.get(panelClass).setLoader(new MapResourceLoader(resources));
+        ResourceInjector.get(panelClass).inject(panel);
+        ResourceInjector.get(panel).setLoader(new MapResourceLoader(resources));
+        ResourceInjector.get(panel).inject(panel);
+        assertEquals("Changed night 42", panel.toString());
+        
+        assertTrue(ResourceInjector.removeModule(module));
+        return new WeakReference<ClassLoader>(loader);
+    }
+    
+    // defines the plugin classes itself instead of delegating them to the test class loader
+    private static final class PluginClassLoader extends ClassLoader {
+        PluginClassLoader(ClassLoader parent) {
+            super(parent);
+        }
+        
+        @Override
+        protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+            if (!name.startsWith(PLUGIN_PACKAGE)) {
+                return super.loadClass(name, resolve);
+            }
+            
+            synchronized (getClassLoadingLock(name)) {
+                Class<?> klass = findLoadedClass(name);
+                if (klass == null) {
+                    byte[] bytes = read(name.replace('.', '/') + ".class");
+                    klass = defineClass(name, bytes, 0, bytes.length);
+                }
+                if (resolve) {
+                    resolveClass(klass);
+                }
+                
+                return klass;
+            }
+        }
+        
+        private byte[] read(String path) throws ClassNotFoundException {
+            InputStream in = getParent().getResourceAsStream(path);
+            if (in == null) {
+                throw new ClassNotFoundException(path);
+            }
+            
+            try {
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                byte[] buffer = new byte[4096];
+                for (int read; (read = in.read(buffer)) != -1; ) {
+                    out.write(buffer, 0, read);
+                }
+                
+                return out.toByteArray();
+            } catch (IOException e) {
+                throw new ClassNotFoundException(path, e);
+            } finally {
+                try {
+                    in.close();
+                } catch (IOException e) {
+                }
+            }
+        }
+    }
+}
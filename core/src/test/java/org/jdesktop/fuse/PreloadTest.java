@@ -0,0 +1,142 @@
+/**
+ * Copyright (c) 2006, Sun Microsystems, Inc
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 
+ *   * Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *   * Redistributions in binary form must reproduce the above
+ *     copyright notice, this list of conditions and the following 
+ *     disclaimer in the documentation and/or other materials provided 
+ *     with the distribution.
+ *   * Neither the name of the Fuse project nor the names of its
+ *     contributors may be used to endorse or promote products derived 
+ *     from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.jdesktop.fuse;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import java.io.ByteArrayInputStream;
+import java.lang.ref.WeakReference;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class PreloadTest {
+    static final Executor DIRECT = new Executor() {
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+    
+    static final SwatchTypeLoader LOADER = new SwatchTypeLoader();
+    
+    private final ResourceInjector injector = ResourceInjector.get(PreloadTest.class);
+    
+    @BeforeClass
+    public static void addTypeLoader() {
+        TypeLoaderFactory.addTypeLoader(LOADER);
+    }
+    
+    @AfterClass
+    public static void removeTypeLoader() {
+        TypeLoaderFactory.removeTypeLoader(LOADER);
+    }
+    
+    @Before
+    public void load() {
+        injector.load(new ByteArrayInputStream("PreloadTest$Panel.swatch=teal\n".getBytes()));
+        // drops the swatch cached by the previous test
+        collectGarbage();
+    }
+    
+    @After
+    public void dispose() {
+        injector.dispose();
+    }
+    
+    @Test
+    public void preloadedWeakValuesAreCacheHitsAfterACollection() throws Exception {
+        long loads = LOADER.getCacheStatistics().getLoads();
+        
+        Preload preload = injector.preload(DIRECT, Panel.class);
+        preload.get();
+        assertEquals(loads + 1, LOADER.getCacheStatistics().getLoads());
+        
+        collectGarbage();
+        
+        Panel panel = new Panel();
+        injector.inject(panel);
+        assertNotNull(panel.swatch);
+        assertEquals(loads + 1, LOADER.getCacheStatistics().getLoads());
+    }
+    
+    @Test
+    public void releasedValuesAreLeftToTheCachePolicy() throws Exception {
+        long loads = LOADER.getCacheStatistics().getLoads();
+        
+        Preload preload = injector.preload(DIRECT, Panel.class);
+        preload.get();
+        preload.release();
+        
+        collectGarbage();
+        
+        injector.inject(new Panel());
+        assertEquals(loads + 2, LOADER.getCacheStatistics().getLoads());
+    }
+    
+    static void collectGarbage() {
+        WeakReference<Object> sentinel = new WeakReference<Object>(new Object());
+        for (int i = 0; i < 50 && sentinel.get() != null; i++) {
+            System.gc();
+        }
+    }
+    
+    static final class Panel {
+        @InjectedResource
+        Swatch swatch;
+    }
+    
+    static final class Swatch {
+        final String name;
+        
+        Swatch(String name) {
+            this.name = name;
+        }
+    }
+    
+    // cached with the default, weak, policy
+    static final class SwatchTypeLoader extends TypeLoader<Swatch> {
+        SwatchTypeLoader() {
+            super(Swatch.class);
+        }
+        
+        @Override
+        public Swatch loadType(String name, String value, Class<?> resolver, Map<String, Object> properties) {
+            return new Swatch(value);
+        }
+    }
+}
@@ -0,0 +1,105 @@
+/**
+ * Copyright (c) 2006, Sun Microsystems, Inc
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 
+ *   * Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *   * Redistributions in binary form must reproduce the above
+ *     copyright notice, this list of conditions and the following 
+ *     disclaimer in the documentation and/or other materials provided 
+ *     with the distribution.
+ *   * Neither the name of the Fuse project nor the names of its
+ *     contributors may be used to endorse or promote products derived 
+ *     from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.jdesktop.fuse;
+
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.lang.ref.WeakReference;
+
+import org.junit.Test;
+
+public class ResourceInjectorTest {
+    
+    @Test
+    public void equalStringKeysShareAnInstance() {
+        String key = "ResourceInjectorTest.screen";
+        ResourceInjector injector = ResourceInjector.get(key);
+        try {
+            assertSame(injector, ResourceInjector.get(new String(key)));
+        } finally {
+            injector.dispose();
+        }
+    }
+    
+    @Test
+    public void equalObjectKeysAreDistinguishedByIdentity() {
+        Key first = new Key();
+        Key second = new Key();
+        
+        ResourceInjector injector = ResourceInjector.get(first);
+        try {
+            assertSame(injector, ResourceInjector.get(first));
+            assertNotSame(injector, ResourceInjector.get(second));
+            assertSame(ResourceInjector.get(ResourceInjectorTest.class),
+                       ResourceInjector.get(ResourceInjectorTest.class));
+        } finally {
+            injector.dispose();
+            ResourceInjector.get(second).dispose();
+            ResourceInjector.get(ResourceInjectorTest.class).dispose();
+        }
+    }
+    
+    @Test
+    public void instanceIsDroppedWithItsKey() throws Exception {
+        WeakReference<ResourceInjector> injector = createInjector();
+        
+        for (int i = 0; i < 50 && injector.get() != null; i++) {
+            System.gc();
+            Thread.sleep(20);
+            
+            // purges the instances whose key was collected
+            ResourceInjector.get(new Key()).dispose();
+        }
+        
+        assertNull("The instance keyed by a collected object is still reachable", injector.get());
+    }
+    
+    private WeakReference<ResourceInjector> createInjector() {
+        Key key = new Key();
+        return new WeakReference<ResourceInjector>(ResourceInjector.get(key));
+    }
+    
+    // equal to every other Key, so that only an identity comparison tells them apart
+    private static final class Key {
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof Key;
+        }
+        
+        @Override
+        public int hashCode() {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,142 @@
+/**
+ * Copyright (c) 2006, Sun Microsystems, Inc
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 
+ *   * Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *   * Redistributions in binary form must reproduce the above
+ *     copyright notice, this list of conditions and the following 
+ *     disclaimer in the documentation and/or other materials provided 
+ *     with the distribution.
+ *   * Neither the name of the Fuse project nor the names of its
+ *     contributors may be used to endorse or promote products derived 
+ *     from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.jdesktop.fuse;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.jdesktop.fuse.PreloadTest.Swatch;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class ResourceProfileTest {
+    private final ResourceInjector injector = ResourceInjector.get(ResourceProfileTest.class);
+    private File file;
+    
+    @BeforeClass
+    public static void addTypeLoader() {
+        TypeLoaderFactory.addTypeLoader(PreloadTest.LOADER);
+    }
+    
+    @AfterClass
+    public static void removeTypeLoader() {
+        TypeLoaderFactory.removeTypeLoader(PreloadTest.LOADER);
+    }
+    
+    @Before
+    public void load() throws IOException {
+        injector.load(new ByteArrayInputStream(("ResourceProfileTest$Screen.background=teal\n" +
+                                                "ResourceProfileTest$Screen.border=ochre\n" +
+                                                "ResourceProfileTest$Screen.title=Berths\n").getBytes()));
+        file = File.createTempFile("profile", ".bin");
+        PreloadTest.collectGarbage();
+    }
+    
+    @After
+    public void dispose() {
+        injector.dispose();
+        file.delete();
+    }
+    
+    @Test
+    public void savedProfileIsReadBack() {
+        ResourceProfile recorded = record();
+        // strings are not cached, so they are not recorded
+        assertEquals(Arrays.asList("ResourceProfileTest$Screen.background", "ResourceProfileTest$Screen.border"),
+                     recorded.getKeys());
+        
+        recorded.save(file);
+        ResourceProfile read = ResourceProfile.read(file);
+        
+        assertEquals(recorded.getKeys(), read.getKeys());
+        for (String key : recorded.getKeys()) {
+            assertEquals(recorded.getLoadNanos(key), read.getLoadNanos(key));
+        }
+        assertEquals(-1L, read.getLoadNanos("ResourceProfileTest$Screen.title"));
+    }
+    
+    @Test
+    public void missingOrForeignFilesReadAsEmptyProfiles() throws IOException {
+        assertEquals(0, ResourceProfile.read(new File(file.getPath() + ".missing")).size());
+        
+        FileOutputStream out = new FileOutputStream(file);
+        out.write("background=teal\n".getBytes());
+        out.close();
+        assertEquals(0, ResourceProfile.read(file).size());
+    }
+    
+    @Test
+    public void readProfileIsPreloadedAndKeptAfterACollection() throws Exception {
+        record().save(file);
+        PreloadTest.collectGarbage();
+        
+        long loads = PreloadTest.LOADER.getCacheStatistics().getLoads();
+        Preload preload = injector.preload(ResourceProfile.read(file), PreloadTest.DIRECT);
+        preload.get();
+        assertEquals(2, preload.getTotal());
+        assertTrue(preload.getErrors().isEmpty());
+        assertEquals(loads + 2, PreloadTest.LOADER.getCacheStatistics().getLoads());
+        
+        PreloadTest.collectGarbage();
+        
+        Screen screen = new Screen();
+        injector.inject(screen);
+        assertEquals("teal", screen.background.name);
+        assertEquals(loads + 2, PreloadTest.LOADER.getCacheStatistics().getLoads());
+    }
+    
+    private ResourceProfile record() {
+        injector.startProfiling();
+        injector.inject(new Screen());
+        return injector.stopProfiling();
+    }
+    
+    static final class Screen {
+        @InjectedResource
+        Swatch background;
+        
+        @InjectedResource
+        Swatch border;
+        
+        @InjectedResource
+        String title;
+    }
+}
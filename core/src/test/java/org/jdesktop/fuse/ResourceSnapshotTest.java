@@ -0,0 +1,177 @@
+/**
+ * Copyright (c) 2006, Sun Microsystems, Inc
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 
+ *   * Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *   * Redistributions in binary form must reproduce the above
+ *     copyright notice, this list of conditions and the following 
+ *     disclaimer in the documentation and/or other materials provided 
+ *     with the distribution.
+ *   * Neither the name of the Fuse project nor the names of its
+ *     contributors may be used to endorse or promote products derived 
+ *     from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.jdesktop.fuse;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Font;
+import java.awt.Insets;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Map;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ResourceSnapshotTest {
+    private static final String FINGERPRINT = "fuse test\n";
+    
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+    
+    @Test
+    public void resourcesAreRestored() throws IOException {
+        Object[] resources = { Color.ORANGE, new Font("Dialog", Font.BOLD, 14),
+                               new Insets(1, 2, 3, 4), new Dimension(5, 6), "text", 7 };
+        
+        ResourceSnapshot snapshot = ResourceSnapshot.open(folder.getRoot(), FINGERPRINT);
+        for (int i = 0; i < resources.length; i++) {
+            snapshot.load(new FixedTypeLoader(resources[i]), "Panel.value", String.valueOf(i), null, properties());
+        }
+        snapshot.save();
+        
+        snapshot = ResourceSnapshot.open(folder.getRoot(), FINGERPRINT);
+        for (int i = 0; i < resources.length; i++) {
+            FixedTypeLoader loader = new FixedTypeLoader(null);
+            assertEquals(resources[i], snapshot.load(loader, "Panel.value", String.valueOf(i), null, properties()));
+            assertEquals(0, loader.loads);
+        }
+    }
+    
+    @Test
+    public void otherClassesAreNeitherSavedNorRestored() throws IOException {
+        ResourceSnapshot snapshot = ResourceSnapshot.open(folder.getRoot(), FINGERPRINT);
+        snapshot.load(new FixedTypeLoader(new ArrayList<String>(Collections.singleton("item"))),
+                      "Panel.list", "list", null, properties());
+        snapshot.load(new FixedTypeLoader(new Payload()), "Panel.payload", "payload", null, properties());
+        snapshot.save();
+        
+        FixedTypeLoader loader = new FixedTypeLoader(new Payload());
+        ResourceSnapshot.open(folder.getRoot(), FINGERPRINT).load(loader, "Panel.payload", "payload", null,
+                                                                   properties());
+        assertEquals(1, loader.loads);
+    }
+    
+    @Test
+    public void snapshotReferringToOtherClassesIsInvalid() throws IOException {
+        Color color = new Color(10, 20, 30);
+        ResourceSnapshot snapshot = ResourceSnapshot.open(folder.getRoot(), FINGERPRINT);
+        snapshot.load(new FixedTypeLoader(color), "Panel.color", "color", null, properties());
+        snapshot.save();
+        
+        File[] files = folder.getRoot().listFiles();
+        assertEquals(1, files.length);
+        
+        // a valid resource followed by a forged one
+        DataOutputStream out = new DataOutputStream(new FileOutputStream(files[0]));
+        try {
+            out.writeInt(0x46555353);
+            out.writeInt(1);
+            writeBytes(out, FINGERPRINT.getBytes("UTF-8"));
+            out.writeBoolean(true);
+            writeBytes(out, key("color").getBytes("UTF-8"));
+            writeBytes(out, serialize(color));
+            out.writeBoolean(true);
+            writeBytes(out, key("payload").getBytes("UTF-8"));
+            writeBytes(out, serialize(new Payload()));
+            out.writeBoolean(false);
+        } finally {
+            out.close();
+        }
+        
+        FixedTypeLoader loader = new FixedTypeLoader(new Color(10, 20, 30));
+        Object restored = ResourceSnapshot.open(folder.getRoot(), FINGERPRINT).load(loader, "Panel.color", "color",
+                                                                                  null, properties());
+        assertEquals(1, loader.loads);
+        assertNotSame(color, restored);
+        assertEquals(0, Payload.created);
+    }
+    
+    private static String key(String value) {
+        return FixedTypeLoader.class.getName() + "\n\n" + value;
+    }
+    
+    private static Map<String, Object> properties() {
+        return Collections.<String, Object>emptyMap();
+    }
+    
+    private static void writeBytes(DataOutputStream out, byte[] bytes) throws IOException {
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+    
+    private static byte[] serialize(Object resource) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(resource);
+        out.close();
+        return bytes.toByteArray();
+    }
+    
+    public static final class Payload implements Serializable {
+        private static final long serialVersionUID = 1L;
+        static int created;
+        
+        private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+            in.defaultReadObject();
+            created++;
+        }
+    }
+    
+    private static final class FixedTypeLoader extends TypeLoader<Object> {
+        private final Object resource;
+        private int loads;
+        
+        private FixedTypeLoader(Object resource) {
+            super(Object.class);
+            this.resource = resource;
+        }
+        
+        @Override
+        public Object loadType(String name, String value, Class<?> resolver, Map<String, Object> properties) {
+            loads++;
+            return resource;
+        }
+    }
+}
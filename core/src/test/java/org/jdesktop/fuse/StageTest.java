@@ -0,0 +1,97 @@
+/**
+ * Copyright (c) 2006, Sun Microsystems, Inc
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 
+ *   * Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *   * Redistributions in binary form must reproduce the above
+ *     copyright notice, this list of conditions and the following 
+ *     disclaimer in the documentation and/or other materials provided 
+ *     with the distribution.
+ *   * Neither the name of the Fuse project nor the names of its
+ *     contributors may be used to endorse or promote products derived 
+ *     from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.jdesktop.fuse;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.concurrent.Executor;
+
+import org.jdesktop.fuse.rl.PropertiesResourceLoader;
+import org.junit.After;
+import org.junit.Test;
+
+public class StageTest {
+    private static final Executor DIRECT = new Executor() {
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+    
+    private final ResourceInjector injector = ResourceInjector.get(StageTest.class);
+    
+    @After
+    public void dispose() {
+        injector.dispose();
+    }
+    
+    @Test
+    public void commitReplacesTheThemeAndReturnsTheChangedKeys() throws Exception {
+        injector.load(new ByteArrayInputStream("Panel.title=day\nPanel.name=panel\n".getBytes()));
+        
+        Stage stage = injector.stage(DIRECT, theme("Panel.title=night\nPanel.name=panel\n"),
+                                     Collections.<Class<?>>emptySet());
+        stage.get();
+        
+        assertEquals(new HashSet<String>(Collections.singleton("Panel.title")), stage.commit());
+        assertEquals("night", injector.generation().getValue("Panel.title"));
+    }
+    
+    @Test
+    public void commitFailsOnceTheThemeWasLoadedSinceTheStageStarted() throws Exception {
+        injector.load(new ByteArrayInputStream("Panel.title=day\n".getBytes()));
+        
+        Stage stage = injector.stage(DIRECT, theme("Panel.title=night\n"), Collections.<Class<?>>emptySet());
+        stage.get();
+        
+        injector.load(new ByteArrayInputStream("Panel.title=dusk\n".getBytes()));
+        try {
+            stage.commit();
+            fail("The stage was committed over a changed theme.");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        
+        assertFalse(stage.isValid());
+        assertEquals("dusk", injector.generation().getValue("Panel.title"));
+    }
+    
+    private static ResourceLoader theme(String properties) {
+        ResourceLoader theme = new PropertiesResourceLoader();
+        theme.load(new ByteArrayInputStream(properties.getBytes()));
+        return theme;
+    }
+}
@@ -0,0 +1,144 @@
+/**
+ * Copyright (c) 2006, Sun Microsystems, Inc
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 
+ *   * Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *   * Redistributions in binary form must reproduce the above
+ *     copyright notice, this list of conditions and the following 
+ *     disclaimer in the documentation and/or other materials provided 
+ *     with the distribution.
+ *   * Neither the name of the Fuse project nor the names of its
+ *     contributors may be used to endorse or promote products derived 
+ *     from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.jdesktop.fuse.bench;
+
+import java.io.ByteArrayInputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+
+import org.jdesktop.fuse.IndexedResourceLoader;
+import org.jdesktop.fuse.ResourceLoader;
+import org.jdesktop.fuse.rl.PropertiesResourceLoader;
+import org.jdesktop.fuse.rl.XMLResourceLoader;
+
+/**
+ * <p>Measures the heap retained by the resources of a generated theme of
+ * 200,000 keys (by default) sharing long prefixes, such as
+ * <code>BerthPlanView12.header.column3.label</code>, with the keys held as
+ * strings and front coded.  The retained heap is what <code>clear()</code>
+ * frees after the lookups, so it includes the lazily built key index.  Also
+ * reports the time of the load and of <code>get</code> and
+ * <code>findKey</code>.  Values repeat, so they cost the same in both
+ * stores.</p>
+ * 
+ * <pre>mvn -pl core test-compile
+ *java -cp core/target/classes:core/target/test-classes org.jdesktop.fuse.bench.KeyFootprintBenchmark [keys]</pre>
+ */
+public class KeyFootprintBenchmark {
+    private static final int LOOKUPS = 1000000;
+    
+    public static void main(String[] args) throws Exception {
+        int keys = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+        
+        String[] views = { "BerthPlanView", "VesselTrackPanel", "QuayCraneSchedule", "CargoManifestTable" };
+        String[] parts = { "header", "body", "footer", "toolbar" };
+        String[] properties = { "label", "tooltip", "background", "font", "insets" };
+        
+        String[] names = new String[keys];
+        StringBuilder theme = new StringBuilder();
+        StringBuilder xml = new StringBuilder("<resources>\n");
+        for (int i = 0; i < keys; i++) {
+            int column = i / (views.length * parts.length * properties.length);
+            String view = views[i % views.length] + (column % 500);
+            String part = parts[(i / views.length) % parts.length];
+            String property = properties[(i / (views.length * parts.length)) % properties.length];
+            String field = part + ".column" + (column / 500) + '.' + property;
+            
+            names[i] = view + '.' + field;
+            theme.append(names[i]).append(" = value").append(i % 100).append('\n');
+            xml.append("<object class=\"").append(view).append("\"><resource key=\"").append(part)
+               .append("\"><resource key=\"column").append(column / 500).append("\"><resource key=\"")
+               .append(property).append("\" value=\"value").append(i % 100)
+               .append("\"/></resource></resource></object>\n");
+        }
+        xml.append("</resources>\n");
+        byte[] bytes = theme.toString().getBytes("UTF-8");
+        byte[] xmlBytes = xml.toString().getBytes("UTF-8");
+        
+        System.out.println(System.getProperty("java.version") + ", " + keys + " keys, " +
+                           bytes.length / 1024 + " KB of properties");
+        
+        for (int round = 0; round < 2; round++) {
+            measure("properties, strings     ", new PropertiesResourceLoader(false), bytes, names);
+            measure("properties, front coded ", new PropertiesResourceLoader(true), bytes, names);
+            measure("XML, strings            ", new XMLResourceLoader(false), xmlBytes, names);
+            measure("XML, front coded        ", new XMLResourceLoader(true), xmlBytes, names);
+        }
+    }
+    
+    private static void measure(String label, ResourceLoader loader, byte[] bytes, String[] names) {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        
+        long start = System.nanoTime();
+        loader.load(new ByteArrayInputStream(bytes));
+        long load = System.nanoTime() - start;
+        long heap = usedHeap(memory);
+        
+        int found = 0;
+        start = System.nanoTime();
+        for (int i = 0; i < LOOKUPS; i++) {
+            if (loader.get(names[(int) (i * 7919L % names.length)]) != null) {
+                found++;
+            }
+        }
+        long get = System.nanoTime() - start;
+        
+        IndexedResourceLoader indexed = (IndexedResourceLoader) loader;
+        start = System.nanoTime();
+        for (int i = 0; i < LOOKUPS; i++) {
+            String name = names[(int) (i * 7919L % names.length)];
+            int dot = name.indexOf('.');
+            if (indexed.findKey(name.substring(0, dot), name.substring(dot + 1)) != null) {
+                found++;
+            }
+        }
+        long findKey = System.nanoTime() - start;
+        
+        if (found != 2 * LOOKUPS) {
+            throw new IllegalStateException("Missing keys in " + label);
+        }
+        
+        // what clear() releases, so garbage left by earlier runs is not counted
+        loader.clear();
+        long retained = heap - usedHeap(memory);
+        System.out.printf("%s retained %8d KB | load %7.1f ms | get %6.1f ns | findKey %6.1f ns%n",
+                          label, retained / 1024, load / 1e6, (double) get / LOOKUPS,
+                          (double) findKey / LOOKUPS);
+    }
+    
+    private static long usedHeap(MemoryMXBean memory) {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return memory.getHeapMemoryUsage().getUsed();
+    }
+}
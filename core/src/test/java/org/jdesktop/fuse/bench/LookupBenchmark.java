@@ -0,0 +1,137 @@
+/**
+ * Copyright (c) 2006, Sun Microsystems, Inc
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 
+ *   * Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *   * Redistributions in binary form must reproduce the above
+ *     copyright notice, this list of conditions and the following 
+ *     disclaimer in the documentation and/or other materials provided 
+ *     with the distribution.
+ *   * Neither the name of the Fuse project nor the names of its
+ *     contributors may be used to endorse or promote products derived 
+ *     from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.jdesktop.fuse.bench;
+
+import java.io.ByteArrayInputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+
+import org.jdesktop.fuse.rl.PropertiesResourceLoader;
+
+/**
+ * <p>Measures the key lookups made while injecting: <code>findKey</code> for
+ * class-specific keys, for keys only defined globally and for missing keys,
+ * and <code>subKeys</code>.  Also reports the time and heap taken by the first
+ * lookup after a load, which builds any index of the keys.</p>
+ * 
+ * <pre>mvn -pl core test-compile
+ *java -cp core/target/classes:core/target/test-classes org.jdesktop.fuse.bench.LookupBenchmark [keys]</pre>
+ */
+public class LookupBenchmark {
+    private static final int LOOKUPS = 2000000;
+    
+    public static void main(String[] args) throws Exception {
+        int keys = args.length > 0 ? Integer.parseInt(args[0]) : 50000;
+        int classes = keys / 25;
+        
+        StringBuilder theme = new StringBuilder();
+        for (int i = 0; i < keys; i++) {
+            theme.append("VesselTrackPanel").append(i % classes).append(".field").append(i / classes)
+                 .append(" = #FFFFFF\n");
+        }
+        for (int i = 0; i < 25; i++) {
+            theme.append("*.global").append(i).append(" = Arial-PLAIN-12\n");
+        }
+        byte[] bytes = theme.toString().getBytes("UTF-8");
+        
+        String[] scopes = new String[classes];
+        for (int i = 0; i < classes; i++) {
+            scopes[i] = "VesselTrackPanel" + i;
+        }
+        String[] fields = new String[25];
+        String[] globals = new String[25];
+        for (int i = 0; i < 25; i++) {
+            fields[i] = "field" + i;
+            globals[i] = "global" + i;
+        }
+        
+        System.out.println(System.getProperty("java.version") + ", " + keys + " keys");
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        long sink = 0;
+        
+        for (int round = 0; round < 5; round++) {
+            PropertiesResourceLoader loader = new PropertiesResourceLoader();
+            loader.load(new ByteArrayInputStream(bytes));
+            
+            long heap = usedHeap(memory);
+            long start = System.nanoTime();
+            loader.findKey(scopes[0], fields[0]);
+            long first = System.nanoTime() - start;
+            long index = usedHeap(memory) - heap;
+            
+            int found = 0;
+            start = System.nanoTime();
+            for (int i = 0; i < LOOKUPS; i++) {
+                if (loader.findKey(scopes[i % classes], fields[i % 25]) != null) {
+                    found++;
+                }
+            }
+            long specific = System.nanoTime() - start;
+            
+            start = System.nanoTime();
+            for (int i = 0; i < LOOKUPS; i++) {
+                if (loader.findKey(scopes[i % classes], globals[i % 25]) != null) {
+                    found++;
+                }
+            }
+            long global = System.nanoTime() - start;
+            
+            start = System.nanoTime();
+            for (int i = 0; i < LOOKUPS; i++) {
+                if (loader.findKey(scopes[i % classes], "missing" + (i % 25)) != null) {
+                    found++;
+                }
+            }
+            long missing = System.nanoTime() - start;
+            
+            start = System.nanoTime();
+            for (int i = 0; i < LOOKUPS / 100; i++) {
+                found += loader.subKeys(scopes[i % classes]).size();
+            }
+            long children = System.nanoTime() - start;
+            
+            System.out.printf("first lookup %7.2f ms %8d KB | findKey class %5.1f ns, global %5.1f ns, " +
+                              "missing %5.1f ns | subKeys %6.1f ns%n",
+                              first / 1e6, index / 1024, (double) specific / LOOKUPS, (double) global / LOOKUPS,
+                              (double) missing / LOOKUPS, children / (LOOKUPS / 100.0));
+            sink += found;
+        }
+        System.out.println("(" + sink + ")");
+    }
+    
+    private static long usedHeap(MemoryMXBean memory) {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return memory.getHeapMemoryUsage().getUsed();
+    }
+}
@@ -0,0 +1,201 @@
+/**
+ * Copyright (c) 2006, Sun Microsystems, Inc
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 
+ *   * Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *   * Redistributions in binary form must reproduce the above
+ *     copyright notice, this list of conditions and the following 
+ *     disclaimer in the documentation and/or other materials provided 
+ *     with the distribution.
+ *   * Neither the name of the Fuse project nor the names of its
+ *     contributors may be used to endorse or promote products derived 
+ *     from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.jdesktop.fuse.bench;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Properties;
+
+import org.jdesktop.fuse.rl.PropertiesResourceLoader;
+
+/**
+ * <p>Compares the properties parser with the loading it replaced, which
+ * wrapped the stream in an EscapeInputStream reading one byte at a time and
+ * handed it to <code>Properties.load</code>.  The theme has 50,000 lines
+ * (by default) with references, escaped braces, continuations and comments.
+ * Each parser reads it from memory and from an unbuffered FileInputStream, as
+ * <code>URL.openStream()</code> returns for a file.</p>
+ * 
+ * <pre>mvn -pl core test-compile
+ *java -cp core/target/classes:core/target/test-classes org.jdesktop.fuse.bench.ParserBenchmark [lines]</pre>
+ */
+public class ParserBenchmark {
+    private static final int ROUNDS = 10;
+    
+    public static void main(String[] args) throws Exception {
+        int lines = args.length > 0 ? Integer.parseInt(args[0]) : 50000;
+        byte[] theme = generate(lines);
+        
+        File file = File.createTempFile("fuse-bench", ".properties");
+        file.deleteOnExit();
+        OutputStream out = new FileOutputStream(file);
+        try {
+            out.write(theme);
+        } finally {
+            out.close();
+        }
+        
+        PropertiesResourceLoader loader = new PropertiesResourceLoader();
+        loader.load(new ByteArrayInputStream(theme));
+        Properties properties = loadProperties(new ByteArrayInputStream(theme));
+        for (String key : loader) {
+            if (!loader.get(key).equals(properties.getProperty(key))) {
+                throw new IllegalStateException("The parsers disagree on " + key);
+            }
+        }
+        
+        System.out.println(System.getProperty("java.version") + ", " + lines + " lines, " +
+                           theme.length / 1024 + " KB, " + properties.size() + " keys, best of " + ROUNDS);
+        
+        long parser = Long.MAX_VALUE;
+        long legacy = Long.MAX_VALUE;
+        long parserFile = Long.MAX_VALUE;
+        long legacyFile = Long.MAX_VALUE;
+        long sink = 0;
+        for (int round = 0; round < ROUNDS; round++) {
+            long start = System.nanoTime();
+            loader = new PropertiesResourceLoader();
+            loader.load(new ByteArrayInputStream(theme));
+            parser = Math.min(parser, System.nanoTime() - start);
+            sink += loader.get("*.global0").length();
+            
+            start = System.nanoTime();
+            properties = loadProperties(new ByteArrayInputStream(theme));
+            legacy = Math.min(legacy, System.nanoTime() - start);
+            sink += properties.size();
+            
+            start = System.nanoTime();
+            InputStream in = new FileInputStream(file);
+            try {
+                loader = new PropertiesResourceLoader();
+                loader.load(in);
+            } finally {
+                in.close();
+            }
+            parserFile = Math.min(parserFile, System.nanoTime() - start);
+            
+            start = System.nanoTime();
+            in = new FileInputStream(file);
+            try {
+                properties = loadProperties(in);
+            } finally {
+                in.close();
+            }
+            legacyFile = Math.min(legacyFile, System.nanoTime() - start);
+        }
+        
+        System.out.printf("memory: parser %7.2f ms, EscapeInputStream + Properties.load %7.2f ms%n",
+                          parser / 1e6, legacy / 1e6);
+        System.out.printf("file:   parser %7.2f ms, EscapeInputStream + Properties.load %7.2f ms%n",
+                          parserFile / 1e6, legacyFile / 1e6);
+        System.out.println("(" + sink + ")");
+    }
+    
+    private static byte[] generate(int lines) throws IOException {
+        StringBuilder theme = new StringBuilder();
+        for (int i = 0; i < 25; i++) {
+            theme.append("*.global").append(i).append(" = Arial-PLAIN-12\n");
+        }
+        
+        for (int i = 25; i < lines; i++) {
+            String key = "VesselTrackPanel" + (i % 2000) + ".field" + (i / 2000);
+            switch (i % 10) {
+            case 0:
+                theme.append("# ").append(key).append('\n');
+                break;
+            case 1:
+                theme.append(key).append(" = {*.global").append(i % 25).append("}\n");
+                break;
+            case 2:
+                theme.append(key).append(" = \\{literal\\} braces\n");
+                break;
+            case 3:
+                theme.append(key).append(" = 0,0,\\\n    0,0\n");
+                i++;
+                break;
+            default:
+                theme.append(key).append(" = #FFFFFF\n");
+                break;
+            }
+        }
+        
+        return theme.toString().getBytes("UTF-8");
+    }
+    
+    // the loading of Resources before the parser
+    private static Properties loadProperties(InputStream stream) throws IOException {
+        Properties properties = new Properties();
+        EscapeInputStream in = new EscapeInputStream(stream);
+        properties.load(in);
+        in.close();
+        return properties;
+    }
+    
+    private static final class EscapeInputStream extends InputStream {
+        private final InputStream stream;
+        private int read;
+        private int stacked = -1;
+    
+        EscapeInputStream(InputStream stream) throws IOException {
+            this.stream = stream;
+            read = stream.read();
+        }
+    
+        @Override
+        public int read() throws IOException {
+            if (read == -1) {
+                return -1;
+            }
+            
+            if (stacked != -1) {
+                int oldStacked = stacked;
+                stacked = -1;
+                return oldStacked;
+            }
+            
+            int readAhead = stream.read();
+    
+            if (read == '\\' && (readAhead == '\\' || readAhead == '{' || readAhead == '}')) {
+                stacked  = '\\';
+            }
+            
+            int oldRead = read;
+            read = readAhead;
+            return oldRead;
+        }
+    }
+}
@@ -0,0 +1,165 @@
+/**
+ * Copyright (c) 2006, Sun Microsystems, Inc
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 
+ *   * Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *   * Redistributions in binary form must reproduce the above
+ *     copyright notice, this list of conditions and the following 
+ *     disclaimer in the documentation and/or other materials provided 
+ *     with the distribution.
+ *   * Neither the name of the Fuse project nor the names of its
+ *     contributors may be used to endorse or promote products derived 
+ *     from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.jdesktop.fuse.bench;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import org.jdesktop.fuse.FuseExecutors;
+import org.jdesktop.fuse.ResourceInjector;
+import org.jdesktop.fuse.TypeLoader;
+import org.jdesktop.fuse.TypeLoaderFactory;
+import org.jdesktop.fuse.rl.MapResourceLoader;
+
+/**
+ * <p>Preloads a large theme with the executor returned by FuseExecutors, with
+ * an unbounded cached pool and, on Java 21 and later, with a virtual thread
+ * per task.  Two workloads are measured: resources parsed on the CPU and
+ * resources whose loading waits one millisecond, as when reading an image.
+ * Prints the best wall time and the most threads started by the executor.</p>
+ * 
+ * <pre>mvn -pl core test-compile
+ *java -cp core/target/classes:core/target/test-classes org.jdesktop.fuse.bench.PreloadBenchmark [keys]</pre>
+ */
+public class PreloadBenchmark {
+    private static final int ROUNDS = 5;
+    
+    public static void main(String[] args) throws Exception {
+        int keys = args.length > 0 ? Integer.parseInt(args[0]) : 5000;
+        
+        TypeLoaderFactory.addTypeLoader(new AssetTypeLoader());
+        System.out.println(System.getProperty("java.version") + ", " +
+                           Runtime.getRuntime().availableProcessors() + " processor(s), " + keys + " keys");
+        
+        for (boolean io : new boolean[] { false, true }) {
+            run("FuseExecutors", io, keys, new ExecutorFactory() {
+                public ExecutorService create() {
+                    return FuseExecutors.newResourceExecutor();
+                }
+            });
+            run("cached pool", io, keys, new ExecutorFactory() {
+                public ExecutorService create() {
+                    return Executors.newCachedThreadPool();
+                }
+            });
+            
+            try {
+                final java.lang.reflect.Method virtual = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+                run("virtual threads", io, keys, new ExecutorFactory() {
+                    public ExecutorService create() throws Exception {
+                        return (ExecutorService) virtual.invoke(null);
+                    }
+                });
+            } catch (NoSuchMethodException e) {
+                System.out.println((io ? "io " : "cpu") + "  virtual threads      requires Java 21");
+            }
+        }
+    }
+    
+    private static void run(String name, boolean io, int keys, ExecutorFactory factory) throws Exception {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        ResourceInjector injector = ResourceInjector.get();
+        long best = Long.MAX_VALUE;
+        int peak = 0;
+        
+        for (int round = 0; round < ROUNDS; round++) {
+            // new values every round, so that nothing is answered by the TypeLoader cache
+            Map<String, String> theme = new HashMap<String, String>();
+            List<String> names = new ArrayList<String>(keys);
+            for (int i = 0; i < keys; i++) {
+                String key = "Panel" + (i / 20) + ".asset" + (i % 20);
+                theme.put(key, (io ? "io:" : "cpu:") + name + round + '.' + i);
+                names.add(key);
+            }
+            injector.setLoader(new MapResourceLoader(theme));
+            
+            threads.resetPeakThreadCount();
+            int live = threads.getThreadCount();
+            ExecutorService executor = factory.create();
+            
+            long start = System.nanoTime();
+            injector.preloadKeys(executor, Asset.class, PreloadBenchmark.class, names).get();
+            best = Math.min(best, System.nanoTime() - start);
+            peak = Math.max(peak, threads.getPeakThreadCount() - live);
+            
+            executor.shutdown();
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+        }
+        
+        System.out.printf("%s  %-20s %8.1f ms  %5d threads%n", io ? "io " : "cpu", name, best / 1e6, peak);
+    }
+    
+    private interface ExecutorFactory {
+        ExecutorService create() throws Exception;
+    }
+    
+    public static final class Asset {
+        private final int hash;
+        
+        Asset(int hash) {
+            this.hash = hash;
+        }
+        
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+    
+    public static final class AssetTypeLoader extends TypeLoader<Asset> {
+        public AssetTypeLoader() {
+            super(Asset.class);
+        }
+        
+        @Override
+        public Asset loadType(String name, String value, Class<?> resolver, Map<String, Object> properties) {
+            if (value.startsWith("io:")) {
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+                return new Asset(value.hashCode());
+            }
+            
+            int hash = 0;
+            for (int i = 0; i < 2000; i++) {
+                hash = 31 * hash + value.charAt(i % value.length());
+            }
+            return new Asset(hash);
+        }
+    }
+}
@@ -0,0 +1,177 @@
+/**
+ * Copyright (c) 2006, Sun Microsystems, Inc
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 
+ *   * Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *   * Redistributions in binary form must reproduce the above
+ *     copyright notice, this list of conditions and the following 
+ *     disclaimer in the documentation and/or other materials provided 
+ *     with the distribution.
+ *   * Neither the name of the Fuse project nor the names of its
+ *     contributors may be used to endorse or promote products derived 
+ *     from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.jdesktop.fuse.bench;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.InputStreamReader;
+import java.lang.reflect.Constructor;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.jdesktop.fuse.InjectedResource;
+import org.jdesktop.fuse.ResourceInjector;
+import org.jdesktop.fuse.TypeLoader;
+
+/**
+ * <p>Measures the first injection of a component with a String and an int
+ * field in a fresh JVM: the time taken, the classes loaded in total and those
+ * of Fuse and AWT.  Modules now register TypeLoader descriptors, so only the
+ * loaders of the injected types are loaded.  The eager run instantiates every
+ * TypeLoader found on the class path beforehand, as the modules did before.
+ * Put <code>swing/target/classes</code> on the class path to include the
+ * Swing module.</p>
+ * 
+ * <pre>mvn -pl core test-compile
+ *java -cp core/target/classes:core/target/test-classes:swing/target/classes org.jdesktop.fuse.bench.StartupBenchmark</pre>
+ */
+public class StartupBenchmark {
+    private static final int RUNS = 7;
+    
+    public static void main(String[] args) throws Exception {
+        if (args.length == 2 && args[0].equals("child")) {
+            child(args[1].equals("eager"));
+            return;
+        }
+        
+        System.out.println(System.getProperty("java.version") + ", best of " + RUNS + " JVMs");
+        for (String mode : new String[] { "lazy", "eager" }) {
+            long best = Long.MAX_VALUE;
+            int[] counts = null;
+            for (int run = 0; run < RUNS; run++) {
+                int[] result = new int[4];
+                launch(mode, result);
+                if (result[0] < best) {
+                    best = result[0];
+                    counts = result;
+                }
+            }
+            
+            System.out.printf("%-5s first injection %6.2f ms | classes %5d, Fuse %3d, AWT %3d%n",
+                              mode, best / 1000.0, counts[1], counts[2], counts[3]);
+        }
+    }
+    
+    // result holds the microseconds taken, then the classes, Fuse classes and AWT classes loaded
+    private static void launch(String mode, int[] result) throws Exception {
+        String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        ProcessBuilder builder = new ProcessBuilder(java, "-verbose:class", "-Xshare:off",
+                                                    "-cp", System.getProperty("java.class.path"),
+                                                    StartupBenchmark.class.getName(), "child", mode);
+        builder.redirectErrorStream(true);
+        Process process = builder.start();
+        
+        BufferedReader in = new BufferedReader(new InputStreamReader(process.getInputStream(), "UTF-8"));
+        try {
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (line.startsWith("micros ")) {
+                    result[0] = Integer.parseInt(line.substring(7).trim());
+                } else if (line.contains("class,load") || line.startsWith("[Loaded ")) {
+                    result[1]++;
+                    if (line.contains(" org.jdesktop.fuse.")) {
+                        result[2]++;
+                    } else if (line.contains(" java.awt.") || line.contains(" sun.awt.")) {
+                        result[3]++;
+                    }
+                }
+            }
+        } finally {
+            in.close();
+        }
+        
+        if (process.waitFor() != 0) {
+            throw new IllegalStateException("The " + mode + " run failed.");
+        }
+    }
+    
+    private static void child(boolean eager) throws Exception {
+        long start = System.nanoTime();
+        
+        if (eager) {
+            for (String name : findTypeLoaders()) {
+                Constructor<?> constructor = Class.forName(name).getDeclaredConstructor();
+                constructor.setAccessible(true);
+                constructor.newInstance();
+            }
+        }
+        
+        ResourceInjector injector = ResourceInjector.get();
+        injector.load(new ByteArrayInputStream(
+            "StartupBenchmark$Panel.title = Berth plan\nStartupBenchmark$Panel.rows = 12\n".getBytes("UTF-8")));
+        
+        Panel panel = new Panel();
+        injector.inject(new Object[] { panel });
+        if (!"Berth plan".equals(panel.title) || panel.rows != 12) {
+            throw new IllegalStateException("The panel was not injected.");
+        }
+        
+        System.out.println("micros " + (System.nanoTime() - start) / 1000);
+    }
+    
+    // the TypeLoader classes of the core and Swing modules found on the class path
+    private static List<String> findTypeLoaders() throws Exception {
+        List<String> names = new ArrayList<String>();
+        for (String entry : System.getProperty("java.class.path").split(File.pathSeparator)) {
+            for (String module : new String[] { "core", "swing" }) {
+                File directory = new File(entry, "org/jdesktop/fuse/" + module);
+                String[] files = directory.list();
+                if (files == null) {
+                    continue;
+                }
+                
+                Arrays.sort(files);
+                for (String file : files) {
+                    if (file.endsWith("TypeLoader.class")) {
+                        String name = "org.jdesktop.fuse." + module + '.' + file.substring(0, file.length() - 6);
+                        if (TypeLoader.class.isAssignableFrom(Class.forName(name, false,
+                                                              StartupBenchmark.class.getClassLoader()))) {
+                            names.add(name);
+                        }
+                    }
+                }
+            }
+        }
+        
+        return names;
+    }
+    
+    static class Panel {
+        @InjectedResource
+        String title;
+        
+        @InjectedResource
+        int rows;
+    }
+}
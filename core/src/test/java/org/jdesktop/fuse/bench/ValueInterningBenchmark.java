@@ -0,0 +1,130 @@
+/**
+ * Copyright (c) 2006, Sun Microsystems, Inc
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 
+ *   * Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *   * Redistributions in binary form must reproduce the above
+ *     copyright notice, this list of conditions and the following 
+ *     disclaimer in the documentation and/or other materials provided 
+ *     with the distribution.
+ *   * Neither the name of the Fuse project nor the names of its
+ *     contributors may be used to endorse or promote products derived 
+ *     from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.jdesktop.fuse.bench;
+
+import java.io.ByteArrayInputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Properties;
+
+import org.jdesktop.fuse.ResourceLoader;
+import org.jdesktop.fuse.rl.PropertiesResourceLoader;
+
+/**
+ * <p>Reports the heap retained by the values of a generated theme of
+ * 100,000 keys (by default) whose values repeat, as themes do with colors,
+ * fonts and insets.  Compares <code>java.util.Properties</code>, which keeps
+ * one string per line, with <code>PropertiesResourceLoader</code>, which
+ * shares equal values, and counts the distinct value instances of each.</p>
+ * 
+ * <pre>mvn -pl core test-compile
+ *java -cp core/target/classes:core/target/test-classes org.jdesktop.fuse.bench.ValueInterningBenchmark [keys]</pre>
+ */
+public class ValueInterningBenchmark {
+    private static final String[] VALUES = {
+        "#FFFFFF", "#000000", "#3C3F41", "#4B6EAF", "Arial-PLAIN-12", "Arial-BOLD-12",
+        "Dialog-PLAIN-11", "0,0,0,0", "4,4,4,4", "2,6,2,6", "true", "false",
+        "/images/background.png", "Click to select the vessel"
+    };
+    
+    public static void main(String[] args) throws Exception {
+        int keys = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+        
+        String[] names = new String[keys];
+        StringBuilder theme = new StringBuilder();
+        for (int i = 0; i < keys; i++) {
+            names[i] = "View" + (i / 20) + ".property" + (i % 20);
+            theme.append(names[i]).append(" = ").append(VALUES[i % VALUES.length]).append('\n');
+        }
+        byte[] bytes = theme.toString().getBytes("UTF-8");
+        
+        System.out.println(System.getProperty("java.version") + ", " + keys + " keys, " +
+                           VALUES.length + " distinct values");
+        
+        for (int round = 0; round < 2; round++) {
+            measureProperties(bytes, names);
+            measure("loader, strings         ", new PropertiesResourceLoader(false), bytes, names);
+            measure("loader, front coded     ", new PropertiesResourceLoader(true), bytes, names);
+        }
+    }
+    
+    private static void measureProperties(byte[] bytes, String[] names) throws Exception {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        
+        Properties properties = new Properties();
+        properties.load(new ByteArrayInputStream(bytes));
+        long heap = usedHeap(memory);
+        
+        Map<Object, Boolean> instances = new IdentityHashMap<Object, Boolean>();
+        for (String name : names) {
+            instances.put(properties.getProperty(name), Boolean.TRUE);
+        }
+        int distinct = instances.size();
+        instances = null;
+        
+        properties.clear();
+        long retained = heap - usedHeap(memory);
+        report("java.util.Properties     ", retained, distinct);
+    }
+    
+    private static void measure(String label, ResourceLoader loader, byte[] bytes, String[] names) {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        
+        loader.load(new ByteArrayInputStream(bytes));
+        long heap = usedHeap(memory);
+        
+        Map<Object, Boolean> instances = new IdentityHashMap<Object, Boolean>();
+        for (String name : names) {
+            instances.put(loader.get(name), Boolean.TRUE);
+        }
+        int distinct = instances.size();
+        instances = null;
+        
+        loader.clear();
+        long retained = heap - usedHeap(memory);
+        report(label, retained, distinct);
+    }
+    
+    private static void report(String label, long retained, int distinct) {
+        System.out.printf("%s retained %8d KB | %6d distinct value instances%n",
+                          label, retained / 1024, distinct);
+    }
+    
+    private static long usedHeap(MemoryMXBean memory) {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return memory.getHeapMemoryUsage().getUsed();
+    }
+}
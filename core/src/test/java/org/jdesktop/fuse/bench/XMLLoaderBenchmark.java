@@ -0,0 +1,218 @@
+/**
+ * Copyright (c) 2006, Sun Microsystems, Inc
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 
+ *   * Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *   * Redistributions in binary form must reproduce the above
+ *     copyright notice, this list of conditions and the following 
+ *     disclaimer in the documentation and/or other materials provided 
+ *     with the distribution.
+ *   * Neither the name of the Fuse project nor the names of its
+ *     contributors may be used to endorse or promote products derived 
+ *     from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.jdesktop.fuse.bench;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Stack;
+
+import javax.xml.parsers.SAXParser;
+import javax.xml.parsers.SAXParserFactory;
+
+import org.jdesktop.fuse.rl.XMLResourceLoader;
+import org.xml.sax.Attributes;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * <p>Compares the StAX XMLResourceLoader with the SAX handler it replaced,
+ * copied here, on a generated theme of 50,000 resources (by default) in
+ * objects, nested resources and a <code>fuse:global</code> section.  Reports
+ * the time of a load and the memory allocated by it.  The SAX handler
+ * reuses a single parser, as it did; the StAX loader creates a reader per
+ * load.</p>
+ * 
+ * <pre>mvn -pl core test-compile
+ *java -cp core/target/classes:core/target/test-classes org.jdesktop.fuse.bench.XMLLoaderBenchmark [resources]</pre>
+ */
+public class XMLLoaderBenchmark {
+    private static final int ROUNDS = 10;
+    
+    public static void main(String[] args) throws Exception {
+        int resources = args.length > 0 ? Integer.parseInt(args[0]) : 50000;
+        byte[] theme = generate(resources);
+        
+        XMLResourceLoader stax = new XMLResourceLoader();
+        stax.load(new ByteArrayInputStream(theme));
+        SaxLoader sax = new SaxLoader();
+        sax.load(theme);
+        
+        int keys = 0;
+        for (String key : stax) {
+            if (!stax.get(key).equals(sax.properties.get(key))) {
+                throw new IllegalStateException("The loaders disagree on " + key);
+            }
+            keys++;
+        }
+        if (keys != sax.properties.size()) {
+            throw new IllegalStateException("The loaders found " + keys + " and " + sax.properties.size() + " keys");
+        }
+        
+        System.out.println(System.getProperty("java.version") + ", " + theme.length / 1024 + " KB, " +
+                           keys + " keys, best of " + ROUNDS);
+        
+        long staxTime = Long.MAX_VALUE;
+        long saxTime = Long.MAX_VALUE;
+        long staxBytes = Long.MAX_VALUE;
+        long saxBytes = Long.MAX_VALUE;
+        long sink = 0;
+        for (int round = 0; round < ROUNDS; round++) {
+            long allocated = allocatedBytes();
+            long start = System.nanoTime();
+            stax = new XMLResourceLoader();
+            stax.load(new ByteArrayInputStream(theme));
+            staxTime = Math.min(staxTime, System.nanoTime() - start);
+            staxBytes = Math.min(staxBytes, allocatedBytes() - allocated);
+            sink += stax.subKeys("VesselTrackPanel1").size();
+            
+            allocated = allocatedBytes();
+            start = System.nanoTime();
+            sax = new SaxLoader();
+            sax.load(theme);
+            saxTime = Math.min(saxTime, System.nanoTime() - start);
+            saxBytes = Math.min(saxBytes, allocatedBytes() - allocated);
+            sink += sax.properties.size();
+        }
+        
+        System.out.printf("StAX %7.2f ms, %6d KB allocated%n", staxTime / 1e6, staxBytes / 1024);
+        System.out.printf("SAX  %7.2f ms, %6d KB allocated%n", saxTime / 1e6, saxBytes / 1024);
+        System.out.println("(" + sink + ")");
+    }
+    
+    private static byte[] generate(int resources) throws IOException {
+        StringBuilder theme = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<resources>\n");
+        theme.append("  <fuse:global>\n");
+        for (int i = 0; i < 25; i++) {
+            theme.append("    <resource key=\"global").append(i).append("\" value=\"Arial-PLAIN-12\"/>\n");
+        }
+        theme.append("  </fuse:global>\n");
+        
+        int written = 25;
+        for (int object = 0; written < resources; object++) {
+            theme.append("  <object class=\"VesselTrackPanel").append(object).append("\">\n");
+            for (int field = 0; field < 20 && written < resources; field++) {
+                if (field % 5 == 4) {
+                    theme.append("    <resource key=\"border").append(field).append("\" value=\"line\">\n");
+                    theme.append("      <resource key=\"color\" value=\"#000000\"/>\n");
+                    theme.append("      <resource key=\"thickness\" value=\"2\"/>\n");
+                    theme.append("    </resource>\n");
+                    written += 3;
+                } else {
+                    theme.append("    <resource key=\"field").append(field).append("\" value=\"#FFFFFF\"/>\n");
+                    written++;
+                }
+            }
+            theme.append("  </object>\n");
+        }
+        theme.append("</resources>\n");
+        
+        return theme.toString().getBytes("UTF-8");
+    }
+    
+    // the HotSpot extension counts the bytes allocated by a thread
+    private static long allocatedBytes() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return 0;
+    }
+    
+    // the XMLResourceLoader before StAX, reduced to loading from bytes
+    private static final class SaxLoader extends DefaultHandler {
+        private static SAXParser parser;
+        
+        private final Map<String, String> properties = new HashMap<String, String>();
+        private Stack<String> currentKey;
+        
+        void load(byte[] theme) throws Exception {
+            if (parser == null) {
+                parser = SAXParserFactory.newInstance().newSAXParser();
+            }
+            
+            currentKey = new Stack<String>();
+            parser.parse(new ByteArrayInputStream(theme), this);
+        }
+        
+        @Override
+        public void startElement(String uri, String localName, String name, Attributes attributes)
+                throws SAXException {
+            if (name.equals("resources")) {
+                return;
+            }
+            
+            if (name.equals("object")) {
+                if (currentKey.size() == 0) {
+                    currentKey.push(attributes.getValue("class"));
+                } else {
+                    String cur = currentKey.pop();
+                    
+                    currentKey.push(cur + "$" + attributes.getValue("class"));
+                }
+            } else if (name.equals("resource")) {
+                StringBuilder key = new StringBuilder();
+                
+                for (String curKey : currentKey) {
+                    key.append(curKey);
+                    key.append('.');
+                }
+                key.append(attributes.getValue("key"));
+                
+                properties.put(key.toString(), attributes.getValue("value"));
+                currentKey.push(attributes.getValue("key"));
+            } else if (name.equals("fuse:global")) {
+                if (currentKey.size() != 0) {
+                    return;
+                }
+                
+                currentKey.push("*");
+            }
+        }
+        
+        @Override
+        public void endElement(String uri, String localName, String name) throws SAXException {
+            if (name.equals("resources")) {
+                return;
+            } else if (name.equals("object") || name.equals("resource")) {
+                currentKey.pop();
+            } else if (name.equals("fuse:global")) {
+                if (currentKey.peek().equals("*")) {
+                    currentKey.pop();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,95 @@
+/**
+ * Copyright (c) 2006, Sun Microsystems, Inc
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 
+ *   * Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *   * Redistributions in binary form must reproduce the above
+ *     copyright notice, this list of conditions and the following 
+ *     disclaimer in the documentation and/or other materials provided 
+ *     with the distribution.
+ *   * Neither the name of the Fuse project nor the names of its
+ *     contributors may be used to endorse or promote products derived 
+ *     from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.jdesktop.fuse.rl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+
+import org.jdesktop.fuse.TypeLoadingException;
+import org.junit.Test;
+
+public class OffHeapResourceLoaderTest {
+    @Test
+    public void failedLoadPublishesNothing() {
+        OffHeapResourceLoader loader = new OffHeapResourceLoader(16);
+        loader.load(stream("Panel.title=day\n"));
+        
+        InputStream failing = new SequenceInputStream(stream("Panel.title=night\nPanel.name=panel\n"),
+                                                      new InputStream() {
+            @Override
+            public int read() throws IOException {
+                throw new IOException("The theme was truncated.");
+            }
+        });
+        try {
+            loader.load(failing);
+            fail("The load did not fail.");
+        } catch (TypeLoadingException e) {
+            // expected
+        }
+        
+        assertEquals("day", loader.get("Panel.title"));
+        assertNull(loader.get("Panel.name"));
+        
+        loader.load(stream("Panel.name=panel\n"));
+        assertEquals("panel", loader.get("Panel.name"));
+    }
+    
+    @Test
+    public void cachedValuesAreReplacedByLoads() {
+        OffHeapResourceLoader loader = new OffHeapResourceLoader(4);
+        StringBuilder theme = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            theme.append("Panel.key").append(i).append('=').append(i).append('\n');
+        }
+        loader.load(stream(theme.toString()));
+        
+        for (int pass = 0; pass < 2; pass++) {
+            for (int i = 0; i < 100; i++) {
+                assertEquals(String.valueOf(i), loader.get("Panel.key" + i));
+            }
+        }
+        
+        loader.load(stream("Panel.key1=one\n"));
+        assertEquals("one", loader.get("Panel.key1"));
+    }
+    
+    private static InputStream stream(String properties) {
+        return new ByteArrayInputStream(properties.getBytes());
+    }
+}
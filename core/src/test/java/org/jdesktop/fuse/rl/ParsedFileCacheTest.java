@@ -0,0 +1,101 @@
+/**
+ * Copyright (c) 2006, Sun Microsystems, Inc
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 
+ *   * Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *   * Redistributions in binary form must reproduce the above
+ *     copyright notice, this list of conditions and the following 
+ *     disclaimer in the documentation and/or other materials provided 
+ *     with the distribution.
+ *   * Neither the name of the Fuse project nor the names of its
+ *     contributors may be used to endorse or promote products derived 
+ *     from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.jdesktop.fuse.rl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.ref.Reference;
+import java.lang.reflect.Field;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class ParsedFileCacheTest {
+    
+    @Test
+    public void sameContentIsParsedOnce() throws IOException {
+        File file = write("Panel.title=Berths\n");
+        
+        Map<String, String> first = ParsedFileCache.get(file.toURI().toURL(), false);
+        assertSame(first, ParsedFileCache.get(file.toURI().toURL(), false));
+        assertEquals("Berths", first.get("Panel.title"));
+        file.delete();
+    }
+    
+    @Test
+    public void clearedEntriesAreRemoved() throws Exception {
+        File file = write("Panel.title=Berths\n");
+        String key = file.toURI().toURL().toExternalForm();
+        ParsedFileCache.get(file.toURI().toURL(), false);
+        file.delete();
+        
+        Map<?, ?> cache = cache();
+        assertTrue(cache.containsKey(key));
+        
+        // as the garbage collector does when memory runs low
+        Reference<?> entry = (Reference<?>) cache.get(key);
+        entry.clear();
+        entry.enqueue();
+        
+        File other = write("Panel.title=Vessels\n");
+        ParsedFileCache.get(other.toURI().toURL(), false);
+        other.delete();
+        
+        assertFalse(cache.containsKey(key));
+    }
+    
+    private static Map<?, ?> cache() throws Exception {
+        Field field = ParsedFileCache.class.getDeclaredField("cache");
+        field.setAccessible(true);
+        
+        return (Map<?, ?>) field.get(null);
+    }
+    
+    private static File write(String contents) throws IOException {
+        File file = File.createTempFile("theme", ".properties");
+        OutputStream out = new FileOutputStream(file);
+        try {
+            out.write(contents.getBytes("UTF-8"));
+        } finally {
+            out.close();
+        }
+        
+        return file;
+    }
+}
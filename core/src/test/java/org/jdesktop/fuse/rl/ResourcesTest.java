@@ -0,0 +1,120 @@
+/**
+ * Copyright (c) 2006, Sun Microsystems, Inc
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 
+ *   * Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *   * Redistributions in binary form must reproduce the above
+ *     copyright notice, this list of conditions and the following 
+ *     disclaimer in the documentation and/or other materials provided 
+ *     with the distribution.
+ *   * Neither the name of the Fuse project nor the names of its
+ *     contributors may be used to endorse or promote products derived 
+ *     from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.jdesktop.fuse.rl;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+/**
+ * Loads shared snapshots, as cached by ParsedFileCache, with resources loaded
+ * on top of them.
+ */
+public class ResourcesTest {
+    
+    @Test
+    public void laterSharedLoadOverridesTheOverlay() {
+        for (boolean compact : new boolean[] { false, true }) {
+            Resources resources = new Resources(compact);
+            resources.putAll(shared(compact, "Panel.title", "Berths", "Panel.width", "42"),
+                             Collections.<String, String>emptyMap());
+            resources.put("Panel.title", "Vessels");
+            assertEquals("Vessels", resources.get("Panel.title"));
+            
+            resources.putAll(shared(compact, "Panel.title", "Quays", "Panel.height", "10"),
+                             Collections.<String, String>emptyMap());
+            assertEquals("Quays", resources.get("Panel.title"));
+            assertEquals("42", resources.get("Panel.width"));
+            assertEquals("10", resources.get("Panel.height"));
+            
+            // values loaded with a shared snapshot come after it
+            resources.putAll(shared(compact, "Panel.title", "Cranes"), map("Panel.title", "Berths"));
+            assertEquals("Berths", resources.get("Panel.title"));
+        }
+    }
+    
+    @Test
+    public void firstSharedLoadIsOverriddenByItsValues() {
+        Resources resources = new Resources();
+        resources.putAll(shared(false, "Panel.title", "Berths"), map("Panel.title", "Vessels"));
+        
+        assertEquals("Vessels", resources.get("Panel.title"));
+        assertEquals(Arrays.asList("Panel.title"), keys(resources));
+    }
+    
+    @Test
+    public void subKeysMergeTheBaseAndTheOverlay() {
+        for (boolean compact : new boolean[] { false, true }) {
+            Resources resources = new Resources(compact);
+            resources.putAll(shared(compact, "Panel.b", "1", "Panel.d", "2", "Panel.d.x", "3", "Other.a", "4"),
+                             Collections.<String, String>emptyMap());
+            resources.putAll(map("Panel.a", "5", "Panel.d", "6", "Panel.c", "7"));
+            
+            assertEquals(Arrays.asList("Panel.a", "Panel.b", "Panel.c", "Panel.d", "Panel.d.x"),
+                         resources.subKeys("Panel"));
+            assertEquals(Arrays.asList("Panel.d.x"), resources.subKeys("Panel.d"));
+            assertEquals("6", resources.get("Panel.d"));
+            assertEquals("Panel.d", resources.findKey("Panel", "d"));
+            assertEquals(6, keys(resources).size());
+        }
+    }
+    
+    private static Map<String, String> shared(boolean compact, String... keysAndValues) {
+        Map<String, String> values = map(keysAndValues);
+        return compact ? FrontCodedMap.of(values) : new SnapshotMap(values);
+    }
+    
+    private static Map<String, String> map(String... keysAndValues) {
+        Map<String, String> values = new LinkedHashMap<String, String>();
+        for (int i = 0; i < keysAndValues.length; i += 2) {
+            values.put(keysAndValues[i], keysAndValues[i + 1]);
+        }
+        
+        return values;
+    }
+    
+    private static List<String> keys(Resources resources) {
+        List<String> keys = new ArrayList<String>();
+        for (String key : resources) {
+            keys.add(key);
+        }
+        
+        return keys;
+    }
+}
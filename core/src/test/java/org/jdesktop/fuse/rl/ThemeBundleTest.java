@@ -0,0 +1,114 @@
+/**
+ * Copyright (c) 2006, Sun Microsystems, Inc
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 
+ *   * Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *   * Redistributions in binary form must reproduce the above
+ *     copyright notice, this list of conditions and the following 
+ *     disclaimer in the documentation and/or other materials provided 
+ *     with the distribution.
+ *   * Neither the name of the Fuse project nor the names of its
+ *     contributors may be used to endorse or promote products derived 
+ *     from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.jdesktop.fuse.rl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+
+import org.jdesktop.fuse.TypeLoadingException;
+import org.junit.Test;
+
+public class ThemeBundleTest {
+    @Test
+    public void propertiesStartingLikeTheOldMagicAreNotBundles() throws IOException {
+        File file = write("FUSBAR=1\nFUSB.key = value\n");
+        
+        MappedResourceLoader loader = new MappedResourceLoader();
+        loader.load(file);
+        assertEquals("1", loader.get("FUSBAR"));
+        assertEquals("value", loader.get("FUSB.key"));
+    }
+    
+    @Test
+    public void compiledBundleIsRead() throws IOException {
+        File bundle = compile();
+        
+        MappedResourceLoader loader = new MappedResourceLoader();
+        loader.load(bundle);
+        assertEquals("#FFFFFF", loader.get("Panel.background"));
+        assertEquals("Arial-PLAIN-12", loader.get("Panel.font"));
+    }
+    
+    @Test
+    public void truncatedBundleIsRejected() throws IOException {
+        File bundle = compile();
+        long length = bundle.length();
+        
+        // in the string table, then in the slots and in the bucket displacements
+        for (long truncated : new long[] { length - 3, length - 40, 24 }) {
+            RandomAccessFile file = new RandomAccessFile(bundle, "rw");
+            try {
+                file.setLength(truncated);
+            } finally {
+                file.close();
+            }
+            
+            MappedResourceLoader loader = new MappedResourceLoader();
+            try {
+                loader.load(bundle);
+                loader.get("Panel.background");
+                loader.get("Panel.font");
+                fail("A bundle truncated to " + truncated + " bytes was read");
+            } catch (TypeLoadingException e) {
+                // expected
+            }
+        }
+    }
+    
+    private static File compile() throws IOException {
+        File bundle = File.createTempFile("theme", ".fuseb");
+        bundle.deleteOnExit();
+        ThemeBundleCompiler.compile(bundle, write("Panel.background = #FFFFFF\nPanel.font = Arial-PLAIN-12\n"));
+        
+        return bundle;
+    }
+    
+    private static File write(String properties) throws IOException {
+        File file = File.createTempFile("theme", ".properties");
+        file.deleteOnExit();
+        
+        OutputStream out = new FileOutputStream(file);
+        try {
+            out.write(properties.getBytes("UTF-8"));
+        } finally {
+            out.close();
+        }
+        
+        return file;
+    }
+}
@@ -0,0 +1,175 @@
+/**
+ * Copyright (c) 2006, Sun Microsystems, Inc
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 
+ *   * Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *   * Redistributions in binary form must reproduce the above
+ *     copyright notice, this list of conditions and the following 
+ *     disclaimer in the documentation and/or other materials provided 
+ *     with the distribution.
+ *   * Neither the name of the Fuse project nor the names of its
+ *     contributors may be used to endorse or promote products derived 
+ *     from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.jdesktop.fuse.rl;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.jdesktop.fuse.ResourceChangeListener;
+import org.jdesktop.fuse.ResourceLoader;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Calls the reload of a changed file directly; the delay is long enough for
+ * the reloads scheduled by the watcher thread never to run during a test.
+ */
+public class WatchingResourceLoaderTest {
+    private static final Logger LOGGER = Logger.getLogger(WatchingResourceLoader.class.getName());
+    
+    private final WatchingResourceLoader loader = new WatchingResourceLoader(60000);
+    private final List<Set<String>> published = new ArrayList<Set<String>>();
+    private File directory;
+    private Level level;
+    
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("theme").toFile();
+        loader.addResourceChangeListener(new ResourceChangeListener() {
+            public void resourcesChanged(ResourceLoader source, Set<String> keys) {
+                published.add(keys);
+            }
+        });
+        
+        // failures are expected and logged
+        level = LOGGER.getLevel();
+        LOGGER.setLevel(Level.OFF);
+    }
+    
+    @After
+    public void tearDown() {
+        LOGGER.setLevel(level);
+        loader.close();
+        for (File file : directory.listFiles()) {
+            file.delete();
+        }
+        directory.delete();
+    }
+    
+    @Test
+    public void onlyKeysWhoseEffectiveValueChangedArePublished() throws IOException {
+        File base = write("base.properties", "Panel.title=Berths\nPanel.width=42\nPanel.height=10\n");
+        File top = write("top.properties", "Panel.width=64\n");
+        loader.load(base, top);
+        
+        // the width is shadowed by the top layer
+        write("base.properties", "Panel.title=Vessels\nPanel.width=48\nPanel.height=10\n");
+        loader.reload(base.toPath().toAbsolutePath().normalize(), false);
+        assertEquals(Collections.singletonList(keys("Panel.title")), published);
+        assertEquals("64", loader.get("Panel.width"));
+        
+        published.clear();
+        write("top.properties", "Panel.height=12\n");
+        loader.reload(top.toPath().toAbsolutePath().normalize(), false);
+        assertEquals(Collections.singletonList(keys("Panel.width", "Panel.height")), published);
+        assertEquals("48", loader.get("Panel.width"));
+        assertEquals("12", loader.get("Panel.height"));
+    }
+    
+    @Test
+    public void brokenFileKeepsItsResourcesUntilTheRetryParsesIt() throws IOException {
+        File theme = write("theme.xml", xml("Berths"));
+        loader.load(theme);
+        
+        write("theme.xml", "<resources><object class=\"Panel\">");
+        loader.reload(theme.toPath().toAbsolutePath().normalize(), false);
+        assertEquals("Berths", loader.get("Panel.title"));
+        assertEquals(0, published.size());
+        
+        // a retry which fails again still keeps them
+        loader.reload(theme.toPath().toAbsolutePath().normalize(), true);
+        assertEquals("Berths", loader.get("Panel.title"));
+        
+        write("theme.xml", xml("Vessels"));
+        loader.reload(theme.toPath().toAbsolutePath().normalize(), true);
+        assertEquals("Vessels", loader.get("Panel.title"));
+        assertEquals(Collections.singletonList(keys("Panel.title")), published);
+    }
+    
+    @Test
+    public void failingListenerDoesNotStopTheOthers() throws IOException {
+        final List<Set<String>> last = new ArrayList<Set<String>>();
+        loader.addResourceChangeListener(new ResourceChangeListener() {
+            public void resourcesChanged(ResourceLoader source, Set<String> keys) {
+                throw new IllegalStateException("listener failure");
+            }
+        });
+        loader.addResourceChangeListener(new ResourceChangeListener() {
+            public void resourcesChanged(ResourceLoader source, Set<String> keys) {
+                last.add(keys);
+            }
+        });
+        
+        File theme = write("theme.properties", "Panel.title=Berths\n");
+        loader.load(theme);
+        write("theme.properties", "Panel.title=Vessels\n");
+        loader.reload(theme.toPath().toAbsolutePath().normalize(), false);
+        
+        assertEquals(Collections.singletonList(keys("Panel.title")), published);
+        assertEquals(Collections.singletonList(keys("Panel.title")), last);
+    }
+    
+    private static Set<String> keys(String... keys) {
+        return new HashSet<String>(Arrays.asList(keys));
+    }
+    
+    private static String xml(String title) {
+        return "<resources><object class=\"Panel\"><resource key=\"title\" value=\"" + title +
+               "\"/></object></resources>";
+    }
+    
+    private File write(String name, String contents) throws IOException {
+        File file = new File(directory, name);
+        OutputStream out = new FileOutputStream(file);
+        try {
+            out.write(contents.getBytes("UTF-8"));
+        } finally {
+            out.close();
+        }
+        
+        return file;
+    }
+}
@@ -32,6 +32,10 @@
 package org.jdesktop.fuse;
 
 import java.awt.Component;
+import java.awt.EventQueue;
+import java.util.Set;
+
+import javax.swing.JComponent;
 
 import org.jdesktop.fuse.Hive.ResourceInjectionListener;
 
@@ -72,8 +76,43 @@ public final class SwingHive extends Hive<Component> implements ResourceInjectio
 		}
 	}
     
+    /**
+     * Re-injects the instances in the cache on the event dispatch thread.  The
+     * changed resources have already been loaded by the calling thread, so the
+     * event dispatch thread is never blocked by I/O.
+     * 
+     * @param loader    The ResourceLoader whose resources changed.
+     * @param keys      The keys of the changed resources.
+     * @since 1.1
+     */
+    @Override
+    public void resourcesChanged(final ResourceLoader loader, final Set<String> keys) {
+        if (EventQueue.isDispatchThread()) {
+            super.resourcesChanged(loader, keys);
+        } else {
+            EventQueue.invokeLater(new Runnable() {
+                public void run() {
+                    SwingHive.super.resourcesChanged(loader, keys);
+                }
+            });
+        }
+    }
+    
     @Override
     protected HiveInjectionProvider<Component> getBindInjectionProvider() {
         return new SwingHiveBindInjectionProvider(getBindings());
     }
+    
+    @Override
+    protected String getBinding(Component instance) {
+        String name = instance.getName();
+        if (instance instanceof JComponent) {
+            Object property = ((JComponent) instance).getClientProperty(AUTO_INJECTION_KEY);
+            if (property != null) {
+                name = property.toString();
+            }
+        }
+        
+        return name == null ? null : getBindings().get(name);
+    }
 }
@@ -48,6 +48,11 @@ class FontTypeLoader extends TypeLoader<Font> {
         super(Font.class);
     }
 
+    @Override
+    protected CachePolicy getCachePolicy() {
+        return CachePolicy.SOFT;
+    }
+
     @Override
     public Font loadType(String name, String value, Class<?> resolver, Map<String, Object> properties) {
         String[] parts = value.split("-");
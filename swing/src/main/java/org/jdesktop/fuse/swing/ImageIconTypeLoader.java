@@ -46,6 +46,11 @@ class ImageIconTypeLoader extends TypeLoader<Icon> {
         super(ImageIcon.class, Icon.class);
     }
 
+    @Override
+    protected CachePolicy getCachePolicy() {
+        return CachePolicy.SOFT;
+    }
+
     @Override
     public Icon loadType(String name, String value, Class<?> resolver, Map<String, Object> properties) {
         try {
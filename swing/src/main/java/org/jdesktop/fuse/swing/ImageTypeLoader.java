@@ -46,6 +46,11 @@ class ImageTypeLoader extends TypeLoader<Image> {
         super(Image.class, BufferedImage.class);
     }
 
+    @Override
+    protected CachePolicy getCachePolicy() {
+        return CachePolicy.SOFT;
+    }
+
     @Override
     public Image loadType(String name, String value, Class<?> resolver, Map<String, Object> properties) {
         try {
@@ -36,6 +36,7 @@ import static org.jdesktop.fuse.TypeLoaderFactory.addTypeLoader;
 
 import org.jdesktop.fuse.FuseModule;
 import org.jdesktop.fuse.ModuleInitException;
+import org.jdesktop.fuse.TypeLoaderDescriptor;
 
 /**
  * This class is the FuseModule subclass encapsulating the /Swing
@@ -48,6 +49,9 @@ import org.jdesktop.fuse.ModuleInitException;
  * <p>Alternatively, you can create an instance of SwingModule and add that
  * using the overloaded method.</p>
  * 
+ * <p>When the /Swing jar is on the class path, this module is also discovered
+ * through <code>java.util.ServiceLoader</code> and added automatically.</p>
+ * 
  * @see org.jdesktop.fuse.FuseModule
  * @see org.jdesktop.fuse.ResourceInjector#addModule(String)
  * @see org.jdesktop.fuse.ResourceInjector#addModule(FuseModule)
@@ -63,21 +67,26 @@ public final class SwingModule extends FuseModule {
 
 	@Override
 	public void init() throws ModuleInitException {
-        addTypeLoader(new AlphaCompositeTypeLoader());        
-        addTypeLoader(new ColorTypeLoader());
-        addTypeLoader(new CursorTypeLoader());
-        addTypeLoader(new DimensionTypeLoader());
-        addTypeLoader(new FontTypeLoader());
-        addTypeLoader(new GradientTypeLoader());
-        addTypeLoader(new ImageTypeLoader());
-        addTypeLoader(new ImageIconTypeLoader());
-        addTypeLoader(new InsetsTypeLoader());
-        addTypeLoader(new PointTypeLoader());
-        addTypeLoader(new Point2dTypeLoader());
-        addTypeLoader(new RectangleTypeLoader());
-        addTypeLoader(new Rectangle2dTypeLoader());
-        addTypeLoader(new RenderingHintsTypeLoader());
+        addTypeLoader(swing("AlphaCompositeTypeLoader", "java.awt.Composite", "java.awt.AlphaComposite"));
+        addTypeLoader(swing("ColorTypeLoader", "java.awt.Color"));
+        addTypeLoader(swing("CursorTypeLoader", "java.awt.Cursor"));
+        addTypeLoader(swing("DimensionTypeLoader", "java.awt.Dimension"));
+        addTypeLoader(swing("FontTypeLoader", "java.awt.Font"));
+        addTypeLoader(swing("GradientTypeLoader", "java.awt.GradientPaint"));
+        addTypeLoader(swing("ImageTypeLoader", "java.awt.Image", "java.awt.image.BufferedImage"));
+        addTypeLoader(swing("ImageIconTypeLoader", "javax.swing.ImageIcon", "javax.swing.Icon"));
+        addTypeLoader(swing("InsetsTypeLoader", "java.awt.Insets"));
+        addTypeLoader(swing("PointTypeLoader", "java.awt.Point"));
+        addTypeLoader(swing("Point2dTypeLoader", "java.awt.geom.Point2D", "java.awt.geom.Point2D$Double"));
+        addTypeLoader(swing("RectangleTypeLoader", "java.awt.Rectangle"));
+        addTypeLoader(swing("Rectangle2dTypeLoader", "java.awt.geom.Rectangle2D", "java.awt.geom.Rectangle2D$Double"));
+        addTypeLoader(swing("RenderingHintsTypeLoader", "java.awt.RenderingHints"));
         
         addAutoInjectionProvider(new SwingAutoInjectionProvider());
 	}
+    
+    // loaders are only instantiated when a field of their type is first injected
+    private static TypeLoaderDescriptor swing(String loader, String... types) {
+        return new TypeLoaderDescriptor(SwingModule.class.getPackage().getName() + '.' + loader, types);
+    }
 }
@@ -0,0 +1,95 @@
+/**
+ * Copyright (c) 2006, Sun Microsystems, Inc
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 
+ *   * Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *   * Redistributions in binary form must reproduce the above
+ *     copyright notice, this list of conditions and the following 
+ *     disclaimer in the documentation and/or other materials provided 
+ *     with the distribution.
+ *   * Neither the name of the Fuse project nor the names of its
+ *     contributors may be used to endorse or promote products derived 
+ *     from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.jdesktop.fuse;
+
+import static org.junit.Assert.assertEquals;
+
+import java.lang.reflect.Field;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.jdesktop.fuse.swing.SwingModule;
+import org.junit.Test;
+
+/**
+ * Initializes SwingHive, which adds the /Swing module by name, before
+ * TypeLoaderFactory discovers the same module through ServiceLoader, and
+ * checks that the module is only added once.
+ */
+public class SwingModuleRegistrationTest {
+    
+    @Test
+    public void addsModuleOnceWhenSwingHiveComesFirst() throws Exception {
+        // must run before anything initializes TypeLoaderFactory
+        Class.forName("org.jdesktop.fuse.SwingHive");
+        TypeLoaderFactory.getCacheStatistics();
+        
+        int modules = 0;
+        for (Object mod : (List<?>) staticField(ResourceInjector.class, "modules")) {
+            if (mod instanceof SwingModule) {
+                modules++;
+            }
+        }
+        assertEquals(1, modules);
+        
+        Map<String, Integer> loaders = new HashMap<String, Integer>();
+        for (Object registration : (List<?>) staticField(TypeLoaderFactory.class, "loaders")) {
+            Field field = registration.getClass().getDeclaredField("descriptor");
+            field.setAccessible(true);
+            TypeLoaderDescriptor descriptor = (TypeLoaderDescriptor) field.get(registration);
+            if (descriptor != null && descriptor.getLoaderClassName().startsWith("org.jdesktop.fuse.swing.")) {
+                Integer count = loaders.get(descriptor.getLoaderClassName());
+                loaders.put(descriptor.getLoaderClassName(), count == null ? 1 : count + 1);
+            }
+        }
+        assertEquals(14, loaders.size());
+        for (Map.Entry<String, Integer> entry : loaders.entrySet()) {
+            assertEquals(entry.getKey(), Integer.valueOf(1), entry.getValue());
+        }
+        
+        int providers = 0;
+        for (Object provider : (List<?>) staticField(AutoInjection.class, "providers")) {
+            if (provider.getClass().getName().equals("org.jdesktop.fuse.swing.SwingAutoInjectionProvider")) {
+                providers++;
+            }
+        }
+        assertEquals(1, providers);
+    }
+    
+    private static Object staticField(Class<?> type, String name) throws Exception {
+        Field field = type.getDeclaredField(name);
+        field.setAccessible(true);
+        
+        return field.get(null);
+    }
+}